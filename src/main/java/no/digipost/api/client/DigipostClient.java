@@ -15,17 +15,31 @@
  */
 package no.digipost.api.client;
 
+import no.digipost.api.client.delivery.BatchDelivery;
+import no.digipost.api.client.delivery.BatchOptions;
 import no.digipost.api.client.delivery.MessageDeliveryApi;
 import no.digipost.api.client.delivery.OngoingDelivery;
 import no.digipost.api.client.document.DocumentApi;
+import no.digipost.api.client.document.DocumentEventTailer;
+import no.digipost.api.client.document.DocumentEventsOptions;
+import no.digipost.api.client.document.DocumentStatusResult;
 import no.digipost.api.client.errorhandling.DigipostClientException;
 import no.digipost.api.client.errorhandling.ErrorCode;
 import no.digipost.api.client.inbox.InboxApi;
+import no.digipost.api.client.inbox.InboxDownloadResult;
+import no.digipost.api.client.inbox.InboxDownloadSummary;
+import no.digipost.api.client.inbox.InboxSync;
 import no.digipost.api.client.internal.ApiServiceImpl;
+import no.digipost.api.client.internal.ConcurrentMapper;
+import no.digipost.api.client.internal.DocumentEventsBackfill;
+import no.digipost.api.client.internal.InboxDownloader;
+import no.digipost.api.client.internal.Pager;
 import no.digipost.api.client.internal.delivery.MessageDeliverer;
 import no.digipost.api.client.representations.AddDataLink;
 import no.digipost.api.client.representations.AdditionalData;
 import no.digipost.api.client.representations.Autocomplete;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
 import no.digipost.api.client.representations.DocumentEvents;
 import no.digipost.api.client.representations.DocumentStatus;
 import no.digipost.api.client.representations.Identification;
@@ -49,9 +63,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static no.digipost.api.client.internal.http.response.HttpResponseUtils.checkResponse;
 import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
 
@@ -69,11 +93,16 @@ public class DigipostClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(DigipostClient.class);
 
+    private static final int DEFAULT_MAX_CONCURRENT_STATUS_REQUESTS = 8;
+    private static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+
     private final EventLogger eventLogger;
     private final MessageDeliveryApi messageApi;
     private final MessageDeliverer messageSender;
     private final InboxApi inboxApiService;
     private final DocumentApi documentApi;
+    private final Executor asyncExecutor;
+    private final Clock clock;
 
 
 
@@ -90,6 +119,7 @@ public class DigipostClient {
     }
 
     public DigipostClient(DigipostClientConfig config, MessageDeliveryApi apiService, InboxApi inboxApiService, DocumentApi documentApi) {
+        config = config.forNewClient();
         this.messageApi = apiService;
         this.inboxApiService = inboxApiService;
         this.documentApi = documentApi;
@@ -97,6 +127,8 @@ public class DigipostClient {
         this.messageSender = new MessageDeliverer(config, apiService);
 
         this.eventLogger = config.eventLogger.withDebugLogTo(LOG);
+        this.asyncExecutor = config.asyncExecutor;
+        this.clock = config.clock;
     }
 
 
@@ -119,6 +151,16 @@ public class DigipostClient {
         return messageSender.createPrintOnlyMessage(printMessage);
     }
 
+    /**
+     * Oppretter en batch for å sende mange meldinger med høy gjennomstrømning. Batchen
+     * må lukkes når alle meldinger er sendt inn.
+     *
+     * @see BatchDelivery
+     */
+    public BatchDelivery newBatch(BatchOptions options) {
+        return messageSender.newBatch(options);
+    }
+
     public IdentificationResult identifyRecipient(final Identification identification) {
         try (CloseableHttpResponse response = messageApi.identifyRecipient(identification)) {
             checkResponse(response, eventLogger);
@@ -128,6 +170,16 @@ public class DigipostClient {
         }
     }
 
+    /**
+     * Identifiserer mottaker asynkront.
+     *
+     * @see #identifyRecipient(Identification)
+     * @see DigipostClientConfig.Builder#asyncExecutor(Executor)
+     */
+    public CompletableFuture<IdentificationResult> identifyRecipientAsync(final Identification identification) {
+        return supplyAsync(() -> identifyRecipient(identification), asyncExecutor);
+    }
+
     public void addData(AddDataLink addDataLink, AdditionalData data) {
         messageSender.addData(addDataLink, data);
     }
@@ -148,6 +200,92 @@ public class DigipostClient {
         return documentApi.getDocumentEvents(organisation, partId, from, to, offset, maxResults);
     }
 
+    /**
+     * Henter dokumenthendelser og gir dem til {@code eventConsumer} etter hvert som de leses. Kun hendelser
+     * av typer som godtas av {@code types} blir bygget og gitt videre, f.eks. {@code EnumSet.of(OPENED)::contains}.
+     *
+     * @return antall hendelser i siden, inkludert de som ble hoppet over på grunn av type. Dette er
+     *         antallet som skal legges til {@code offset} for å hente neste side.
+     *
+     * @see DocumentApi#getDocumentEvents(String, String, ZonedDateTime, ZonedDateTime, int, int, Predicate, Consumer)
+     */
+    public int getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults,
+                                 Predicate<? super DocumentEventType> types, Consumer<? super DocumentEvent> eventConsumer) {
+        return documentApi.getDocumentEvents(organisation, partId, from, to, offset, maxResults, types, eventConsumer);
+    }
+
+    /**
+     * Henter alle dokumenthendelser i et tidsrom som en strøm, og håndterer paginering. Neste side hentes i
+     * bakgrunnen med {@link DigipostClientConfig.Builder#asyncExecutor(Executor) asyncExecutor} mens hendelsene
+     * i gjeldende side behandles. Strømmen bør lukkes dersom den ikke leses helt ut, f.eks. med
+     * try-with-resources, slik at sider som hentes i bakgrunnen forkastes.
+     *
+     * @see DocumentEventsOptions
+     */
+    public Stream<DocumentEvent> streamDocumentEvents(ZonedDateTime from, ZonedDateTime to, DocumentEventsOptions options) {
+        return Pager.stream(
+                (offset, maxResults, eventConsumer) -> getDocumentEvents(options.organisation, options.partId, from, to, offset, maxResults, options.types, eventConsumer),
+                options.pageSize, options.pagesAhead, asyncExecutor);
+    }
+
+    /**
+     * Henter alle dokumenthendelser i et tidsrom som en strøm, med {@link DocumentEventsOptions#DEFAULT standard innstillinger}.
+     *
+     * @see #streamDocumentEvents(ZonedDateTime, ZonedDateTime, DocumentEventsOptions)
+     */
+    public Stream<DocumentEvent> streamDocumentEvents(ZonedDateTime from, ZonedDateTime to) {
+        return streamDocumentEvents(from, to, DocumentEventsOptions.DEFAULT);
+    }
+
+    /**
+     * Henter alle dokumenthendelser i et langt tidsrom, f.eks. flere måneder.
+     * Tidsrommet {@code [from, to)} deles opp i {@link DocumentEventsOptions.Builder#timeSlice(Duration) mindre tidsrom}
+     * som hentes samtidig med {@link DigipostClientConfig.Builder#asyncExecutor(Executor) asyncExecutor}, opp til
+     * {@link DocumentEventsOptions.Builder#maxConcurrentSlices(int) et gitt antall om gangen}. Strømmen bør lukkes
+     * dersom den ikke leses helt ut, slik at henting i bakgrunnen stoppes.
+     * <p>
+     * Hendelsene gis sortert på når de ble opprettet. Hvert tidsrom hentes helt og sorteres før hendelsene i det
+     * gis, så alle hendelsene i ett tidsrom holdes i minnet. Tidsrom som ikke er lest ennå henter bare de første
+     * sidene sine, opp til {@link DocumentEventsOptions.Builder#pagesAhead(int) antall sider i forkant}.
+     *
+     * @see DocumentEventsOptions
+     */
+    public Stream<DocumentEvent> backfillDocumentEvents(ZonedDateTime from, ZonedDateTime to, DocumentEventsOptions options) {
+        return DocumentEventsBackfill.stream(
+                (sliceFrom, sliceTo, offset, maxResults, eventConsumer) -> getDocumentEvents(options.organisation, options.partId, sliceFrom, sliceTo, offset, maxResults, options.types, eventConsumer),
+                from, to, options.timeSlice, options.pageSize, options.pagesAhead, options.maxConcurrentSlices, asyncExecutor);
+    }
+
+    /**
+     * Lag en {@link DocumentEventTailer} som følger med på nye dokumenthendelser, og lagrer posisjonen sin
+     * i den gitte filen.
+     *
+     * @see DocumentEventTailer
+     */
+    public DocumentEventTailer.Builder newDocumentEventTailer(Path cursorFile) {
+        return DocumentEventTailer.newDocumentEventTailer(documentApi, cursorFile).clock(clock);
+    }
+
+    /**
+     * Henter dokumenthendelser asynkront.
+     *
+     * @see #getDocumentEvents(ZonedDateTime, ZonedDateTime, int, int)
+     * @see DigipostClientConfig.Builder#asyncExecutor(Executor)
+     */
+    public CompletableFuture<DocumentEvents> getDocumentEventsAsync(ZonedDateTime from, ZonedDateTime to, int offset, int maxResults) {
+        return getDocumentEventsAsync(null, null, from, to, offset, maxResults);
+    }
+
+    /**
+     * Henter dokumenthendelser asynkront.
+     *
+     * @see #getDocumentEvents(String, String, ZonedDateTime, ZonedDateTime, int, int)
+     * @see DigipostClientConfig.Builder#asyncExecutor(Executor)
+     */
+    public CompletableFuture<DocumentEvents> getDocumentEventsAsync(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults) {
+        return supplyAsync(() -> getDocumentEvents(organisation, partId, from, to, offset, maxResults), asyncExecutor);
+    }
+
     /**
      * Hent informasjon om en gitt avsender. Kan enten be om informasjon om
      * "deg selv", eller en avsender du har fullmakt til å sende post for.
@@ -193,6 +331,55 @@ public class DigipostClient {
         return documentApi.getDocumentStatus(senderId, uuid);
     }
 
+    /**
+     * Henter status for mange dokumenter, med inntil 8 samtidige forespørsler.
+     *
+     * @see #getDocumentStatuses(SenderId, Collection, int)
+     */
+    public Stream<DocumentStatusResult> getDocumentStatuses(SenderId senderId, Collection<UUID> uuids) {
+        return getDocumentStatuses(senderId, uuids, DEFAULT_MAX_CONCURRENT_STATUS_REQUESTS);
+    }
+
+    /**
+     * Henter status for mange dokumenter, med et begrenset antall samtidige forespørsler på
+     * {@link DigipostClientConfig.Builder#asyncExecutor(Executor) asyncExecutor}. Resultatene gis i den
+     * rekkefølgen de blir ferdige, og nye forespørsler sendes etter hvert som resultatene leses fra strømmen.
+     * Feil for et enkelt dokument stopper ikke de andre, men gis som et {@link DocumentStatusResult#getError() resultat med feil}.
+     * <p>
+     * Antall samtidige forespørsler bør ikke være større enn antall forbindelser HTTP-klienten kan ha til Digipost.
+     *
+     * @param maxConcurrentRequests maksimalt antall forespørsler som pågår samtidig
+     */
+    public Stream<DocumentStatusResult> getDocumentStatuses(SenderId senderId, Collection<UUID> uuids, int maxConcurrentRequests) {
+        return ConcurrentMapper.stream(uuids.iterator(), uuid -> {
+            try {
+                return DocumentStatusResult.found(uuid, getDocumentStatus(senderId, uuid));
+            } catch (RuntimeException e) {
+                return DocumentStatusResult.failed(uuid, DigipostClientException.from(e));
+            }
+        }, maxConcurrentRequests, asyncExecutor);
+    }
+
+    /**
+     * Henter status for et dokument asynkront.
+     *
+     * @see #getDocumentStatus(Link)
+     * @see DigipostClientConfig.Builder#asyncExecutor(Executor)
+     */
+    public CompletableFuture<DocumentStatus> getDocumentStatusAsync(Link linkToDocumentStatus) {
+        return supplyAsync(() -> getDocumentStatus(linkToDocumentStatus), asyncExecutor);
+    }
+
+    /**
+     * Henter status for et dokument asynkront.
+     *
+     * @see #getDocumentStatus(SenderId, UUID)
+     * @see DigipostClientConfig.Builder#asyncExecutor(Executor)
+     */
+    public CompletableFuture<DocumentStatus> getDocumentStatusAsync(SenderId senderId, UUID uuid) {
+        return supplyAsync(() -> getDocumentStatus(senderId, uuid), asyncExecutor);
+    }
+
     public InputStream getContent(String path) {
         return documentApi.getDocumentContent(path);
     }
@@ -219,9 +406,49 @@ public class DigipostClient {
         return inboxApiService.getInbox(senderId, offset, limit);
     }
 
+    /**
+     * Get all documents in the inbox for the organisation represented by senderId, in pages of 1000 documents,
+     * fetching the next page in the background while the current page is processed.
+     *
+     * @see #streamInbox(SenderId, int, int)
+     */
+    public Stream<InboxDocument> streamInbox(SenderId senderId) {
+        return streamInbox(senderId, 1000, 1);
+    }
+
+    /**
+     * Get all documents in the inbox for the organisation represented by senderId as a stream, which handles
+     * the pagination. While the documents of one page are processed, the following pages are fetched in the
+     * background using the {@link DigipostClientConfig.Builder#asyncExecutor(Executor) asyncExecutor}. Each
+     * page is read completely before its documents are given to the stream, so up to {@code 1 + pagesAhead}
+     * pages of documents are held in memory at the same time. The stream should be closed if it is not read
+     * to the end, e.g. with try-with-resources, so that pages being fetched in the background are discarded.
+     * <p>
+     * The pages are fetched by offset, so documents deleted from the inbox while the stream is read make the
+     * following documents move to lower offsets, and some of them will not be included in the stream. To delete
+     * every document in the inbox, collect the documents before deleting them, or read the stream again until
+     * the inbox is empty.
+     *
+     * @param senderId Either an organisation that you operate on behalf of or your brokerId
+     * @param pageSize Number of documents to retrieve per page (max 1000)
+     * @param pagesAhead Number of pages to fetch in the background while the current page is processed,
+     *                   which also limits how many pages are held in memory
+     */
+    public Stream<InboxDocument> streamInbox(SenderId senderId, int pageSize, int pagesAhead) {
+        if (pageSize < 1 || pageSize > 1000) {
+            throw new IllegalArgumentException("pageSize must be between 1 and 1000, was " + pageSize);
+        } else if (pagesAhead < 0) {
+            throw new IllegalArgumentException("pagesAhead can not be negative, was " + pagesAhead);
+        }
+        return Pager.stream((offset, limit, documentConsumer) -> inboxApiService.getInbox(senderId, offset, limit, documentConsumer), pageSize, pagesAhead, asyncExecutor);
+    }
+
     /**
      * Get the content of a document as a stream. The content is streamed from the server so remember to
-     * close the stream to prevent connection leaks.
+     * close the stream to prevent connection leaks. The content is verified against the hash given by the
+     * server while it is read, and a {@link DigipostClientException} with
+     * {@link no.digipost.api.client.errorhandling.ErrorCode#SERVER_SIGNATURE_ERROR SERVER_SIGNATURE_ERROR}
+     * is thrown when reaching the end of, or closing, the stream if the content does not match.
      *
      * @param inboxDocument The document to get content for
      * @return Entire content of the document as a stream
@@ -230,6 +457,52 @@ public class DigipostClient {
         return inboxApiService.getInboxDocumentContentStream(inboxDocument);
     }
 
+    /**
+     * Download the content of many documents and their attachments to files in a directory, with at most
+     * 4 downloads in progress at the same time.
+     *
+     * @see #downloadInboxDocuments(Collection, Path, int)
+     */
+    public Stream<InboxDownloadResult> downloadInboxDocuments(Collection<InboxDocument> inboxDocuments, Path directory) {
+        return downloadInboxDocuments(inboxDocuments, directory, DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+    }
+
+    /**
+     * Download the content of many documents and their attachments to files in a directory, using the
+     * {@link DigipostClientConfig.Builder#asyncExecutor(Executor) asyncExecutor}. The content is written
+     * to the files as it is received, without holding whole documents in memory. A document is written to
+     * a file named by its id, e.g. {@code 1234.pdf}, and its attachments to files named by the id of the
+     * document and their position, e.g. {@code 1234-1.pdf}. Existing files with the same names are replaced.
+     * <p>
+     * The results are given in the order the downloads complete, and new downloads are started as the results
+     * are read from the stream, so the stream must be consumed and closed. A failed download does not stop the
+     * others, but is given as a {@link InboxDownloadResult#getError() result with the error}, and leaves no file.
+     * Collect the results with {@link InboxDownloadSummary#summarizing()} to get the total throughput.
+     * <p>
+     * The number of concurrent downloads should not exceed the number of connections the HTTP client may
+     * have to Digipost.
+     *
+     * @param inboxDocuments The documents to download, including their attachments
+     * @param directory The directory to write the files to, which is created if it does not exist
+     * @param maxConcurrentDownloads The maximum number of downloads in progress at the same time
+     * @return the result of each download
+     */
+    public Stream<InboxDownloadResult> downloadInboxDocuments(Collection<InboxDocument> inboxDocuments, Path directory, int maxConcurrentDownloads) {
+        return InboxDownloader.stream(inboxDocuments, directory, this::getInboxDocumentContent, maxConcurrentDownloads, asyncExecutor, clock);
+    }
+
+    /**
+     * Create an {@link InboxSync} which gives the documents which are new in the inbox for the organisation
+     * represented by senderId to a processor, and keeps the ids of the processed documents in the given file.
+     * The next page of the inbox is fetched, and documents are deleted, using the
+     * {@link DigipostClientConfig.Builder#asyncExecutor(Executor) asyncExecutor}.
+     *
+     * @see InboxSync
+     */
+    public InboxSync.Builder newInboxSync(SenderId senderId, Path processedIdsFile) {
+        return InboxSync.newInboxSync(inboxApiService, senderId, processedIdsFile).executor(asyncExecutor);
+    }
+
     /**
      * Delets the given document from the server
      *
@@ -15,11 +15,19 @@
  */
 package no.digipost.api.client;
 
+import no.digipost.api.client.internal.DaemonThreadFactory;
+import no.digipost.http.client3.DigipostHttpClientDefaults;
+
 import java.net.URI;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
 
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 public final class DigipostClientConfig {
 
@@ -29,9 +37,14 @@ public final class DigipostClientConfig {
 
     public static class Builder {
         private Duration printKeyCacheTimeToLive = Duration.ofMinutes(5);
+        private Duration recipientEncryptionKeyCacheTimeToLive = Duration.ofMinutes(5);
+        private int recipientEncryptionKeyCacheMaxSize = 10_000;
         private URI digipostApiUri = URI.create("https://api.digipost.no");
         private EventLogger eventLogger = EventLogger.NOOP_LOGGER;
         private Clock clock = Clock.systemDefaultZone();
+        private int inMemoryContentThreshold = 1024 * 1024;
+        private Executor documentsPreparationExecutor = Runnable::run;
+        private Executor asyncExecutor;
 
         private Builder() {
         }
@@ -50,6 +63,28 @@ public final class DigipostClientConfig {
             return this;
         }
 
+        public Builder disableRecipientEncryptionKeyCache() {
+            return recipientEncryptionKeyCache(Duration.ZERO, recipientEncryptionKeyCacheMaxSize);
+        }
+
+        /**
+         * Cache the result of identifying recipients of messages which are to be encrypted or may fall back to print,
+         * including the encryption keys of recipients in Digipost, so that several messages to the same recipient
+         * only need one identification request. A recipient is removed from the cache if sending to the recipient
+         * fails because of the encryption key. Default is 5 minutes and 10 000 recipients.
+         *
+         * @param timeToLive how long a recipient is cached after being identified. {@link Duration#ZERO} disables the cache.
+         * @param maxSize the maximum number of cached recipients
+         */
+        public Builder recipientEncryptionKeyCache(Duration timeToLive, int maxSize) {
+            if (maxSize < 1) {
+                throw new IllegalArgumentException("maxSize must be at least 1, was " + maxSize);
+            }
+            this.recipientEncryptionKeyCacheTimeToLive = requireNonNull(timeToLive, "timeToLive can not be null");
+            this.recipientEncryptionKeyCacheMaxSize = maxSize;
+            return this;
+        }
+
         public Builder eventLogger(EventLogger eventLogger) {
             this.eventLogger = eventLogger;
             return this;
@@ -60,8 +95,58 @@ public final class DigipostClientConfig {
             return this;
         }
 
+        /**
+         * Set the maximum size of document content which is kept in memory while a message is being
+         * prepared and sent. Larger content is spilled to temporary files. Default is 1 MiB.
+         *
+         * @param bytes the threshold, in bytes
+         */
+        public Builder inMemoryContentThreshold(int bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("inMemoryContentThreshold can not be negative, was " + bytes);
+            }
+            this.inMemoryContentThreshold = bytes;
+            return this;
+        }
+
+        /**
+         * Validate and encrypt the documents of a message concurrently, using the given executor.
+         * Regardless of the executor, documents are always sent in the order given by the message.
+         * By default, the documents are prepared one at a time by the thread sending the message.
+         *
+         * @param executor the executor to run the preparation of each document
+         */
+        public Builder prepareDocumentsConcurrentlyUsing(Executor executor) {
+            this.documentsPreparationExecutor = requireNonNull(executor, "executor can not be null");
+            return this;
+        }
+
+        /**
+         * Set the executor which runs the operations of the asynchronous methods of the client,
+         * e.g. {@link no.digipost.api.client.delivery.OngoingDelivery.SendableDelivery#sendAsync() sendAsync()}.
+         * The asynchronous methods run the same blocking HTTP requests as the other methods, only on a thread of
+         * the executor, and each operation occupies a thread until it is complete. So the number of operations in
+         * flight at the same time is bounded by the number of threads of the executor, and by the maximum number of
+         * connections of the HTTP client. The executor is also used to refresh the cached encryption certificate
+         * for print in the background, to fetch pages ahead when streaming, and to download inbox documents.
+         * <p>
+         * By default, each client gets its own pool of daemon threads, with as many threads as the
+         * {@link DigipostHttpClientDefaults#MAX_CONNECTIONS_TOTAL_NORMAL default number of connections} of the
+         * HTTP client, and a queue of {@value #DEFAULT_ASYNC_QUEUE_PER_THREAD} operations per thread. When the queue
+         * is full, the thread submitting an operation runs it itself, which slows down the submitter instead of letting
+         * the queue grow. If the HTTP client is configured with more connections, an executor with a matching number
+         * of threads should be given here.
+         *
+         * @param executor the executor to run asynchronous operations
+         */
+        public Builder asyncExecutor(Executor executor) {
+            this.asyncExecutor = requireNonNull(executor, "executor can not be null");
+            return this;
+        }
+
         public DigipostClientConfig build() {
-            return new DigipostClientConfig(digipostApiUri, printKeyCacheTimeToLive, eventLogger, clock);
+            return new DigipostClientConfig(digipostApiUri, printKeyCacheTimeToLive, recipientEncryptionKeyCacheTimeToLive, recipientEncryptionKeyCacheMaxSize, eventLogger, clock, inMemoryContentThreshold, documentsPreparationExecutor,
+                    asyncExecutor != null ? asyncExecutor : newDefaultAsyncExecutor(), asyncExecutor == null);
         }
     }
 
@@ -71,14 +156,54 @@ public final class DigipostClientConfig {
 
     public final URI digipostApiUri;
     public final Duration printKeyCacheTimeToLive;
+    public final Duration recipientEncryptionKeyCacheTimeToLive;
+    public final int recipientEncryptionKeyCacheMaxSize;
     public final EventLogger eventLogger;
     public final Clock clock;
-
-    private DigipostClientConfig(URI digipostApiUri, Duration printKeyCacheTimeToLive, EventLogger eventLogger, Clock clock) {
+    public final int inMemoryContentThreshold;
+    public final Executor documentsPreparationExecutor;
+    public final Executor asyncExecutor;
+    private final boolean defaultAsyncExecutor;
+
+    private DigipostClientConfig(URI digipostApiUri, Duration printKeyCacheTimeToLive,
+                                 Duration recipientEncryptionKeyCacheTimeToLive, int recipientEncryptionKeyCacheMaxSize, EventLogger eventLogger, Clock clock,
+                                 int inMemoryContentThreshold, Executor documentsPreparationExecutor, Executor asyncExecutor, boolean defaultAsyncExecutor) {
         this.digipostApiUri = requireNonNull(digipostApiUri, "digipostApiUri cat not be null");
         this.printKeyCacheTimeToLive = requireNonNull(printKeyCacheTimeToLive, "printKeyCacheTimeToLive can not be null");
+        this.recipientEncryptionKeyCacheTimeToLive = recipientEncryptionKeyCacheTimeToLive;
+        this.recipientEncryptionKeyCacheMaxSize = recipientEncryptionKeyCacheMaxSize;
         this.eventLogger = requireNonNull(eventLogger, "eventLogger can not be null");
         this.clock = clock;
+        this.inMemoryContentThreshold = inMemoryContentThreshold;
+        this.documentsPreparationExecutor = documentsPreparationExecutor;
+        this.asyncExecutor = asyncExecutor;
+        this.defaultAsyncExecutor = defaultAsyncExecutor;
+    }
+
+    /**
+     * @return this configuration, or a copy with its own default async executor if no executor was given,
+     *         so that clients created from the same configuration do not share the default executor.
+     */
+    DigipostClientConfig forNewClient() {
+        if (!defaultAsyncExecutor) {
+            return this;
+        }
+        return new DigipostClientConfig(digipostApiUri, printKeyCacheTimeToLive, recipientEncryptionKeyCacheTimeToLive, recipientEncryptionKeyCacheMaxSize,
+                eventLogger, clock, inMemoryContentThreshold, documentsPreparationExecutor, newDefaultAsyncExecutor(), true);
+    }
+
+
+    static final int DEFAULT_ASYNC_QUEUE_PER_THREAD = 10;
+
+    /**
+     * The threads are only started when needed, and time out when idle, so an executor which is not used costs nothing.
+     */
+    private static Executor newDefaultAsyncExecutor() {
+        int threads = DigipostHttpClientDefaults.MAX_CONNECTIONS_TOTAL_NORMAL;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, SECONDS,
+                new ArrayBlockingQueue<>(threads * DEFAULT_ASYNC_QUEUE_PER_THREAD), new DaemonThreadFactory("digipost-async"), new CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
 }
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+import no.digipost.api.client.representations.Message;
+
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Sender mange meldinger med høy gjennomstrømning. Sendingen av hver melding er delt i steg
+ * (identifisering av mottaker og henting av krypteringsnøkkel, validering og kryptering, og selve
+ * sendingen), og hvert steg har sine egne tråder, slik at stegene for ulike meldinger overlapper.
+ * <p>
+ * Meldinger sendes inn med {@link OngoingDelivery.SendableDelivery#sendAsync() sendAsync()} på
+ * forsendelsene som opprettes av batchen. Når {@link BatchOptions#maxMessagesInProgress maksimalt antall meldinger}
+ * er under sending, blokkerer {@code sendAsync()} til det er ledig plass. Resultatet for hver melding
+ * er tilgjengelig både fra {@code sendAsync()} og gjennom {@link BatchOptions#listener lytteren} til batchen.
+ * <p>
+ * Batchen må {@link #close() lukkes} for å vente på gjenværende meldinger og frigjøre trådene.
+ */
+public interface BatchDelivery extends AutoCloseable {
+
+    /**
+     * Oppretter en forsendelse som sendes med denne batchen.
+     *
+     * @see no.digipost.api.client.DigipostClient#createMessage(Message)
+     */
+    OngoingDelivery.WithPrintFallback createMessage(Message message);
+
+    /**
+     * Oppretter en forsendelse direkte til print som sendes med denne batchen.
+     *
+     * @see no.digipost.api.client.DigipostClient#createPrintOnlyMessage(Message)
+     */
+    OngoingDelivery.ForPrintOnly createPrintOnlyMessage(Message printMessage);
+
+    /**
+     * Sender inn alle forsendelsene fra en strøm. Blokkerer mens batchen er full, og returnerer når
+     * alle er sendt inn. Resultatene mottas av {@link BatchOptions#listener lytteren} til batchen.
+     *
+     * @param items elementene å sende
+     * @param toDelivery oppretter en forsendelse med innhold fra hvert element, med
+     *                   {@link #createMessage(Message)} eller {@link #createPrintOnlyMessage(Message)}
+     */
+    default <T> void sendAll(Stream<T> items, Function<? super T, ? extends OngoingDelivery.SendableDelivery> toDelivery) {
+        items.map(toDelivery).forEach(OngoingDelivery.SendableDelivery::sendAsync);
+    }
+
+    /**
+     * @return fremdriften og gjennomstrømningen til batchen så langt.
+     */
+    BatchStatistics getStatistics();
+
+    /**
+     * Venter til alle innsendte meldinger er ferdige, og stopper trådene til batchen.
+     * Etter dette kan ikke batchen sende flere meldinger.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageDelivery;
+
+/**
+ * Mottar resultatet for hver melding som sendes med en {@link BatchDelivery}.
+ * Metodene kalles fra trådene til batchen, og bør ikke blokkere.
+ */
+public interface BatchListener {
+
+    BatchListener NOOP_LISTENER = new BatchListener() {};
+
+    /**
+     * Meldingen ble levert.
+     */
+    default void delivered(Message message, MessageDelivery delivery) {
+    }
+
+    /**
+     * Sending av meldingen feilet.
+     */
+    default void failed(Message message, DigipostClientException error) {
+    }
+}
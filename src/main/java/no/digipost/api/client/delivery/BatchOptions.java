@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Innstillinger for en {@link BatchDelivery}.
+ */
+public final class BatchOptions {
+
+    public static final BatchOptions DEFAULT = newBatchOptions().build();
+
+    public static Builder newBatchOptions() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int identificationThreads = 4;
+        private int preparationThreads = Runtime.getRuntime().availableProcessors();
+        private int sendingThreads = 8;
+        private int maxMessagesInProgress = 200;
+        private BatchListener listener = BatchListener.NOOP_LISTENER;
+
+        private Builder() {
+        }
+
+        /**
+         * Antall tråder for å identifisere mottakere og hente krypteringsnøkler. Default er 4.
+         */
+        public Builder identificationThreads(int threads) {
+            this.identificationThreads = requirePositive(threads, "identificationThreads");
+            return this;
+        }
+
+        /**
+         * Antall tråder for å validere og kryptere dokumenter. Default er antall prosessorer.
+         */
+        public Builder preparationThreads(int threads) {
+            this.preparationThreads = requirePositive(threads, "preparationThreads");
+            return this;
+        }
+
+        /**
+         * Antall tråder for å sende meldinger. Default er 8.
+         */
+        public Builder sendingThreads(int threads) {
+            this.sendingThreads = requirePositive(threads, "sendingThreads");
+            return this;
+        }
+
+        /**
+         * Maksimalt antall meldinger som er under sending samtidig. Når grensen er nådd blokkerer
+         * {@link OngoingDelivery.SendableDelivery#sendAsync() sendAsync()} til en melding er ferdig.
+         * Dette begrenser også hvor mye dokumentinnhold batchen holder på samtidig. Default er 200.
+         */
+        public Builder maxMessagesInProgress(int messages) {
+            this.maxMessagesInProgress = requirePositive(messages, "maxMessagesInProgress");
+            return this;
+        }
+
+        public Builder listener(BatchListener listener) {
+            this.listener = requireNonNull(listener, "listener can not be null");
+            return this;
+        }
+
+        public BatchOptions build() {
+            return new BatchOptions(identificationThreads, preparationThreads, sendingThreads, maxMessagesInProgress, listener);
+        }
+
+        private static int requirePositive(int value, String name) {
+            if (value < 1) {
+                throw new IllegalArgumentException(name + " must be at least 1, was " + value);
+            }
+            return value;
+        }
+    }
+
+
+
+    public final int identificationThreads;
+    public final int preparationThreads;
+    public final int sendingThreads;
+    public final int maxMessagesInProgress;
+    public final BatchListener listener;
+
+    private BatchOptions(int identificationThreads, int preparationThreads, int sendingThreads, int maxMessagesInProgress, BatchListener listener) {
+        this.identificationThreads = identificationThreads;
+        this.preparationThreads = preparationThreads;
+        this.sendingThreads = sendingThreads;
+        this.maxMessagesInProgress = maxMessagesInProgress;
+        this.listener = listener;
+    }
+
+}
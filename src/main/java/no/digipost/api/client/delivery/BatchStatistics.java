@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+import java.time.Duration;
+
+/**
+ * Øyeblikksbilde av fremdriften til en {@link BatchDelivery}.
+ */
+public final class BatchStatistics {
+
+    public final long submitted;
+    public final long delivered;
+    public final long failed;
+    public final Duration elapsed;
+
+    public BatchStatistics(long submitted, long delivered, long failed, Duration elapsed) {
+        this.submitted = submitted;
+        this.delivered = delivered;
+        this.failed = failed;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return antall meldinger som er sendt inn, men ikke ferdig levert eller feilet.
+     */
+    public long inProgress() {
+        return submitted - delivered - failed;
+    }
+
+    /**
+     * @return antall leverte meldinger per sekund, målt fra batchen ble opprettet.
+     */
+    public double deliveredPerSecond() {
+        long millis = elapsed.toMillis();
+        return millis > 0 ? delivered * 1000.0 / millis : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s submitted, %s delivered, %s failed, %s in progress, after %s (%.1f deliveries/s)",
+                submitted, delivered, failed, inProgress(), elapsed, deliveredPerSecond());
+    }
+}
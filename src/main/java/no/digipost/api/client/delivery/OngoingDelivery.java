@@ -20,7 +20,15 @@ import no.digipost.api.client.representations.Document;
 import no.digipost.api.client.representations.MessageDelivery;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -56,6 +64,41 @@ public interface OngoingDelivery<OPERATIONS extends OngoingDelivery<OPERATIONS>
         return addContent(document, new ByteArrayInputStream(content));
     }
 
+    /**
+     * Laster opp innhold til et dokument fra en fil. Innholdet leses direkte fra filen
+     * når forsendelsen sendes, og filen må derfor ikke endres eller slettes før da.
+     * <p>
+     * Standardimplementasjonen åpner filen og laster opp innholdet som med
+     * {@link #addContent(Document, InputStream)}.
+     *
+     * @return videre operasjoner for å fullføre leveransen.
+     */
+    default OPERATIONS addContent(Document document, Path content) {
+        try {
+            return addContent(document, Files.newInputStream(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Kunne ikke åpne " + content + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Laster opp innhold til et dokument fra en kanal, fra kanalens nåværende posisjon og til slutten.
+     * Innholdet leses direkte fra kanalen når forsendelsen sendes, uten å endre kanalens posisjon.
+     * Kanalen må være åpen til forsendelsen er sendt, og lukkes ikke av klienten.
+     * <p>
+     * Standardimplementasjonen laster opp innholdet som en strøm fra kanalen, som med
+     * {@link #addContent(Document, InputStream)}, og endrer dermed kanalens posisjon.
+     *
+     * @return videre operasjoner for å fullføre leveransen.
+     */
+    default OPERATIONS addContent(Document document, FileChannel content) {
+        return addContent(document, new FilterInputStream(Channels.newInputStream(content)) {
+            @Override
+            public void close() {
+            }
+        });
+    }
+
 
     /**
      * Operasjoner for å sende forsendelser direkte til print.
@@ -87,6 +130,35 @@ public interface OngoingDelivery<OPERATIONS extends OngoingDelivery<OPERATIONS>
         default SendableWithPrintFallback addContent(Document document, byte[] content, byte[] printContent) {
             return addContent(document, new ByteArrayInputStream(content), new ByteArrayInputStream(printContent));
         }
+
+        /**
+         * Laster opp innhold til et dokument fra en fil, med alternativt innhold for print fra en annen fil,
+         * hvor sistnevnte må være PDF.
+         * <p>
+         * Standardimplementasjonen åpner filene og laster opp innholdet som med
+         * {@link #addContent(Document, InputStream, InputStream)}.
+         *
+         * @return videre operasjoner for å fullføre leveransen.
+         * @see #addContent(Document, Path)
+         */
+        default SendableWithPrintFallback addContent(Document document, Path content, Path printContent) {
+            InputStream contentStream;
+            try {
+                contentStream = Files.newInputStream(content);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Kunne ikke åpne " + content + ": " + e.getMessage(), e);
+            }
+            try {
+                return addContent(document, contentStream, Files.newInputStream(printContent));
+            } catch (IOException e) {
+                try {
+                    contentStream.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+                throw new UncheckedIOException("Kunne ikke åpne " + printContent + ": " + e.getMessage(), e);
+            }
+        }
     }
 
 
@@ -96,6 +168,21 @@ public interface OngoingDelivery<OPERATIONS extends OngoingDelivery<OPERATIONS>
          * Sender forsendelsen.
          */
         MessageDelivery send();
+
+        /**
+         * Sender forsendelsen asynkront, på {@link no.digipost.api.client.DigipostClientConfig.Builder#asyncExecutor(java.util.concurrent.Executor)
+         * klientens executor}. Sendingen blokkerer en tråd i executoren til den er ferdig, så antall forsendelser
+         * som sendes samtidig begrenses av antall tråder i executoren. Når køen til standard-executoren er full, sendes
+         * forsendelsen av tråden som kaller denne metoden.
+         *
+         * @return resultatet av sendingen, som fullføres med en
+         *         {@link no.digipost.api.client.errorhandling.DigipostClientException} dersom sendingen feiler.
+         *         Standardimplementasjonen sender med {@link #send()} på {@link CompletableFuture#supplyAsync(java.util.function.Supplier)
+         *         standard-executoren til CompletableFuture}.
+         */
+        default CompletableFuture<MessageDelivery> sendAsync() {
+            return CompletableFuture.supplyAsync(this::send);
+        }
     }
 
     public static interface SendableForPrintOnly extends SendableDelivery, ForPrintOnly { }
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.internal.UuidLongMap;
+import no.digipost.api.client.representations.Channel;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
+import no.digipost.api.client.representations.MessageDelivery;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static no.digipost.api.client.internal.UuidLongMap.ABSENT;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.DocumentEventType.POSTMARKED;
+import static no.digipost.api.client.representations.DocumentEventType.PRINT_FAILED;
+
+/**
+ * Holder oversikt over tilstanden til sendte dokumenter på klientsiden, i stedet for å hente status for hvert
+ * dokument. Forsendelser {@link #record(MessageDelivery) registreres} når de er sendt, og tilstanden holdes
+ * oppdatert ved å {@link #apply(DocumentEvent) anvende} dokumenthendelser, f.eks. fra
+ * {@link DocumentEventTailer} eller {@link no.digipost.api.client.DigipostClient#backfillDocumentEvents backfill}.
+ * Hendelser for dokumenter som ikke er registrert, legges til med tidspunktet dokumentet ble opprettet, slik at
+ * tilstanden også kan bygges opp fra hendelser alene. Kanalen er da ukjent, men settes til {@link Channel#PRINT}
+ * når dokumentet får en hendelse som bare forekommer for print, dvs. {@link DocumentEventType#POSTMARKED} eller
+ * {@link DocumentEventType#PRINT_FAILED}.
+ * <p>
+ * For å kunne holde titalls millioner dokumenter, lagres tilstanden til hvert dokument pakket i en {@code long},
+ * i et map med primitive arrays nøklet på de to {@code long}-verdiene i dokumentets UUID.
+ * <p>
+ * Trackeren kan brukes fra flere tråder. Spørringer kan gå samtidig, mens endringer venter på pågående spørringer.
+ * Den som mottar resultatene av en spørring må ikke endre trackeren.
+ */
+public final class DeliveryStatusTracker {
+
+    /*
+     * Packed state of a document:
+     *   bit 0      always set, as 0 denotes an absent entry
+     *   bits 1-2   channel: 0 unknown, otherwise Channel ordinal + 1
+     *   bits 8-23  one bit per DocumentEventType ordinal
+     *   bits 24-63 delivery time as epoch seconds, 0 if unknown
+     */
+    private static final long PRESENT = 1L;
+    private static final int CHANNEL_SHIFT = 1;
+    private static final long CHANNEL_MASK = 0b11L << CHANNEL_SHIFT;
+    private static final int EVENTS_SHIFT = 8;
+    private static final int DELIVERY_TIME_SHIFT = 24;
+
+    private static final Channel[] CHANNELS = Channel.values();
+    private static final DocumentEventType[] EVENT_TYPES = DocumentEventType.values();
+
+    static {
+        if (EVENT_TYPES.length > DELIVERY_TIME_SHIFT - EVENTS_SHIFT || CHANNELS.length > 3) {
+            throw new ExceptionInInitializerError("Too many event types or channels to be packed in the document state");
+        }
+    }
+
+    private final UuidLongMap documents;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public DeliveryStatusTracker() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedDocuments antall dokumenter trackeren forventes å holde, for å unngå å utvide plassen underveis.
+     */
+    public DeliveryStatusTracker(int expectedDocuments) {
+        this.documents = new UuidLongMap(expectedDocuments);
+    }
+
+    /**
+     * Registrer alle dokumentene i en forsendelse, med kanal og leveringstidspunkt.
+     * Hendelser som allerede er anvendt på dokumentene beholdes, og det samme gjør en kanal utledet fra
+     * hendelsene dersom forsendelsen ikke har kanal.
+     */
+    public void record(MessageDelivery delivery) {
+        long channel = channelBits(delivery.getChannel());
+        long deliveryTime = deliveryTimeBits(delivery.getDeliveryTime() != null ? delivery.getDeliveryTime().toInstant() : null);
+        lock.writeLock().lock();
+        try {
+            delivery.getAllDocuments().map(document -> document.uuid).forEach(uuid -> {
+                long state = documents.get(uuid);
+                long events = state & eventsMask();
+                long knownChannel = channel != 0 ? channel : state & CHANNEL_MASK;
+                documents.put(uuid, PRESENT | events | knownChannel | deliveryTime);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Anvend en hendelse på dokumentet den gjelder.
+     *
+     * @return {@code true} dersom tilstanden til dokumentet ble endret, {@code false} dersom hendelsen
+     *         allerede var anvendt, eller er av en type som ikke er kjent.
+     */
+    public boolean apply(DocumentEvent event) {
+        if (event.getType() == null) {
+            return false;
+        }
+        UUID uuid = event.getUuid();
+        lock.writeLock().lock();
+        try {
+            long state = documents.get(uuid);
+            if (state == ABSENT) {
+                state = PRESENT | deliveryTimeBits(event.getDocumentCreated() != null ? event.getDocumentCreated().toInstant() : null);
+            }
+            long updated = state | eventBit(event.getType());
+            if ((updated & CHANNEL_MASK) == 0 && isOnlyForPrint(event.getType())) {
+                updated |= channelBits(Channel.PRINT);
+            }
+            documents.put(uuid, updated);
+            return updated != state;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Optional<TrackedDocument> get(UUID uuid) {
+        long state;
+        lock.readLock().lock();
+        try {
+            state = documents.get(uuid);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return state != ABSENT ? Optional.of(toTrackedDocument(uuid, state)) : Optional.empty();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finn dokumenter som ikke er åpnet, og som ble levert før et gitt tidspunkt, f.eks. for å finne
+     * dokumenter som ikke er åpnet etter et gitt antall dager. Dokumenter sendt til print, og dokumenter
+     * med ukjent leveringstidspunkt, er ikke med. Dokumenter med ukjent kanal er med, med mindre de har fått
+     * en hendelse som viser at de er sendt til print.
+     */
+    public void forEachUnopened(Instant deliveredBefore, Consumer<? super UUID> consumer) {
+        long before = deliveredBefore.getEpochSecond();
+        long printChannel = channelBits(Channel.PRINT);
+        long opened = eventBit(OPENED);
+        forEach(state -> {
+            long deliveredAt = state >>> DELIVERY_TIME_SHIFT;
+            return (state & opened) == 0 && (state & CHANNEL_MASK) != printChannel && deliveredAt != 0 && deliveredAt < before;
+        }, consumer);
+    }
+
+    /**
+     * Finn dokumenter som har hatt en gitt type hendelse, f.eks. {@link DocumentEventType#PRINT_FAILED}.
+     */
+    public void forEachWithEvent(DocumentEventType type, Consumer<? super UUID> consumer) {
+        long event = eventBit(type);
+        forEach(state -> (state & event) != 0, consumer);
+    }
+
+    /**
+     * @return antall dokumenter som har hatt en gitt type hendelse.
+     */
+    public long countWithEvent(DocumentEventType type) {
+        long[] count = {0};
+        forEachWithEvent(type, uuid -> count[0]++);
+        return count[0];
+    }
+
+    private void forEach(StatePredicate predicate, Consumer<? super UUID> consumer) {
+        lock.readLock().lock();
+        try {
+            documents.forEach((msb, lsb, state) -> {
+                if (predicate.test(state)) {
+                    consumer.accept(new UUID(msb, lsb));
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface StatePredicate {
+        boolean test(long state);
+    }
+
+
+    private static TrackedDocument toTrackedDocument(UUID uuid, long state) {
+        int channel = (int) ((state & CHANNEL_MASK) >>> CHANNEL_SHIFT);
+        long deliveredAt = state >>> DELIVERY_TIME_SHIFT;
+        EnumSet<DocumentEventType> events = EnumSet.noneOf(DocumentEventType.class);
+        for (DocumentEventType type : EVENT_TYPES) {
+            if ((state & eventBit(type)) != 0) {
+                events.add(type);
+            }
+        }
+        return new TrackedDocument(uuid, channel != 0 ? CHANNELS[channel - 1] : null, deliveredAt != 0 ? Instant.ofEpochSecond(deliveredAt) : null, events);
+    }
+
+    private static boolean isOnlyForPrint(DocumentEventType type) {
+        return type == POSTMARKED || type == PRINT_FAILED;
+    }
+
+    private static long channelBits(Channel channel) {
+        return channel != null ? (long) (channel.ordinal() + 1) << CHANNEL_SHIFT : 0;
+    }
+
+    private static long eventBit(DocumentEventType type) {
+        return 1L << (EVENTS_SHIFT + type.ordinal());
+    }
+
+    private static long eventsMask() {
+        return ((1L << EVENT_TYPES.length) - 1) << EVENTS_SHIFT;
+    }
+
+    private static long deliveryTimeBits(Instant time) {
+        return time != null && time.getEpochSecond() > 0 ? time.getEpochSecond() << DELIVERY_TIME_SHIFT : 0;
+    }
+}
@@ -16,6 +16,8 @@
 package no.digipost.api.client.document;
 
 import no.digipost.api.client.SenderId;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
 import no.digipost.api.client.representations.DocumentEvents;
 import no.digipost.api.client.representations.DocumentStatus;
 import no.digipost.api.client.representations.Link;
@@ -23,6 +25,8 @@ import no.digipost.api.client.representations.Link;
 import java.io.InputStream;
 import java.time.ZonedDateTime;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public interface DocumentApi {
 
@@ -53,4 +57,25 @@ public interface DocumentApi {
      */
     DocumentEvents getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults);
 
+    /**
+     * Henter hendelser knyttet til tidligere sendte brev, og gir dem til {@code eventConsumer} etter hvert
+     * som de leses, i stedet for å bygge opp hele siden med hendelser først. Kun hendelser av typer som
+     * godtas av {@code types} blir bygget og gitt videre.
+     *
+     * @param organisation Organisasjonsnummer
+     * @param partId Frivillig organisasjons-enhet, kan være {@code null}
+     * @param types hvilke typer hendelser som skal gis videre. Predikatet får {@code null} for typer
+     *              som ikke er kjent av denne klienten.
+     * @param eventConsumer mottar hendelsene i den rekkefølgen de er i siden
+     *
+     * @return antall hendelser i siden, inkludert de som ble hoppet over på grunn av type. Dette er
+     *         antallet som skal legges til {@code offset} for å hente neste side.
+     */
+    default int getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults,
+                                  Predicate<? super DocumentEventType> types, Consumer<? super DocumentEvent> eventConsumer) {
+        DocumentEvents page = getDocumentEvents(organisation, partId, from, to, offset, maxResults);
+        page.getEvents().stream().filter(event -> types.test(event.getType())).forEachOrdered(eventConsumer);
+        return page.getEvents().size();
+    }
+
 }
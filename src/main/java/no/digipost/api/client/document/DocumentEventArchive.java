@@ -0,0 +1,350 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.internal.UuidLongMap;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
+import no.digipost.api.client.representations.EventMetadata;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static no.digipost.api.client.internal.UuidLongMap.ABSENT;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
+
+/**
+ * Et kompakt arkiv med dokumenthendelser, for å kunne gjøre spørringer mot historikken uten nettverkstilgang.
+ * Hendelser legges til med en {@link DocumentEventArchiveWriter}.
+ * <p>
+ * Arkivet er en katalog med én fil per kolonne, der hver hendelse har en verdi med fast bredde i hver kolonne:
+ * UUID som to {@code long}, type som en {@code byte}, og tidspunktene som epoch-millisekunder. Metadata for
+ * hendelser som har det, ligger i en egen fil. Filene minne-mappes, slik at et søk kun leser kolonnene det
+ * trenger, og hendelser bygges kun for treff.
+ * <p>
+ * Et åpnet arkiv ser hendelsene som var skrevet da det ble åpnet. Arkivet kan leses fra flere tråder.
+ */
+public final class DocumentEventArchive implements Closeable {
+
+    static final class Column {
+        final String file;
+        final int width;
+
+        Column(String file, int width) {
+            this.file = file;
+            this.width = width;
+        }
+    }
+
+    static final int UUID_MSB = 0;
+    static final int UUID_LSB = 1;
+    static final int TYPE = 2;
+    static final int DOCUMENT_CREATED = 3;
+    static final int METADATA = 4;
+    static final int CREATED = 5;
+    static final Column[] COLUMNS = {
+            new Column("uuid-msb.col", 8),
+            new Column("uuid-lsb.col", 8),
+            new Column("type.col", 1),
+            new Column("document-created.col", 8),
+            new Column("metadata.col", 8),
+            new Column("created.col", 8)
+    };
+    static final String METADATA_FILE = "metadata.dat";
+    static final QName METADATA_ELEMENT = new QName("http://api.digipost.no/schema/v7", "metadata");
+
+    static final byte UNKNOWN_TYPE = -1;
+    static final long NO_METADATA = -1;
+
+    private static final DocumentEventType[] TYPES = DocumentEventType.values();
+
+
+    /**
+     * Åpne et arkiv for lesing, med tidspunkter i systemets standard tidssone.
+     */
+    public static DocumentEventArchive open(Path directory) {
+        return open(directory, ZoneId.systemDefault());
+    }
+
+    /**
+     * Åpne et arkiv for lesing.
+     *
+     * @param zone tidssonen tidspunktene til hendelsene gis i
+     */
+    public static DocumentEventArchive open(Path directory, ZoneId zone) {
+        try {
+            return new DocumentEventArchive(directory, zone);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open document event archive " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+
+    private final Path directory;
+    private final ZoneId zone;
+    private final long size;
+    private final MappedColumn[] columns = new MappedColumn[COLUMNS.length];
+    private final FileChannel metadata;
+    private UuidIndex uuidIndex;
+
+    private DocumentEventArchive(Path directory, ZoneId zone) throws IOException {
+        this.directory = directory;
+        this.zone = zone;
+        long complete = Long.MAX_VALUE;
+        for (Column column : COLUMNS) {
+            Path file = directory.resolve(column.file);
+            complete = Math.min(complete, Files.exists(file) ? Files.size(file) / column.width : 0);
+        }
+        this.size = complete;
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns[i] = MappedColumn.map(directory.resolve(COLUMNS[i].file), COLUMNS[i].width, size);
+        }
+        Path metadataFile = directory.resolve(METADATA_FILE);
+        this.metadata = Files.exists(metadataFile) ? FileChannel.open(metadataFile, READ) : null;
+    }
+
+    /**
+     * @return antall hendelser i arkivet
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @param index posisjonen til hendelsen, fra {@code 0} til {@link #size()}
+     */
+    public DocumentEvent get(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No event at index " + index + " in archive with " + size + " events");
+        }
+        byte type = columns[TYPE].getByte(index);
+        return new DocumentEvent(
+                new UUID(columns[UUID_MSB].getLong(index), columns[UUID_LSB].getLong(index)),
+                type != UNKNOWN_TYPE && type < TYPES.length ? TYPES[type] : null,
+                time(columns[CREATED].getLong(index)),
+                time(columns[DOCUMENT_CREATED].getLong(index)),
+                metadata(columns[METADATA].getLong(index)));
+    }
+
+    /**
+     * Gi alle hendelsene i arkivet, i den rekkefølgen de ble lagt til.
+     */
+    public void forEach(Consumer<? super DocumentEvent> consumer) {
+        for (long index = 0; index < size; index++) {
+            consumer.accept(get(index));
+        }
+    }
+
+    /**
+     * Gi hendelser opprettet i tidsrommet {@code [from, to)}, av typer som godtas av {@code types}, i den
+     * rekkefølgen de ble lagt til. Kun kolonnene for tidspunkt og type leses for å finne treffene.
+     *
+     * @param types hvilke typer hendelser som skal med. Predikatet får {@code null} for ukjente typer.
+     */
+    public void scan(Instant from, Instant to, Predicate<? super DocumentEventType> types, Consumer<? super DocumentEvent> consumer) {
+        scanIndexes(from, to, types, index -> consumer.accept(get(index)));
+    }
+
+    /**
+     * Tell hendelser opprettet i tidsrommet {@code [from, to)}, av typer som godtas av {@code types},
+     * uten å bygge hendelsene.
+     */
+    public long count(Instant from, Instant to, Predicate<? super DocumentEventType> types) {
+        long[] count = {0};
+        scanIndexes(from, to, types, index -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Finn alle hendelser for et dokument, i den rekkefølgen de ble lagt til. Første gang det slås opp i
+     * arkivet, bygges en indeks over UUID-ene i arkivet i minnet.
+     */
+    public List<DocumentEvent> findByUuid(UUID uuid) {
+        UuidIndex index = uuidIndex();
+        List<DocumentEvent> events = new ArrayList<>();
+        for (long i = index.last(uuid); i >= 0; i = index.previous(i)) {
+            events.add(get(i));
+        }
+        Collections.reverse(events);
+        return events;
+    }
+
+    @Override
+    public void close() {
+        if (metadata != null) {
+            try {
+                metadata.close();
+            } catch (IOException e) {
+                // nothing more to do
+            }
+        }
+    }
+
+    private void scanIndexes(Instant from, Instant to, Predicate<? super DocumentEventType> types, IndexConsumer consumer) {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        boolean[] wantedTypes = new boolean[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            wantedTypes[i] = types.test(TYPES[i]);
+        }
+        boolean wantUnknown = types.test(null);
+        MappedColumn created = columns[CREATED];
+        MappedColumn type = columns[TYPE];
+        for (long index = 0; index < size; index++) {
+            long createdMillis = created.getLong(index);
+            if (createdMillis >= fromMillis && createdMillis < toMillis) {
+                byte typeOrdinal = type.getByte(index);
+                if (typeOrdinal >= 0 && typeOrdinal < wantedTypes.length ? wantedTypes[typeOrdinal] : wantUnknown) {
+                    consumer.accept(index);
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface IndexConsumer {
+        void accept(long index);
+    }
+
+    private ZonedDateTime time(long epochMilli) {
+        return epochMilli != Long.MIN_VALUE ? ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), zone) : null;
+    }
+
+    private EventMetadata metadata(long offset) {
+        if (offset == NO_METADATA || metadata == null) {
+            return null;
+        }
+        try {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(length, offset);
+            ByteBuffer xml = ByteBuffer.allocate(length.getInt(0));
+            readFully(xml, offset + 4);
+            return unmarshal(jaxbContext, new StreamSource(new ByteArrayInputStream(xml.array())), EventMetadata.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read event metadata at " + offset + " in " + directory.resolve(METADATA_FILE) + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (metadata.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private synchronized UuidIndex uuidIndex() {
+        if (uuidIndex == null) {
+            uuidIndex = new UuidIndex(columns[UUID_MSB], columns[UUID_LSB], size);
+        }
+        return uuidIndex;
+    }
+
+
+    /**
+     * The events of each uuid, as a map from the uuid to its last event, and a chain from each event
+     * to the previous event of the same uuid. Indexes are stored plus one, as 0 denotes absence.
+     */
+    private static final class UuidIndex {
+        private final UuidLongMap last;
+        private final int[] previous;
+
+        UuidIndex(MappedColumn msb, MappedColumn lsb, long size) {
+            if (size >= Integer.MAX_VALUE) {
+                throw new IllegalStateException("Unable to index archive with " + size + " events");
+            }
+            this.last = new UuidLongMap((int) size);
+            this.previous = new int[(int) size];
+            for (int index = 0; index < size; index++) {
+                long mostSignificant = msb.getLong(index);
+                long leastSignificant = lsb.getLong(index);
+                previous[index] = (int) last.get(mostSignificant, leastSignificant);
+                last.put(mostSignificant, leastSignificant, index + 1);
+            }
+        }
+
+        long last(UUID uuid) {
+            return last.get(uuid) - 1;
+        }
+
+        long previous(long index) {
+            return previous[(int) index] - 1L;
+        }
+    }
+
+
+    /**
+     * A column file mapped into memory, in segments, as a single mapping is limited to 2 GB.
+     */
+    private static final class MappedColumn {
+        private static final int SEGMENT_SHIFT = 30;
+        private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+        static MappedColumn map(Path file, int width, long values) throws IOException {
+            long bytes = values * width;
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((bytes + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            if (segments.length > 0) {
+                try (FileChannel channel = FileChannel.open(file, READ)) {
+                    for (int i = 0; i < segments.length; i++) {
+                        long position = (long) i << SEGMENT_SHIFT;
+                        segments[i] = channel.map(READ_ONLY, position, Math.min(bytes - position, 1L << SEGMENT_SHIFT));
+                    }
+                }
+            }
+            return new MappedColumn(segments, width);
+        }
+
+        private final MappedByteBuffer[] segments;
+        private final int width;
+
+        private MappedColumn(MappedByteBuffer[] segments, int width) {
+            this.segments = segments;
+            this.width = width;
+        }
+
+        long getLong(long index) {
+            long position = index * width;
+            return segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & SEGMENT_MASK));
+        }
+
+        byte getByte(long index) {
+            long position = index * width;
+            return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+        }
+    }
+}
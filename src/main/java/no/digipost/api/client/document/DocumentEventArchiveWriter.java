@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.EventMetadata;
+
+import javax.xml.bind.JAXBElement;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static no.digipost.api.client.document.DocumentEventArchive.COLUMNS;
+import static no.digipost.api.client.document.DocumentEventArchive.CREATED;
+import static no.digipost.api.client.document.DocumentEventArchive.DOCUMENT_CREATED;
+import static no.digipost.api.client.document.DocumentEventArchive.METADATA;
+import static no.digipost.api.client.document.DocumentEventArchive.METADATA_ELEMENT;
+import static no.digipost.api.client.document.DocumentEventArchive.METADATA_FILE;
+import static no.digipost.api.client.document.DocumentEventArchive.NO_METADATA;
+import static no.digipost.api.client.document.DocumentEventArchive.TYPE;
+import static no.digipost.api.client.document.DocumentEventArchive.UNKNOWN_TYPE;
+import static no.digipost.api.client.document.DocumentEventArchive.UUID_LSB;
+import static no.digipost.api.client.document.DocumentEventArchive.UUID_MSB;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.marshalToBytes;
+
+/**
+ * Legger til dokumenthendelser i et {@link DocumentEventArchive arkiv}. Hendelsene bufres, og skrives til
+ * filene ved {@link #flush()} og {@link #close()}, eller når bufferet er fullt.
+ * <p>
+ * Dersom skrivingen ble avbrutt, f.eks. av at prosessen stoppet, kan kolonnene ha ulikt antall hendelser.
+ * Når arkivet åpnes for skriving igjen, kuttes alle kolonnene til antallet hendelser som er fullstendig skrevet.
+ * <p>
+ * Denne klassen er ikke trådsikker, og det skal kun være én writer for et arkiv om gangen.
+ */
+public final class DocumentEventArchiveWriter implements Closeable {
+
+    private static final int BUFFERED_EVENTS = 4096;
+
+    /**
+     * Åpne et arkiv for å legge til hendelser. Katalogen og filene opprettes dersom de ikke finnes.
+     */
+    public static DocumentEventArchiveWriter open(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            return new DocumentEventArchiveWriter(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open document event archive " + directory + " for writing: " + e.getMessage(), e);
+        }
+    }
+
+
+    private final Path directory;
+    private final FileChannel[] columns = new FileChannel[COLUMNS.length];
+    private final ByteBuffer[] buffers = new ByteBuffer[COLUMNS.length];
+    private final FileChannel metadata;
+    private ByteBuffer metadataBuffer = ByteBuffer.allocate(64 * 1024);
+    private long metadataEnd;
+    private long size;
+
+    private DocumentEventArchiveWriter(Path directory) throws IOException {
+        this.directory = directory;
+        try {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                columns[i] = FileChannel.open(directory.resolve(COLUMNS[i].file), CREATE, READ, WRITE);
+                buffers[i] = ByteBuffer.allocate(BUFFERED_EVENTS * COLUMNS[i].width);
+            }
+            metadata = FileChannel.open(directory.resolve(METADATA_FILE), CREATE, READ, WRITE);
+            truncateToCompleteEvents();
+        } catch (IOException | RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    private void truncateToCompleteEvents() throws IOException {
+        long complete = Long.MAX_VALUE;
+        for (int i = 0; i < COLUMNS.length; i++) {
+            complete = Math.min(complete, columns[i].size() / COLUMNS[i].width);
+        }
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns[i].truncate(complete * COLUMNS[i].width);
+            columns[i].position(complete * COLUMNS[i].width);
+        }
+        size = complete;
+
+        metadataEnd = 0;
+        ByteBuffer entry = ByteBuffer.allocate(8);
+        for (long index = complete - 1; index >= 0; index--) {
+            entry.clear();
+            columns[METADATA].read(entry, index * 8);
+            long offset = entry.getLong(0);
+            if (offset != NO_METADATA) {
+                ByteBuffer length = ByteBuffer.allocate(4);
+                metadata.read(length, offset);
+                metadataEnd = offset + 4 + length.getInt(0);
+                break;
+            }
+        }
+        metadata.truncate(metadataEnd);
+        metadata.position(metadataEnd);
+    }
+
+    /**
+     * Legg til en hendelse i arkivet.
+     */
+    public void append(DocumentEvent event) {
+        if (buffers[CREATED].remaining() < COLUMNS[CREATED].width) {
+            flush();
+        }
+        long metadataOffset = event.getMetadata() != null ? appendMetadata(event.getMetadata()) : NO_METADATA;
+        buffers[UUID_MSB].putLong(event.getUuid().getMostSignificantBits());
+        buffers[UUID_LSB].putLong(event.getUuid().getLeastSignificantBits());
+        buffers[TYPE].put(event.getType() != null ? (byte) event.getType().ordinal() : UNKNOWN_TYPE);
+        buffers[CREATED].putLong(epochMilli(event.getCreated()));
+        buffers[DOCUMENT_CREATED].putLong(epochMilli(event.getDocumentCreated()));
+        buffers[METADATA].putLong(metadataOffset);
+        size++;
+    }
+
+    /**
+     * @return antall hendelser i arkivet, inkludert de som ikke er skrevet til filene ennå.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Skriv bufrede hendelser til filene, slik at de blir synlige for arkiver som åpnes etterpå.
+     */
+    public void flush() {
+        try {
+            write(metadataBuffer, metadata);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                write(buffers[i], columns[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write to document event archive " + directory + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Only the metadata itself is stored, as XML with its type given by {@code xsi:type}, prefixed with
+     * its length. The rest of the event is already in the columns.
+     *
+     * @return the offset of the metadata in the metadata file
+     */
+    private long appendMetadata(EventMetadata eventMetadata) {
+        byte[] xml = marshalToBytes(jaxbContext, new JAXBElement<>(METADATA_ELEMENT, EventMetadata.class, eventMetadata));
+        if (metadataBuffer.remaining() < 4 + xml.length) {
+            flush();
+            if (metadataBuffer.capacity() < 4 + xml.length) {
+                metadataBuffer = ByteBuffer.allocate(4 + xml.length);
+            }
+        }
+        long offset = metadataEnd;
+        metadataBuffer.putInt(xml.length).put(xml);
+        metadataEnd += 4 + xml.length;
+        return offset;
+    }
+
+    private static void write(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void closeQuietly() {
+        for (FileChannel column : columns) {
+            closeQuietly(column);
+        }
+        closeQuietly(metadata);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing more to do
+            }
+        }
+    }
+
+    private static long epochMilli(ZonedDateTime time) {
+        return time != null ? time.toInstant().toEpochMilli() : Long.MIN_VALUE;
+    }
+}
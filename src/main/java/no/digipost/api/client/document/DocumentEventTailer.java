@@ -0,0 +1,383 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.internal.DaemonThreadFactory;
+import no.digipost.api.client.internal.EventFingerprintSet;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+import static java.util.Arrays.asList;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Følger med på nye dokumenthendelser, og gir dem videre til en lytter.
+ * <p>
+ * Posisjonen (tidspunktet vinduet starter på, og offset i vinduet) lagres i en fil etter hver side
+ * som er behandlet, slik at man fortsetter der man slapp etter en omstart. Når alle hendelser i vinduet
+ * er hentet, flyttes starten av vinduet frem til den nyeste hendelsen, eventuelt minus en
+ * {@link Builder#overlap(Duration) overlapp}. Hendelser som hentes flere ganger blir kun gitt til lytteren
+ * én gang, så lenge prosessen kjører. Etter en omstart kan hendelser i overlappen bli gitt videre på nytt.
+ * <p>
+ * Intervallet mellom hver henting tilpasses etter hvor mange hendelser som kommer: Etter at det er funnet
+ * nye hendelser hentes det igjen etter {@link Builder#minPollInterval(Duration) minste intervall}, og
+ * intervallet dobles for hver henting uten nye hendelser, opp til {@link Builder#maxPollInterval(Duration)
+ * største intervall}.
+ */
+public final class DocumentEventTailer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentEventTailer.class);
+
+    public static Builder newDocumentEventTailer(DocumentApi documentApi, Path cursorFile) {
+        return new Builder(documentApi, cursorFile);
+    }
+
+    public static class Builder {
+        private final DocumentApi documentApi;
+        private final Path cursorFile;
+        private String organisation;
+        private String partId;
+        private int pageSize = 100;
+        private Predicate<? super DocumentEventType> types = type -> true;
+        private ZonedDateTime startFrom;
+        private Duration overlap = Duration.ZERO;
+        private Duration minPollInterval = Duration.ofSeconds(1);
+        private Duration maxPollInterval = Duration.ofMinutes(1);
+        private Clock clock = Clock.systemDefaultZone();
+
+        private Builder(DocumentApi documentApi, Path cursorFile) {
+            this.documentApi = requireNonNull(documentApi, "documentApi can not be null");
+            this.cursorFile = requireNonNull(cursorFile, "cursorFile can not be null");
+        }
+
+        /**
+         * Organisasjonsnummer til avsenderen hendelsene skal hentes for. Default er avsenderen klienten er satt opp med.
+         */
+        public Builder organisation(String organisation) {
+            this.organisation = organisation;
+            return this;
+        }
+
+        /**
+         * Frivillig organisasjons-enhet.
+         */
+        public Builder partId(String partId) {
+            this.partId = partId;
+            return this;
+        }
+
+        /**
+         * Antall hendelser som hentes per side, maksimalt {@value DocumentEventsOptions#MAX_PAGE_SIZE}.
+         * Posisjonen lagres etter hver side. Default er 100.
+         */
+        public Builder pageSize(int pageSize) {
+            this.pageSize = DocumentEventsOptions.Builder.requireValidPageSize(pageSize);
+            return this;
+        }
+
+        /**
+         * Hvilke typer hendelser som skal gis til lytteren. Default er alle typer.
+         * <p>
+         * Alle hendelser hentes uansett type, og filtreres av tailer, slik at starten av vinduet flyttes
+         * frem til den nyeste hendelsen også når det er lenge mellom hver hendelse av de ønskede typene.
+         */
+        public Builder types(Predicate<? super DocumentEventType> types) {
+            this.types = requireNonNull(types, "types can not be null");
+            return this;
+        }
+
+        /**
+         * Hvor det skal begynnes dersom det ikke finnes noen lagret posisjon. Default er nå.
+         */
+        public Builder startFrom(ZonedDateTime startFrom) {
+            this.startFrom = requireNonNull(startFrom, "startFrom can not be null");
+            return this;
+        }
+
+        /**
+         * Hvor langt tilbake fra den nyeste hendelsen neste vindu skal starte, for å få med hendelser som
+         * blir synlige etter hendelser med senere tidspunkt. Default er ingen overlapp.
+         */
+        public Builder overlap(Duration overlap) {
+            this.overlap = requireNonNegative(overlap, "overlap");
+            return this;
+        }
+
+        /**
+         * Intervallet mellom hver henting når det kommer nye hendelser. Default er 1 sekund.
+         */
+        public Builder minPollInterval(Duration interval) {
+            this.minPollInterval = requireNonNegative(interval, "minPollInterval");
+            return this;
+        }
+
+        /**
+         * Det lengste intervallet mellom hver henting når det ikke kommer nye hendelser. Default er 1 minutt.
+         */
+        public Builder maxPollInterval(Duration interval) {
+            this.maxPollInterval = requireNonNegative(interval, "maxPollInterval");
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = requireNonNull(clock, "clock can not be null");
+            return this;
+        }
+
+        /**
+         * @throws UncheckedIOException if the cursor file exists, but can not be read
+         */
+        public DocumentEventTailer build() {
+            if (maxPollInterval.compareTo(minPollInterval) < 0) {
+                throw new IllegalArgumentException("maxPollInterval " + maxPollInterval + " is less than minPollInterval " + minPollInterval);
+            }
+            return new DocumentEventTailer(this);
+        }
+
+        private static Duration requireNonNegative(Duration duration, String name) {
+            if (requireNonNull(duration, name + " can not be null").isNegative()) {
+                throw new IllegalArgumentException(name + " can not be negative, was " + duration);
+            }
+            return duration;
+        }
+    }
+
+
+    private final DocumentApi documentApi;
+    private final Path cursorFile;
+    private final String organisation;
+    private final String partId;
+    private final int pageSize;
+    private final Predicate<? super DocumentEventType> types;
+    private final Duration overlap;
+    private final Duration minPollInterval;
+    private final Duration maxPollInterval;
+    private final Clock clock;
+
+    private final EventFingerprintSet seen = new EventFingerprintSet();
+    private Cursor cursor;
+    private Duration pollInterval;
+
+    private volatile ScheduledExecutorService scheduler;
+    private volatile boolean closed = false;
+
+    private DocumentEventTailer(Builder builder) {
+        this.documentApi = builder.documentApi;
+        this.cursorFile = builder.cursorFile;
+        this.organisation = builder.organisation;
+        this.partId = builder.partId;
+        this.pageSize = builder.pageSize;
+        this.types = builder.types;
+        this.overlap = builder.overlap;
+        this.minPollInterval = builder.minPollInterval;
+        this.maxPollInterval = builder.maxPollInterval;
+        this.clock = builder.clock;
+        this.pollInterval = builder.minPollInterval;
+        this.cursor = Cursor.read(cursorFile).orElseGet(() -> new Cursor(builder.startFrom != null ? builder.startFrom : ZonedDateTime.now(clock), 0));
+    }
+
+    /**
+     * Hent alle nye hendelser frem til nå, og gi dem til lytteren i den rekkefølgen de hentes.
+     * Posisjonen lagres etter at hendelsene i hver side er gitt til lytteren. Dersom lytteren
+     * kaster en exception, lagres ikke posisjonen for siden, og siden hentes på nytt neste gang.
+     *
+     * @return antall nye hendelser som ble gitt til lytteren
+     */
+    public synchronized int poll(Consumer<? super DocumentEvent> listener) {
+        ZonedDateTime to = ZonedDateTime.now(clock);
+        ZonedDateTime latest = null;
+        int delivered = 0;
+        int eventCount;
+        do {
+            List<DocumentEvent> page = new ArrayList<>(pageSize);
+            eventCount = documentApi.getDocumentEvents(organisation, partId, cursor.from, to, cursor.offset, pageSize, type -> true, page::add);
+            for (DocumentEvent event : page) {
+                if (types.test(event.getType()) && !seen.contains(event)) {
+                    listener.accept(event);
+                    seen.add(event);
+                    delivered++;
+                }
+                if (latest == null || event.getCreated().isAfter(latest)) {
+                    latest = event.getCreated();
+                }
+            }
+            cursor = new Cursor(cursor.from, cursor.offset + eventCount);
+            cursor.write(cursorFile);
+        } while (eventCount >= pageSize);
+
+        if (latest != null && latest.minus(overlap).isAfter(cursor.from)) {
+            cursor = new Cursor(latest.minus(overlap), 0);
+            cursor.write(cursorFile);
+            seen.removeCreatedBefore(cursor.from.toInstant().toEpochMilli());
+        }
+        return delivered;
+    }
+
+    /**
+     * Start å hente nye hendelser i bakgrunnen, med tilpasset intervall, til {@link #close()} blir kalt.
+     * Feil ved henting blir logget, og hentingen forsøkes igjen etter et lengre intervall.
+     */
+    public synchronized void start(Consumer<? super DocumentEvent> listener) {
+        if (closed) {
+            throw new IllegalStateException("Tailer is closed");
+        } else if (scheduler != null) {
+            throw new IllegalStateException("Tailer is already started");
+        }
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("digipost-document-events"));
+        scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = scheduler;
+        scheduler.execute(() -> pollAndReschedule(listener));
+    }
+
+    private void pollAndReschedule(Consumer<? super DocumentEvent> listener) {
+        if (closed) {
+            return;
+        }
+        Duration next;
+        try {
+            next = nextPollInterval(poll(listener));
+        } catch (RuntimeException e) {
+            next = nextPollInterval(0);
+            LOG.warn("Failed to poll document events, trying again in {}: {}: {}", next, e.getClass().getSimpleName(), e.getMessage(), e);
+        }
+        try {
+            if (!closed) {
+                scheduler.schedule(() -> pollAndReschedule(listener), next.toMillis(), MILLISECONDS);
+            }
+        } catch (RejectedExecutionException closedMeanwhile) {
+            LOG.debug("Not polling document events again, as the tailer is closed");
+        }
+    }
+
+    /**
+     * @return the interval until the next poll, given the number of new events in the last poll
+     */
+    synchronized Duration nextPollInterval(int newEvents) {
+        if (newEvents > 0) {
+            pollInterval = minPollInterval;
+        } else {
+            Duration doubled = pollInterval.isZero() ? Duration.ofMillis(1) : pollInterval.multipliedBy(2);
+            pollInterval = doubled.compareTo(maxPollInterval) < 0 ? doubled : maxPollInterval;
+        }
+        return pollInterval;
+    }
+
+    synchronized ZonedDateTime cursorFrom() {
+        return cursor.from;
+    }
+
+    synchronized int cursorOffset() {
+        return cursor.offset;
+    }
+
+    /**
+     * Stopp hentingen i bakgrunnen. Dersom en henting pågår, venter denne metoden til den er fullført,
+     * slik at posisjonen ikke endres etter at tailer er lukket.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        synchronized (this) {
+            // a poll in progress holds the lock until it is completed
+        }
+    }
+
+
+    private static final class Cursor {
+
+        private static final String FROM = "from=";
+        private static final String OFFSET = "offset=";
+
+        final ZonedDateTime from;
+        final int offset;
+
+        Cursor(ZonedDateTime from, int offset) {
+            this.from = from;
+            this.offset = offset;
+        }
+
+        static Optional<Cursor> read(Path file) {
+            List<String> lines;
+            try {
+                lines = Files.readAllLines(file, UTF_8);
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read document events cursor from " + file + ": " + e.getMessage(), e);
+            }
+            ZonedDateTime from = null;
+            Integer offset = null;
+            for (String line : lines) {
+                if (line.startsWith(FROM)) {
+                    from = ZonedDateTime.parse(line.substring(FROM.length()), ISO_OFFSET_DATE_TIME);
+                } else if (line.startsWith(OFFSET)) {
+                    offset = Integer.valueOf(line.substring(OFFSET.length()));
+                }
+            }
+            if (from == null || offset == null) {
+                throw new IllegalStateException("Invalid document events cursor in " + file + ": " + lines);
+            }
+            return Optional.of(new Cursor(from, offset));
+        }
+
+        /**
+         * Write the cursor to a temporary file, which then replaces the cursor file, so that the
+         * cursor file is never left partially written.
+         */
+        void write(Path file) {
+            Path written = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Files.write(written, asList(FROM + ISO_OFFSET_DATE_TIME.format(from), OFFSET + offset), UTF_8);
+                try {
+                    Files.move(written, file, REPLACE_EXISTING, ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(written, file, REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write document events cursor to " + file + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
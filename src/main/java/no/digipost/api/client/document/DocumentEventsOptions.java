@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.representations.DocumentEventType;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Innstillinger for å hente dokumenthendelser som en strøm over flere sider.
+ */
+public final class DocumentEventsOptions {
+
+    public static final DocumentEventsOptions DEFAULT = newDocumentEventsOptions().build();
+
+    /**
+     * Det største antallet hendelser Digipost gir i én side. En side med færre hendelser enn det som ble
+     * bedt om regnes som den siste, så en større side ville gjort at hendelser ble hoppet over uten feil.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    public static Builder newDocumentEventsOptions() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String organisation;
+        private String partId;
+        private int pageSize = 100;
+        private int pagesAhead = 1;
+        private Predicate<? super DocumentEventType> types = type -> true;
+        private Duration timeSlice = Duration.ofDays(1);
+        private int maxConcurrentSlices = 4;
+
+        private Builder() {
+        }
+
+        /**
+         * Organisasjonsnummer til avsenderen hendelsene skal hentes for. Default er avsenderen klienten er satt opp med.
+         */
+        public Builder organisation(String organisation) {
+            this.organisation = organisation;
+            return this;
+        }
+
+        /**
+         * Frivillig organisasjons-enhet.
+         */
+        public Builder partId(String partId) {
+            this.partId = partId;
+            return this;
+        }
+
+        /**
+         * Antall hendelser som hentes per side, maksimalt {@value #MAX_PAGE_SIZE}. Default er 100.
+         */
+        public Builder pageSize(int pageSize) {
+            this.pageSize = requireValidPageSize(pageSize);
+            return this;
+        }
+
+        /**
+         * Antall sider som hentes i bakgrunnen mens hendelsene i gjeldende side blir behandlet.
+         * Dette begrenser også hvor mange sider som holdes i minnet samtidig. {@code 0} henter
+         * hver side først når den forrige er ferdig behandlet. Default er 1.
+         */
+        public Builder pagesAhead(int pages) {
+            if (pages < 0) {
+                throw new IllegalArgumentException("pagesAhead can not be negative, was " + pages);
+            }
+            this.pagesAhead = pages;
+            return this;
+        }
+
+        /**
+         * Hvilke typer hendelser som skal være med, f.eks. {@code EnumSet.of(OPENED)::contains}.
+         * Hendelser av andre typer blir ikke bygget. Default er alle typer.
+         */
+        public Builder types(Predicate<? super DocumentEventType> types) {
+            this.types = requireNonNull(types, "types can not be null");
+            return this;
+        }
+
+        /**
+         * Lengden på hvert tidsrom hendelsene hentes i ved
+         * {@link no.digipost.api.client.DigipostClient#backfillDocumentEvents(ZonedDateTime, ZonedDateTime, DocumentEventsOptions) backfill}.
+         * Hendelsene i ett tidsrom holdes i minnet mens de sorteres, så tidsrommet bør ikke være lenger enn at det
+         * får plass. Default er 1 døgn.
+         */
+        public Builder timeSlice(Duration timeSlice) {
+            if (timeSlice.isNegative() || timeSlice.isZero()) {
+                throw new IllegalArgumentException("timeSlice must be positive, was " + timeSlice);
+            }
+            this.timeSlice = timeSlice;
+            return this;
+        }
+
+        /**
+         * Hvor mange tidsrom som hentes samtidig ved
+         * {@link no.digipost.api.client.DigipostClient#backfillDocumentEvents(ZonedDateTime, ZonedDateTime, DocumentEventsOptions) backfill}.
+         * Tidsrom som ikke er lest ennå henter bare de første sidene sine, opp til {@link #pagesAhead(int) antall
+         * sider i forkant}, og det gjøres maksimalt {@code maxConcurrentSlices * (1 + pagesAhead)} forespørsler samtidig.
+         * Default er 4.
+         */
+        public Builder maxConcurrentSlices(int maxConcurrentSlices) {
+            this.maxConcurrentSlices = requirePositive(maxConcurrentSlices, "maxConcurrentSlices");
+            return this;
+        }
+
+        public DocumentEventsOptions build() {
+            return new DocumentEventsOptions(organisation, partId, pageSize, pagesAhead, types, timeSlice, maxConcurrentSlices);
+        }
+
+        static int requireValidPageSize(int pageSize) {
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE + ", was " + pageSize);
+            }
+            return pageSize;
+        }
+
+        private static int requirePositive(int value, String name) {
+            if (value < 1) {
+                throw new IllegalArgumentException(name + " must be at least 1, was " + value);
+            }
+            return value;
+        }
+    }
+
+
+
+    public final String organisation;
+    public final String partId;
+    public final int pageSize;
+    public final int pagesAhead;
+    public final Predicate<? super DocumentEventType> types;
+    public final Duration timeSlice;
+    public final int maxConcurrentSlices;
+
+    private DocumentEventsOptions(String organisation, String partId, int pageSize, int pagesAhead, Predicate<? super DocumentEventType> types,
+                                  Duration timeSlice, int maxConcurrentSlices) {
+        this.organisation = organisation;
+        this.partId = partId;
+        this.pageSize = pageSize;
+        this.pagesAhead = pagesAhead;
+        this.types = types;
+        this.timeSlice = timeSlice;
+        this.maxConcurrentSlices = maxConcurrentSlices;
+    }
+
+}
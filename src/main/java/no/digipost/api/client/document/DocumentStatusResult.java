@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.DocumentStatus;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resultatet av å hente status for ett dokument når status hentes for mange dokumenter, enten
+ * {@link #getStatus() statusen} til dokumentet, eller {@link #getError() feilen} som oppstod.
+ *
+ * @see no.digipost.api.client.DigipostClient#getDocumentStatuses(no.digipost.api.client.SenderId, java.util.Collection)
+ */
+public final class DocumentStatusResult {
+
+    public static DocumentStatusResult found(UUID uuid, DocumentStatus status) {
+        return new DocumentStatusResult(uuid, status, null);
+    }
+
+    public static DocumentStatusResult failed(UUID uuid, DigipostClientException error) {
+        return new DocumentStatusResult(uuid, null, error);
+    }
+
+    public final UUID uuid;
+    private final DocumentStatus status;
+    private final DigipostClientException error;
+
+    private DocumentStatusResult(UUID uuid, DocumentStatus status, DigipostClientException error) {
+        this.uuid = uuid;
+        this.status = status;
+        this.error = error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public Optional<DocumentStatus> getStatus() {
+        return Optional.ofNullable(status);
+    }
+
+    public Optional<DigipostClientException> getError() {
+        return Optional.ofNullable(error);
+    }
+
+    @Override
+    public String toString() {
+        return "status for document " + uuid + (isSuccess() ? " found" : " failed: " + error.getMessage());
+    }
+}
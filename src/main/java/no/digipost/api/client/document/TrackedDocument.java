@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.representations.Channel;
+import no.digipost.api.client.representations.DocumentEventType;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+
+/**
+ * Tilstanden til et dokument i en {@link DeliveryStatusTracker}.
+ */
+public final class TrackedDocument {
+
+    public final UUID uuid;
+    private final Channel channel;
+    private final Instant deliveryTime;
+    private final Set<DocumentEventType> events;
+
+    TrackedDocument(UUID uuid, Channel channel, Instant deliveryTime, EnumSet<DocumentEventType> events) {
+        this.uuid = uuid;
+        this.channel = channel;
+        this.deliveryTime = deliveryTime;
+        this.events = Collections.unmodifiableSet(events);
+    }
+
+    /**
+     * @return kanalen dokumentet ble levert i, eller tom dersom dokumentet kun er kjent fra hendelser.
+     */
+    public Optional<Channel> getChannel() {
+        return Optional.ofNullable(channel);
+    }
+
+    /**
+     * @return når dokumentet ble levert, eller når det ble opprettet dersom dokumentet kun er kjent fra hendelser.
+     */
+    public Optional<Instant> getDeliveryTime() {
+        return Optional.ofNullable(deliveryTime);
+    }
+
+    /**
+     * @return typene hendelser som har skjedd med dokumentet.
+     */
+    public Set<DocumentEventType> getEvents() {
+        return events;
+    }
+
+    public boolean hasEvent(DocumentEventType type) {
+        return events.contains(type);
+    }
+
+    public boolean isOpened() {
+        return hasEvent(OPENED);
+    }
+
+    @Override
+    public String toString() {
+        return "document " + uuid + " delivered " + (channel != null ? "in " + channel + " " : "") + (deliveryTime != null ? deliveryTime : "(unknown time)") + ", events " + events;
+    }
+}
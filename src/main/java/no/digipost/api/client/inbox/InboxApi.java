@@ -20,6 +20,7 @@ import no.digipost.api.client.representations.inbox.Inbox;
 import no.digipost.api.client.representations.inbox.InboxDocument;
 
 import java.io.InputStream;
+import java.util.function.Consumer;
 
 public interface InboxApi {
 
@@ -33,6 +34,22 @@ public interface InboxApi {
      */
     Inbox getInbox(SenderId senderId, int offset, int limit);
 
+    /**
+     * Get documents from the inbox for the organisation represented by senderId, and give them to
+     * {@code documentConsumer} as they are read, instead of building the whole page of documents first.
+     *
+     * @param senderId Either an organisation that you operate on behalf of or your brokerId
+     * @param offset Number of documents to skip. For pagination
+     * @param limit Maximum number of documents to retrieve (max 1000)
+     * @param documentConsumer receives the documents in the order they are in the page
+     * @return the number of documents in the page
+     */
+    default int getInbox(SenderId senderId, int offset, int limit, Consumer<? super InboxDocument> documentConsumer) {
+        Inbox page = getInbox(senderId, offset, limit);
+        page.documents.forEach(documentConsumer);
+        return page.documents.size();
+    }
+
     /**
      * Get the content of a document as a stream. The content is streamed from the server so remember to
      * close the stream to prevent connection leaks.
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.inbox;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * The result of downloading the content of one document or attachment when downloading many
+ * documents from the inbox, either the {@link #getFile() file} the content was written to,
+ * or the {@link #getError() error} which occurred.
+ *
+ * @see no.digipost.api.client.DigipostClient#downloadInboxDocuments(java.util.Collection, Path)
+ */
+public final class InboxDownloadResult {
+
+    public static InboxDownloadResult downloaded(InboxDocument document, Path file, long bytes, Instant started, Instant completed) {
+        return new InboxDownloadResult(document, file, bytes, started, completed, null);
+    }
+
+    public static InboxDownloadResult failed(InboxDocument document, long bytes, Instant started, Instant completed, DigipostClientException error) {
+        return new InboxDownloadResult(document, null, bytes, started, completed, error);
+    }
+
+    /**
+     * The document or attachment which was downloaded.
+     */
+    public final InboxDocument document;
+
+    /**
+     * The number of bytes of content written to disk. For a failed download, this is the number
+     * of bytes written before the error occurred, and which have since been removed.
+     */
+    public final long bytes;
+
+    public final Instant started;
+    public final Instant completed;
+
+    private final Path file;
+    private final DigipostClientException error;
+
+    private InboxDownloadResult(InboxDocument document, Path file, long bytes, Instant started, Instant completed, DigipostClientException error) {
+        this.document = document;
+        this.file = file;
+        this.bytes = bytes;
+        this.started = started;
+        this.completed = completed;
+        this.error = error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public Optional<Path> getFile() {
+        return Optional.ofNullable(file);
+    }
+
+    public Optional<DigipostClientException> getError() {
+        return Optional.ofNullable(error);
+    }
+
+    public Duration getDuration() {
+        return Duration.between(started, completed);
+    }
+
+    /**
+     * @return the throughput of this download alone, in bytes per second
+     */
+    public double getBytesPerSecond() {
+        return InboxDownloadSummary.bytesPerSecond(bytes, getDuration());
+    }
+
+    @Override
+    public String toString() {
+        return "download of inbox document " + document.getId() + (isSuccess() ? " to " + file + ", " + bytes + " bytes in " + getDuration() : " failed: " + error.getMessage());
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.inbox;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Collector;
+
+/**
+ * Totals for many {@link InboxDownloadResult downloads}, including the overall throughput, which is
+ * measured over the time from the first download started until the last one completed, and so reflects
+ * the concurrency of the downloads.
+ *
+ * <pre>{@code
+ * InboxDownloadSummary summary;
+ * try (Stream<InboxDownloadResult> results = client.downloadInboxDocuments(documents, directory)) {
+ *     summary = results.peek(result -> ...).collect(InboxDownloadSummary.summarizing());
+ * }
+ * }</pre>
+ */
+public final class InboxDownloadSummary {
+
+    public static Collector<InboxDownloadResult, ?, InboxDownloadSummary> summarizing() {
+        return Collector.of(InboxDownloadSummary::new, InboxDownloadSummary::add, InboxDownloadSummary::combine);
+    }
+
+    private int downloaded;
+    private int failed;
+    private long bytes;
+    private Instant started;
+    private Instant completed;
+
+    public InboxDownloadSummary() {
+    }
+
+    public void add(InboxDownloadResult result) {
+        if (result.isSuccess()) {
+            downloaded++;
+            bytes += result.bytes;
+        } else {
+            failed++;
+        }
+        started = started == null || result.started.isBefore(started) ? result.started : started;
+        completed = completed == null || result.completed.isAfter(completed) ? result.completed : completed;
+    }
+
+    public InboxDownloadSummary combine(InboxDownloadSummary other) {
+        downloaded += other.downloaded;
+        failed += other.failed;
+        bytes += other.bytes;
+        if (other.started != null) {
+            started = started == null || other.started.isBefore(started) ? other.started : started;
+            completed = completed == null || other.completed.isAfter(completed) ? other.completed : completed;
+        }
+        return this;
+    }
+
+    public int getDownloaded() {
+        return downloaded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the total number of bytes written for the successful downloads
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public Duration getDuration() {
+        return started == null ? Duration.ZERO : Duration.between(started, completed);
+    }
+
+    /**
+     * @return the number of bytes downloaded per second, over the time the downloads were in progress
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond(bytes, getDuration());
+    }
+
+    static double bytesPerSecond(long bytes, Duration duration) {
+        long nanos = duration.toNanos();
+        return nanos <= 0 ? 0 : bytes * 1_000_000_000d / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return downloaded + " inbox documents downloaded and " + failed + " failed, " + bytes + " bytes in " + getDuration()
+                + String.format(" (%.0f bytes/s)", getBytesPerSecond());
+    }
+}
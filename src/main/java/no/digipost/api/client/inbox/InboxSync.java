@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.inbox;
+
+import no.digipost.api.client.SenderId;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.internal.ConcurrentMapper;
+import no.digipost.api.client.internal.LongHashSet;
+import no.digipost.api.client.internal.Pager;
+import no.digipost.api.client.internal.SortedLongSet;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Gives the documents which are new in an inbox since the last sync to a processor, instead of processing
+ * every document in the inbox each time.
+ * <p>
+ * The ids of the documents which have been processed are kept in a file, as a sorted set of primitive longs.
+ * Each sync lists the whole inbox, and only the ids of documents which are still in the inbox are kept, so the
+ * file does not grow beyond the size of the inbox. As documents are processed, their ids are appended to a journal
+ * next to the file, named as the file with {@code .journal} appended, for every {@link Builder#pageSize(int) page}
+ * of processed documents. So documents are not processed again after a restart, except for up to a page of documents
+ * processed since the journal was last appended to. When a sync completes, the file is rewritten with the ids of the
+ * documents in the inbox, and the journal is removed. Each update while syncing only writes the new ids, and the
+ * whole set is only sorted and written once per sync.
+ * <p>
+ * Processed documents may {@link Builder#deleteAfterProcessing(boolean) be deleted} from the inbox. This is
+ * done after the whole inbox has been listed, since deleting documents while listing the inbox by offset
+ * would make the listing skip documents. Documents which fail to be deleted are attempted deleted again
+ * by the next sync.
+ */
+public final class InboxSync {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InboxSync.class);
+
+    public static Builder newInboxSync(InboxApi inboxApi, SenderId senderId, Path processedIdsFile) {
+        return new Builder(inboxApi, senderId, processedIdsFile);
+    }
+
+    public static class Builder {
+        private final InboxApi inboxApi;
+        private final SenderId senderId;
+        private final Path processedIdsFile;
+        private int pageSize = 1000;
+        private boolean deleteAfterProcessing = false;
+        private int maxConcurrentDeletes = 4;
+        private Executor executor = Runnable::run;
+
+        private Builder(InboxApi inboxApi, SenderId senderId, Path processedIdsFile) {
+            this.inboxApi = requireNonNull(inboxApi, "inboxApi can not be null");
+            this.senderId = requireNonNull(senderId, "senderId can not be null");
+            this.processedIdsFile = requireNonNull(processedIdsFile, "processedIdsFile can not be null");
+        }
+
+        /**
+         * The number of documents to get per page when listing the inbox, and how many documents are processed
+         * between each update of the file with processed ids. Default is 1000, which is also the maximum.
+         */
+        public Builder pageSize(int pageSize) {
+            if (pageSize < 1 || pageSize > 1000) {
+                throw new IllegalArgumentException("pageSize must be between 1 and 1000, was " + pageSize);
+            }
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Whether to delete documents from the inbox after they have been processed. Default is {@code false}.
+         */
+        public Builder deleteAfterProcessing(boolean deleteAfterProcessing) {
+            this.deleteAfterProcessing = deleteAfterProcessing;
+            return this;
+        }
+
+        /**
+         * The maximum number of documents being deleted at the same time. Default is 4.
+         */
+        public Builder maxConcurrentDeletes(int maxConcurrentDeletes) {
+            if (maxConcurrentDeletes < 1) {
+                throw new IllegalArgumentException("maxConcurrentDeletes must be at least 1, was " + maxConcurrentDeletes);
+            }
+            this.maxConcurrentDeletes = maxConcurrentDeletes;
+            return this;
+        }
+
+        /**
+         * The executor used to fetch the next page of the inbox while the current page is processed, and to
+         * delete documents concurrently. Default is to do this in the thread invoking {@link InboxSync#sync(Consumer) sync},
+         * i.e. without any concurrency.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = requireNonNull(executor, "executor can not be null");
+            return this;
+        }
+
+        /**
+         * @throws UncheckedIOException if the file with processed ids exists, but can not be read
+         */
+        public InboxSync build() {
+            return new InboxSync(this);
+        }
+    }
+
+
+    private final InboxApi inboxApi;
+    private final SenderId senderId;
+    private final Path processedIdsFile;
+    private final int pageSize;
+    private final boolean deleteAfterProcessing;
+    private final int maxConcurrentDeletes;
+    private final Executor executor;
+
+    private final Path journal;
+    private SortedLongSet processedIds;
+
+    private InboxSync(Builder builder) {
+        this.inboxApi = builder.inboxApi;
+        this.senderId = builder.senderId;
+        this.processedIdsFile = builder.processedIdsFile;
+        this.journal = processedIdsFile.resolveSibling(processedIdsFile.getFileName() + ".journal");
+        this.pageSize = builder.pageSize;
+        this.deleteAfterProcessing = builder.deleteAfterProcessing;
+        this.maxConcurrentDeletes = builder.maxConcurrentDeletes;
+        this.executor = builder.executor;
+        this.processedIds = SortedLongSet.read(processedIdsFile).union(SortedLongSet.readUnordered(journal));
+    }
+
+    /**
+     * List the inbox, and give each document which has not been processed before to the processor, in the
+     * order they are listed. If the processor throws an exception, the sync stops, and the exception is
+     * rethrown after the ids of the documents processed so far have been stored. The document the processor
+     * failed on is given to the processor again by the next sync.
+     *
+     * @param processor processes each new document, e.g. by {@link InboxApi#getInboxDocumentContentStream(InboxDocument) getting its content}
+     * @return what was done by the sync
+     * @throws UncheckedIOException if the file with processed ids can not be written
+     */
+    public synchronized InboxSyncResult sync(Consumer<? super InboxDocument> processor) {
+        SortedLongSet previouslyProcessed = processedIds;
+        LongHashSet listedInThisSync = new LongHashSet();
+        long[] processedSinceCheckpoint = new long[pageSize];
+        List<InboxDocument> toDelete = new ArrayList<>();
+        int processed = 0;
+
+        try (Stream<InboxDocument> inbox = Pager.stream((offset, limit, documentConsumer) -> inboxApi.getInbox(senderId, offset, limit, documentConsumer), pageSize, 1, executor)) {
+            for (InboxDocument document : (Iterable<InboxDocument>) inbox::iterator) {
+                long id = document.getId();
+                if (listedInThisSync.contains(id)) {
+                    continue; // listed again because documents were added to the inbox while listing it
+                }
+                boolean isNew = !previouslyProcessed.contains(id);
+                if (isNew) {
+                    processor.accept(document);
+                    processedSinceCheckpoint[processed++ % pageSize] = id;
+                    if (processed % pageSize == 0) {
+                        SortedLongSet.append(journal, processedSinceCheckpoint, pageSize);
+                    }
+                }
+                listedInThisSync.add(id);
+                if (deleteAfterProcessing) {
+                    toDelete.add(document);
+                }
+            }
+        } catch (RuntimeException e) {
+            try {
+                SortedLongSet.append(journal, processedSinceCheckpoint, processed % pageSize);
+                processedIds = previouslyProcessed.union(SortedLongSet.readUnordered(journal));
+            } catch (RuntimeException storeFailure) {
+                e.addSuppressed(storeFailure);
+            }
+            throw e;
+        }
+        compact(SortedLongSet.of(listedInThisSync.toArray()));
+
+        int deleted = 0;
+        int failedDeletes = 0;
+        try (Stream<Optional<DigipostClientException>> deletes = ConcurrentMapper.stream(toDelete.iterator(), this::delete, maxConcurrentDeletes, executor)) {
+            for (Optional<DigipostClientException> failure : (Iterable<Optional<DigipostClientException>>) deletes::iterator) {
+                if (failure.isPresent()) {
+                    failedDeletes++;
+                } else {
+                    deleted++;
+                }
+            }
+        }
+        return new InboxSyncResult(listedInThisSync.size(), processed, deleted, failedDeletes);
+    }
+
+    private Optional<DigipostClientException> delete(InboxDocument document) {
+        try {
+            inboxApi.deleteInboxDocument(document);
+            return Optional.empty();
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to delete inbox document {}, trying again in the next sync: {}: {}", document.getId(), e.getClass().getSimpleName(), e.getMessage());
+            return Optional.of(DigipostClientException.from(e));
+        }
+    }
+
+    private void compact(SortedLongSet ids) {
+        ids.write(processedIdsFile);
+        processedIds = ids;
+        try {
+            Files.deleteIfExists(journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete " + journal + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the number of ids of processed documents which are kept
+     */
+    public synchronized int size() {
+        return processedIds.size();
+    }
+}
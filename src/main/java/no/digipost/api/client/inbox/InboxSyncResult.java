@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.inbox;
+
+/**
+ * What was done by one {@link InboxSync#sync(java.util.function.Consumer) sync} of an inbox.
+ */
+public final class InboxSyncResult {
+
+    /**
+     * The number of documents in the inbox when it was listed.
+     */
+    public final int listed;
+
+    /**
+     * The number of new documents, which were given to the processor.
+     */
+    public final int processed;
+
+    /**
+     * The number of documents deleted from the inbox after they had been processed,
+     * in this or an earlier sync.
+     */
+    public final int deleted;
+
+    /**
+     * The number of documents which could not be deleted. They are attempted deleted again by the next sync.
+     */
+    public final int failedDeletes;
+
+    InboxSyncResult(int listed, int processed, int deleted, int failedDeletes) {
+        this.listed = listed;
+        this.processed = processed;
+        this.deleted = deleted;
+        this.failedDeletes = failedDeletes;
+    }
+
+    @Override
+    public String toString() {
+        return "inbox sync of " + listed + " documents, " + processed + " new documents processed, "
+                + deleted + " deleted" + (failedDeletes > 0 ? " and " + failedDeletes + " failed to be deleted" : "");
+    }
+}
@@ -36,6 +36,8 @@ import no.digipost.api.client.internal.http.response.interceptor.ResponseSignatu
 import no.digipost.api.client.representations.AddDataLink;
 import no.digipost.api.client.representations.AdditionalData;
 import no.digipost.api.client.representations.Autocomplete;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
 import no.digipost.api.client.representations.DocumentEvents;
 import no.digipost.api.client.representations.DocumentStatus;
 import no.digipost.api.client.representations.EntryPoint;
@@ -53,7 +55,6 @@ import no.digipost.api.client.representations.sender.AuthorialSender.Type;
 import no.digipost.api.client.representations.sender.SenderInformation;
 import no.digipost.api.client.security.Digester;
 import no.digipost.api.client.security.Signer;
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
@@ -82,9 +83,10 @@ import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import static java.util.Optional.ofNullable;
-import static javax.xml.bind.JAXB.unmarshal;
 import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
 import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
 import static no.digipost.api.client.internal.http.Headers.Accept_DIGIPOST_MEDIA_TYPE_V7;
@@ -94,7 +96,7 @@ import static no.digipost.api.client.internal.http.UriUtils.withQueryParams;
 import static no.digipost.api.client.internal.http.response.HttpResponseUtils.checkResponse;
 import static no.digipost.api.client.internal.http.response.HttpResponseUtils.safelyOfferEntityStreamExternally;
 import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
-import static no.digipost.api.client.util.JAXBContextUtils.marshal;
+import static no.digipost.api.client.util.JAXBContextUtils.marshalToBytes;
 import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
 
 public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi {
@@ -180,6 +182,23 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
 
     @Override
     public DocumentEvents getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults) {
+        return requestEntity(new HttpGet(documentEventsUri(organisation, partId, from, to, offset, maxResults)), DocumentEvents.class);
+    }
+
+    @Override
+    public int getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults,
+                                 Predicate<? super DocumentEventType> types, Consumer<? super DocumentEvent> eventConsumer) {
+        HttpGet httpGet = new HttpGet(documentEventsUri(organisation, partId, from, to, offset, maxResults));
+        httpGet.setHeader(Accept_DIGIPOST_MEDIA_TYPE_V7);
+        try (CloseableHttpResponse response = send(httpGet)) {
+            checkResponse(response, eventLogger);
+            return DocumentEventsReader.read(response.getEntity().getContent(), types, eventConsumer);
+        } catch (IOException e) {
+            throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
+        }
+    }
+
+    private URI documentEventsUri(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults) {
         URIBuilder builder = new URIBuilder(digipostUrl.resolve(getEntryPoint().getDocumentEventsUri().getPath()))
                 .setParameter("from", DATE_TIME_FORMAT.format(from))
                 .setParameter("to", DATE_TIME_FORMAT.format(to))
@@ -194,8 +213,7 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
         }
 
         try {
-            HttpGet httpGet = new HttpGet(builder.build());
-            return requestEntity(httpGet, DocumentEvents.class);
+            return builder.build();
         } catch (URISyntaxException e) {
             throw asUnchecked(e);
         }
@@ -288,10 +306,26 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
 
     @Override
     public Inbox getInbox(SenderId senderId, int offset, int limit) {
+        return requestEntity(new HttpGet(inboxUri(senderId, offset, limit)), Inbox.class);
+    }
+
+    @Override
+    public int getInbox(SenderId senderId, int offset, int limit, Consumer<? super InboxDocument> documentConsumer) {
+        HttpGet httpGet = new HttpGet(inboxUri(senderId, offset, limit));
+        httpGet.setHeader(Accept_DIGIPOST_MEDIA_TYPE_V7);
+        try (CloseableHttpResponse response = send(httpGet)) {
+            checkResponse(response, eventLogger);
+            return InboxReader.read(response.getEntity().getContent(), documentConsumer);
+        } catch (IOException e) {
+            throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
+        }
+    }
+
+    private URI inboxUri(SenderId senderId, int offset, int limit) {
         Map<String, String> queryParams = new HashMap<>();
         queryParams.put("offset", String.valueOf(offset));
         queryParams.put("limit", String.valueOf(limit));
-        return getEntity(Inbox.class, "/" + senderId.stringValue() + "/inbox", queryParams);
+        return withQueryParams(digipostUrl.resolve("/" + senderId.stringValue() + "/inbox"), queryParams);
     }
 
     @Override
@@ -312,9 +346,7 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
     public UserAccount createOrActivateUserAccount(SenderId senderId, UserInformation user) {
         HttpPost httpPost = new HttpPost(digipostUrl.resolve("/" + senderId.stringValue() + "/user-accounts"));
         httpPost.setHeader(Content_Type_DIGIPOST_MEDIA_TYPE_V7);
-        ByteArrayOutputStream bao = new ByteArrayOutputStream();
-        marshal(jaxbContext, user, bao);
-        httpPost.setEntity(new ByteArrayEntity(bao.toByteArray()));
+        httpPost.setEntity(new ByteArrayEntity(marshalToBytes(jaxbContext, user)));
         return requestEntity(httpPost, UserAccount.class);
     }
 
@@ -336,8 +368,10 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
         return requestEntity(httpGet, entityType);
     }
 
-    private <R> InputStream requestStream(HttpRequestBase request) {
-        return request(request, InputStream.class, new Header[0]);
+    private InputStream requestStream(HttpRequestBase request) {
+        HttpCoreContext httpCoreContext = HttpCoreContext.create();
+        httpCoreContext.setAttribute(ResponseContentSHA256Interceptor.VERIFY_WHILE_STREAMING, true);
+        return safelyOfferEntityStreamExternally(send(request, httpCoreContext), eventLogger);
     }
 
     private <R> R requestEntity(HttpRequestBase request, Class<R> entityType) {
@@ -349,17 +383,11 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
             request.setHeader(header);
         }
 
-        if (entityType == InputStream.class) {
-            @SuppressWarnings("unchecked")
-            R responseStream = (R) safelyOfferEntityStreamExternally(send(request), eventLogger);
-            return responseStream;
-        } else {
-            try (CloseableHttpResponse response = send(request)) {
-                checkResponse(response, eventLogger);
-                return unmarshal(response.getEntity().getContent(), entityType);
-            } catch (IOException e) {
-                throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
-            }
+        try (CloseableHttpResponse response = send(request)) {
+            checkResponse(response, eventLogger);
+            return unmarshal(jaxbContext, response.getEntity().getContent(), entityType);
+        } catch (IOException e) {
+            throw new DigipostClientException(ErrorCode.GENERAL_ERROR, e.getMessage(), e);
         }
 
     }
@@ -385,9 +413,7 @@ public class ApiServiceImpl implements MessageDeliveryApi, InboxApi, DocumentApi
         HttpPost httpPost = new HttpPost(digipostUrl.resolve(uri));
         httpPost.setHeader(Accept_DIGIPOST_MEDIA_TYPE_V7);
         httpPost.setHeader(Content_Type_DIGIPOST_MEDIA_TYPE_V7);
-        ByteArrayOutputStream bao = new ByteArrayOutputStream();
-        marshal(jaxbContext, data, bao);
-        httpPost.setEntity(new ByteArrayEntity(bao.toByteArray()));
+        httpPost.setEntity(new ByteArrayEntity(marshalToBytes(jaxbContext, data)));
         return send(httpPost);
     }
 }
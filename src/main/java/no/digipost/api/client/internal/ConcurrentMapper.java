@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Spliterator.NONNULL;
+
+/**
+ * Applies a blocking function, typically a request to the API, to many items concurrently, and gives the
+ * results in the order they are completed. At most a given number of items are in progress at the same
+ * time, and new items are only submitted as the results are consumed, so the number of completed results
+ * which are not yet consumed is also bounded by that number.
+ * <p>
+ * The function should handle failures for single items itself, e.g. by returning a result describing the
+ * failure. An exception thrown from the function is rethrown when its result is consumed, and stops
+ * the mapping.
+ */
+public final class ConcurrentMapper<T, R> implements Iterator<R>, AutoCloseable {
+
+    public static <T, R> Stream<R> stream(Iterator<? extends T> items, Function<? super T, ? extends R> function, int maxConcurrent, Executor executor) {
+        ConcurrentMapper<T, R> mapper = new ConcurrentMapper<>(items, function, maxConcurrent, executor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(mapper, NONNULL), false).onClose(mapper::close);
+    }
+
+
+    private final Iterator<? extends T> items;
+    private final Function<? super T, ? extends R> function;
+    private final int maxConcurrent;
+    private final Executor executor;
+
+    private final BlockingQueue<Completed<R>> completed = new LinkedBlockingQueue<>();
+    private int inProgress = 0;
+    private boolean closed = false;
+
+    public ConcurrentMapper(Iterator<? extends T> items, Function<? super T, ? extends R> function, int maxConcurrent, Executor executor) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1, was " + maxConcurrent);
+        }
+        this.items = items;
+        this.function = function;
+        this.maxConcurrent = maxConcurrent;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        while (inProgress < maxConcurrent && items.hasNext()) {
+            submit(items.next());
+        }
+        return inProgress > 0;
+    }
+
+    @Override
+    public R next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Completed<R> next;
+        try {
+            next = completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Interrupted while waiting for " + inProgress + " items in progress", e);
+        }
+        inProgress--;
+        if (next.failure != null) {
+            close();
+            if (next.failure instanceof Error) {
+                throw (Error) next.failure;
+            }
+            throw (RuntimeException) next.failure;
+        }
+        return next.result;
+    }
+
+    /**
+     * Stop submitting items. Items in progress are completed, but their results are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private void submit(T item) {
+        try {
+            executor.execute(() -> {
+                try {
+                    completed.add(new Completed<>(function.apply(item), null));
+                } catch (RuntimeException | Error e) {
+                    completed.add(new Completed<>(null, e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            close();
+            throw e;
+        }
+        inProgress++;
+    }
+
+
+    private static final class Completed<R> {
+        final R result;
+        final Throwable failure;
+
+        Completed(R result, Throwable failure) {
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+}
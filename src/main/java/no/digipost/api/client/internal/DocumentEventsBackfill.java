@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.representations.DocumentEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Spliterator.NONNULL;
+import static java.util.Comparator.comparing;
+import static java.util.Spliterator.ORDERED;
+
+/**
+ * Iterates document events in a long period of time. The period is split into consecutive time slices, each
+ * paged through with its own {@link Pager}, and a given number of slices are fetched concurrently. The events
+ * of a slice are collected and sorted by when they were {@link DocumentEvent#getCreated() created} before they are
+ * given, and as the slices are consecutive and do not overlap, all the events are given sorted by when they were
+ * created. Events created at the same time are given in the order they are returned by the server.
+ * <p>
+ * Slices ahead of the one being consumed only fetch their first pages, up to the number of pages ahead given
+ * to their pager, and continue when their turn comes. So all the events of the slice being consumed, and at most
+ * {@code (maxConcurrentSlices - 1) * (1 + pagesAhead)} pages of the slices ahead, are held in memory at the same time.
+ * The length of the time slices should be chosen so that the events of one slice fit in memory.
+ * <p>
+ * A slice is the half-open interval {@code [from, to)}. Events outside of it, e.g. on the end of the window
+ * which is also the start of the next slice, are left to the slice they belong to.
+ */
+public final class DocumentEventsBackfill implements Iterator<DocumentEvent>, AutoCloseable {
+
+    @FunctionalInterface
+    public interface SliceReader {
+        /**
+         * @return the number of events in the page, including events which are not given to the consumer
+         */
+        int read(ZonedDateTime from, ZonedDateTime to, int offset, int maxResults, Consumer<? super DocumentEvent> eventConsumer);
+    }
+
+    public static Stream<DocumentEvent> stream(SliceReader sliceReader, ZonedDateTime from, ZonedDateTime to, Duration timeSlice,
+                                               int pageSize, int pagesAhead, int maxConcurrentSlices, Executor executor) {
+        DocumentEventsBackfill backfill = new DocumentEventsBackfill(sliceReader, from, to, timeSlice, pageSize, pagesAhead, maxConcurrentSlices, executor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(backfill, ORDERED | NONNULL), false).onClose(backfill::close);
+    }
+
+
+    private final SliceReader sliceReader;
+    private final ZonedDateTime to;
+    private final Duration timeSlice;
+    private final int pageSize;
+    private final int pagesAhead;
+    private final int maxConcurrentSlices;
+    private final Executor executor;
+
+    private final Deque<Pager<DocumentEvent>> slices = new ArrayDeque<>();
+    private Iterator<DocumentEvent> current = Collections.emptyIterator();
+    private ZonedDateTime nextSliceFrom;
+    private boolean closed = false;
+
+    public DocumentEventsBackfill(SliceReader sliceReader, ZonedDateTime from, ZonedDateTime to, Duration timeSlice,
+                                  int pageSize, int pagesAhead, int maxConcurrentSlices, Executor executor) {
+        if (timeSlice.isNegative() || timeSlice.isZero()) {
+            throw new IllegalArgumentException("timeSlice must be positive, was " + timeSlice);
+        }
+        this.sliceReader = sliceReader;
+        this.nextSliceFrom = from;
+        this.to = to;
+        this.timeSlice = timeSlice;
+        this.pageSize = pageSize;
+        this.pagesAhead = pagesAhead;
+        this.maxConcurrentSlices = maxConcurrentSlices;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!closed) {
+            if (current.hasNext()) {
+                return true;
+            }
+            openSlicesAhead();
+            Pager<DocumentEvent> slice = slices.pollFirst();
+            if (slice == null) {
+                return false;
+            }
+            try {
+                current = sortedByCreated(slice);
+            } catch (RuntimeException | Error e) {
+                close();
+                throw e;
+            } finally {
+                slice.close();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public DocumentEvent next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Stop fetching slices. Pages being fetched are completed, but discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        current = Collections.emptyIterator();
+        for (Pager<DocumentEvent> slice : slices) {
+            slice.close();
+        }
+        slices.clear();
+    }
+
+    /**
+     * Make sure the next slices, up to the maximum number of concurrent slices, have started fetching their first pages.
+     */
+    private void openSlicesAhead() {
+        while (slices.size() < maxConcurrentSlices && nextSliceFrom.isBefore(to)) {
+            ZonedDateTime sliceFrom = nextSliceFrom;
+            ZonedDateTime sliceTo = sliceFrom.plus(timeSlice).isBefore(to) ? sliceFrom.plus(timeSlice) : to;
+            nextSliceFrom = sliceTo;
+            Pager<DocumentEvent> slice = new Pager<>(sliceOf(sliceFrom, sliceTo), pageSize, pagesAhead, executor);
+            slice.prefetch();
+            slices.addLast(slice);
+        }
+    }
+
+    private static Iterator<DocumentEvent> sortedByCreated(Pager<DocumentEvent> slice) {
+        List<DocumentEvent> events = new ArrayList<>();
+        slice.forEachRemaining(events::add);
+        events.sort(comparing(event -> event.getCreated().toInstant()));
+        return events.iterator();
+    }
+
+    private Pager.PageReader<DocumentEvent> sliceOf(ZonedDateTime from, ZonedDateTime to) {
+        Instant start = from.toInstant();
+        Instant end = to.toInstant();
+        return (offset, maxResults, eventConsumer) -> sliceReader.read(from, to, offset, maxResults, event -> {
+            Instant created = event.getCreated().toInstant();
+            if (!created.isBefore(start) && created.isBefore(end)) {
+                eventConsumer.accept(event);
+            }
+        });
+    }
+}
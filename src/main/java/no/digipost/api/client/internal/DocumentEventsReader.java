@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
+import no.digipost.api.client.representations.DocumentEvents;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static javax.xml.stream.XMLStreamConstants.END_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
+
+/**
+ * Reads the events of a {@link DocumentEvents} page one by one, instead of unmarshalling the whole page.
+ * The type of each event is read first, and only events of the wanted types are unmarshalled,
+ * including their metadata. Other events are skipped without being built.
+ */
+public final class DocumentEventsReader {
+
+    private static final String EVENT = "event";
+    private static final String TYPE = "type";
+    private static final DocumentEventType[] KNOWN_TYPES = DocumentEventType.values();
+
+    static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @param documentEvents the XML of a {@code document-events} page
+     * @param types which types of events to give to the consumer. If the type of an event is not known
+     *              by this client, the predicate is given {@code null}.
+     * @param eventConsumer receives each event of the wanted types, in the order they appear in the page
+     *
+     * @return the number of events in the page, including those which were skipped because of their type
+     */
+    public static int read(InputStream documentEvents, Predicate<? super DocumentEventType> types, Consumer<? super DocumentEvent> eventConsumer) {
+        try {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(documentEvents);
+            try {
+                return read(reader, types, eventConsumer);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Failed when trying to read document events. Cause: " + exceptionNameAndMessage(e), e);
+        }
+    }
+
+    private static int read(XMLStreamReader reader, Predicate<? super DocumentEventType> types, Consumer<? super DocumentEvent> eventConsumer) throws XMLStreamException {
+        reader.nextTag();
+        reader.next();
+        int eventCount = 0;
+        for (int token = reader.getEventType(); token != END_ELEMENT && token != END_DOCUMENT; token = reader.getEventType()) {
+            if (token != START_ELEMENT) {
+                reader.next();
+            } else if (!EVENT.equals(reader.getLocalName())) {
+                skipElement(reader);
+            } else {
+                eventCount++;
+                if (types.test(typeOf(reader))) {
+                    eventConsumer.accept(unmarshal(jaxbContext, reader, DocumentEvent.class));
+                } else {
+                    skipElement(reader);
+                }
+            }
+        }
+        return eventCount;
+    }
+
+    private static DocumentEventType typeOf(XMLStreamReader eventElement) {
+        String type = eventElement.getAttributeValue(null, TYPE);
+        for (DocumentEventType knownType : KNOWN_TYPES) {
+            if (knownType.name().equals(type)) {
+                return knownType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Skip the element at the current position, and leave the reader at the token after its end.
+     */
+    static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        for (int depth = 1; depth > 0; ) {
+            int token = reader.next();
+            if (token == START_ELEMENT) {
+                depth++;
+            } else if (token == END_ELEMENT) {
+                depth--;
+            }
+        }
+        reader.next();
+    }
+
+    private DocumentEventsReader() {
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.representations.DocumentEvent;
+
+import java.util.UUID;
+
+import static no.digipost.api.client.internal.Hashing.mix;
+
+/**
+ * A set of document events which have been seen, used to skip events which are returned more than once,
+ * e.g. from overlapping time windows. Only a 64 bit fingerprint of the uuid, type and created timestamp of
+ * each event is kept, in a {@link LongHashSet} with the created timestamp attached, so each event takes up
+ * 32 bytes or less, and adding an event does not allocate.
+ * <p>
+ * Events which are older than a given point in time can be {@link #removeCreatedBefore(long) removed},
+ * to bound the size of the set to the events which may still be returned again.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class EventFingerprintSet {
+
+    private final LongHashSet fingerprints;
+
+    public EventFingerprintSet() {
+        this(0);
+    }
+
+    public EventFingerprintSet(int expectedSize) {
+        this.fingerprints = LongHashSet.withAttachments(expectedSize);
+    }
+
+    /**
+     * @return {@code true} if the event was not already in the set
+     */
+    public boolean add(DocumentEvent event) {
+        return fingerprints.add(fingerprint(event), event.getCreated().toInstant().toEpochMilli());
+    }
+
+    public boolean contains(DocumentEvent event) {
+        return fingerprints.contains(fingerprint(event));
+    }
+
+    /**
+     * Remove all events created before the given point in time.
+     */
+    public void removeCreatedBefore(long epochMilli) {
+        fingerprints.removeAttachedBefore(epochMilli);
+    }
+
+    public int size() {
+        return fingerprints.size();
+    }
+
+    public void clear() {
+        fingerprints.clear();
+    }
+
+
+    static long fingerprint(DocumentEvent event) {
+        UUID uuid = event.getUuid();
+        int type = event.getType() != null ? event.getType().ordinal() : -1;
+        long hash = mix(uuid.getMostSignificantBits());
+        hash = mix(hash ^ uuid.getLeastSignificantBits());
+        hash = mix(hash ^ type);
+        return mix(hash ^ event.getCreated().toInstant().toEpochMilli());
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.inbox.InboxDownloadResult;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Locale.ROOT;
+
+/**
+ * Downloads the content of inbox documents and their attachments to files in a directory, using a
+ * {@link ConcurrentMapper} to have a bounded number of downloads in progress at the same time.
+ * <p>
+ * The content is transferred from the response stream to a {@link FileChannel} in chunks, so no more
+ * than a chunk of any document is held on the heap. Each document is written to a {@code .part} file,
+ * which is moved to its final name only when the whole content has been read and verified, so a file
+ * with the final name always has the complete content. A document is named by its id, and its attachments
+ * by the id of the document and their position among the attachments, e.g. {@code 1234.pdf} and
+ * {@code 1234-1.pdf}, with the extension given by the content type.
+ */
+public final class InboxDownloader {
+
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    public static Stream<InboxDownloadResult> stream(
+            Collection<InboxDocument> documents, Path directory, Function<? super InboxDocument, ? extends InputStream> content,
+            int maxConcurrentDownloads, Executor executor, Clock clock) {
+
+        InboxDownloader downloader = new InboxDownloader(directory, content, clock);
+        return ConcurrentMapper.stream(downloadsOf(documents).iterator(), downloader::download, maxConcurrentDownloads, executor);
+    }
+
+    static List<Download> downloadsOf(Collection<InboxDocument> documents) {
+        List<Download> downloads = new ArrayList<>();
+        for (InboxDocument document : documents) {
+            downloads.add(new Download(document, document.getId() + "." + extension(document.getContentType())));
+            List<InboxDocument> attachments = document.getAttachments();
+            for (int i = 0; i < attachments.size(); i++) {
+                InboxDocument attachment = attachments.get(i);
+                downloads.add(new Download(attachment, document.getId() + "-" + (i + 1) + "." + extension(attachment.getContentType())));
+            }
+        }
+        return downloads;
+    }
+
+    static String extension(String contentType) {
+        if (contentType == null) {
+            return "bin";
+        }
+        String subtype = contentType.substring(contentType.indexOf('/') + 1);
+        int parametersStart = subtype.indexOf(';');
+        if (parametersStart >= 0) {
+            subtype = subtype.substring(0, parametersStart);
+        }
+        subtype = subtype.substring(subtype.lastIndexOf('+') + 1).trim().toLowerCase(ROOT).replaceAll("[^a-z0-9]", "");
+        switch (subtype) {
+            case "": return "bin";
+            case "plain": return "txt";
+            case "jpeg": return "jpg";
+            default: return subtype;
+        }
+    }
+
+
+    private final Path directory;
+    private final Function<? super InboxDocument, ? extends InputStream> content;
+    private final Clock clock;
+
+    InboxDownloader(Path directory, Function<? super InboxDocument, ? extends InputStream> content, Clock clock) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create directory " + directory + " for inbox documents: " + e.getMessage(), e);
+        }
+        this.content = content;
+        this.clock = clock;
+    }
+
+    InboxDownloadResult download(Download download) {
+        Instant started = clock.instant();
+        Path partial = directory.resolve(download.fileName + ".part");
+        long written = 0;
+        try {
+            try (ReadableByteChannel source = Channels.newChannel(content.apply(download.document));
+                 FileChannel target = FileChannel.open(partial, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                for (long transferred; (transferred = target.transferFrom(source, written, TRANSFER_CHUNK_SIZE)) > 0; ) {
+                    written += transferred;
+                }
+            }
+            Path file = directory.resolve(download.fileName);
+            try {
+                Files.move(partial, file, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partial, file, REPLACE_EXISTING);
+            }
+            return InboxDownloadResult.downloaded(download.document, file, written, started, clock.instant());
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException deleteFailure) {
+                e.addSuppressed(deleteFailure);
+            }
+            return InboxDownloadResult.failed(download.document, written, started, clock.instant(), DigipostClientException.from(e));
+        }
+    }
+
+
+    static final class Download {
+        final InboxDocument document;
+        final String fileName;
+
+        Download(InboxDocument document, String fileName) {
+            this.document = document;
+            this.fileName = fileName;
+        }
+    }
+}
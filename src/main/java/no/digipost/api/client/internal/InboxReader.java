@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.representations.inbox.Inbox;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import static javax.xml.stream.XMLStreamConstants.END_DOCUMENT;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+import static no.digipost.api.client.internal.DocumentEventsReader.skipElement;
+import static no.digipost.api.client.internal.DocumentEventsReader.xmlInputFactory;
+import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
+
+/**
+ * Reads the documents of an {@link Inbox} page one by one, instead of unmarshalling the whole page.
+ * This does not bound the memory used for a page by itself, as the consumer decides whether to keep
+ * the documents, e.g. {@link Pager} collects the documents of each page before giving them on.
+ */
+public final class InboxReader {
+
+    private static final String DOCUMENT = "document";
+
+    /**
+     * @param inbox the XML of an {@code inbox} page
+     * @param documentConsumer receives each document, in the order they appear in the page
+     *
+     * @return the number of documents in the page
+     */
+    public static int read(InputStream inbox, Consumer<? super InboxDocument> documentConsumer) {
+        try {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(inbox);
+            try {
+                return read(reader, documentConsumer);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Failed when trying to read inbox. Cause: " + exceptionNameAndMessage(e), e);
+        }
+    }
+
+    private static int read(XMLStreamReader reader, Consumer<? super InboxDocument> documentConsumer) throws XMLStreamException {
+        reader.nextTag();
+        reader.next();
+        int documentCount = 0;
+        for (int token = reader.getEventType(); token != END_ELEMENT && token != END_DOCUMENT; token = reader.getEventType()) {
+            if (token != START_ELEMENT) {
+                reader.next();
+            } else if (!DOCUMENT.equals(reader.getLocalName())) {
+                skipElement(reader);
+            } else {
+                documentCount++;
+                documentConsumer.accept(unmarshal(jaxbContext, reader, InboxDocument.class));
+            }
+        }
+        return documentCount;
+    }
+
+    private InboxReader() {
+    }
+}
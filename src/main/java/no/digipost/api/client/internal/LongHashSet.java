@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import java.util.Arrays;
+
+import static no.digipost.api.client.internal.Hashing.mix;
+
+/**
+ * A set of longs, e.g. ids of documents, kept in a primitive array using open addressing, so each value
+ * takes up 16 bytes or less, and adding a value does not allocate, except when the array is grown.
+ * <p>
+ * A set {@link #withAttachments(int) with attachments} keeps a long together with each value, e.g. a
+ * timestamp, in a parallel array, and values can be {@link #removeAttachedBefore(long) removed} by it.
+ * Each value then takes up 32 bytes or less.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * @param expectedSize the number of values the set is expected to hold, to avoid growing it
+     */
+    static LongHashSet withAttachments(int expectedSize) {
+        return new LongHashSet(expectedSize, true);
+    }
+
+    private final boolean attached;
+    private long[] values;
+    private long[] attachments;
+    private boolean containsEmpty;
+    private long emptyAttachment;
+    private int size;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of values the set is expected to hold, to avoid growing it
+     */
+    public LongHashSet(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    private LongHashSet(int expectedSize, boolean attached) {
+        this.attached = attached;
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return {@code true} if the value was not already in the set
+     */
+    public boolean add(long value) {
+        return add(value, 0);
+    }
+
+    /**
+     * Add a value with an attachment. The attachment of a value which is already in the set is not changed.
+     *
+     * @return {@code true} if the value was not already in the set
+     */
+    boolean add(long value, long attachment) {
+        if (value == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            emptyAttachment = attachment;
+            size++;
+            return true;
+        }
+        int slot = slotOf(values, value);
+        if (values[slot] == value) {
+            return false;
+        }
+        values[slot] = value;
+        if (attached) {
+            attachments[slot] = attachment;
+        }
+        if (++size > values.length / 2) {
+            rehash(values.length * 2, Long.MIN_VALUE);
+        }
+        return true;
+    }
+
+    public boolean contains(long value) {
+        return value == EMPTY ? containsEmpty : values[slotOf(values, value)] == value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, EMPTY);
+        containsEmpty = false;
+        size = 0;
+    }
+
+    /**
+     * Remove all values with an attachment less than the given one.
+     *
+     * @throws IllegalStateException if the set is not {@link #withAttachments(int) with attachments}
+     */
+    void removeAttachedBefore(long attachment) {
+        if (!attached) {
+            throw new IllegalStateException("The set has no attachments");
+        }
+        if (containsEmpty && emptyAttachment < attachment) {
+            containsEmpty = false;
+        }
+        rehash(capacityFor(size), attachment);
+    }
+
+    /**
+     * @return the values of the set, in no particular order
+     */
+    public long[] toArray() {
+        long[] array = new long[size];
+        int next = 0;
+        if (containsEmpty) {
+            array[next++] = EMPTY;
+        }
+        for (long value : values) {
+            if (value != EMPTY) {
+                array[next++] = value;
+            }
+        }
+        return array;
+    }
+
+    private void rehash(int capacity, long keepAttachedFrom) {
+        long[] oldValues = values;
+        long[] oldAttachments = attachments;
+        allocate(capacity);
+        size = containsEmpty ? 1 : 0;
+        for (int i = 0; i < oldValues.length; i++) {
+            long value = oldValues[i];
+            if (value != EMPTY && (!attached || oldAttachments[i] >= keepAttachedFrom)) {
+                int slot = slotOf(values, value);
+                values[slot] = value;
+                if (attached) {
+                    attachments[slot] = oldAttachments[i];
+                }
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        values = new long[capacity];
+        attachments = attached ? new long[capacity] : null;
+    }
+
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 2 < size) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * @return the slot containing the value, or the empty slot where it should be put
+     */
+    private static int slotOf(long[] values, long value) {
+        int mask = values.length - 1;
+        int slot = (int) mix(value) & mask;
+        while (values[slot] != EMPTY && values[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return "set of " + size + " values";
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * Iterates items, e.g. document events or inbox documents, across pages, using offset pagination. While the
+ * items of one page are consumed, the following pages are fetched in the background, up to a given number
+ * of pages ahead.
+ * <p>
+ * The offset of a page is only known when the previous pages are full, so pages ahead are fetched
+ * assuming that they are. When a page is not full, it is the last one, and any pages fetched beyond
+ * it are discarded.
+ * <p>
+ * Each page is read completely into a list before its items are iterated, so up to {@code 1 + pagesAhead}
+ * pages of items are held in memory. Giving the items to the iterator while a page is being read would
+ * require blocking the reading of pages ahead until the items before them are consumed, which would hold
+ * their HTTP connections and executor threads, and could exhaust both while waiting for the current page.
+ */
+public final class Pager<T> implements Iterator<T>, AutoCloseable {
+
+    @FunctionalInterface
+    public interface PageReader<T> {
+        /**
+         * @return the number of items in the page, including items which are not given to the consumer
+         */
+        int read(int offset, int maxResults, Consumer<? super T> itemConsumer);
+    }
+
+    public static <T> Stream<T> stream(PageReader<T> pageReader, int pageSize, int pagesAhead, Executor executor) {
+        Pager<T> pager = new Pager<>(pageReader, pageSize, pagesAhead, executor);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pager, ORDERED | NONNULL), false).onClose(pager::close);
+    }
+
+
+    private final PageReader<T> pageReader;
+    private final int pageSize;
+    private final int pagesAhead;
+    private final Executor executor;
+
+    private final Deque<CompletableFuture<Page<T>>> fetching = new ArrayDeque<>();
+    private int nextOffset = 0;
+    private boolean lastPageReached = false;
+    private boolean closed = false;
+    private Iterator<T> current = Collections.emptyIterator();
+
+    public Pager(PageReader<T> pageReader, int pageSize, int pagesAhead, Executor executor) {
+        this.pageReader = pageReader;
+        this.pageSize = pageSize;
+        this.pagesAhead = pagesAhead;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (lastPageReached || closed) {
+                return false;
+            }
+            fetchAhead();
+            Page<T> page;
+            try {
+                page = await(fetching.removeFirst());
+            } catch (RuntimeException | Error e) {
+                close();
+                throw e;
+            }
+            if (page.itemCount < pageSize) {
+                lastPageReached = true;
+                discardPagesAhead();
+            }
+            current = page.items.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Start fetching the first pages, before the items are iterated.
+     */
+    void prefetch() {
+        if (!lastPageReached && !closed) {
+            fetchAhead();
+        }
+    }
+
+    /**
+     * Stop fetching pages. Pages which are already being fetched are completed, but discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        current = Collections.emptyIterator();
+        discardPagesAhead();
+    }
+
+    /**
+     * Make sure the next page, and the configured number of pages after it, are being fetched.
+     * No more pages are requested once a fetched page turns out not to be full.
+     */
+    private void fetchAhead() {
+        while (fetching.size() < 1 + pagesAhead && !lastPageFetched()) {
+            int offset = nextOffset;
+            nextOffset += pageSize;
+            fetching.addLast(supplyAsync(() -> fetchPage(offset), executor));
+        }
+    }
+
+    private boolean lastPageFetched() {
+        CompletableFuture<Page<T>> last = fetching.peekLast();
+        return last != null && last.isDone() && !last.isCompletedExceptionally() && last.join().itemCount < pageSize;
+    }
+
+    private Page<T> fetchPage(int offset) {
+        List<T> items = new ArrayList<>();
+        int itemCount = pageReader.read(offset, pageSize, items::add);
+        return new Page<>(items, itemCount);
+    }
+
+    private void discardPagesAhead() {
+        for (CompletableFuture<Page<T>> page : fetching) {
+            page.cancel(false);
+        }
+        fetching.clear();
+    }
+
+    private static <T> T await(CompletableFuture<T> page) {
+        try {
+            return page.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+
+    private static final class Page<T> {
+        final List<T> items;
+        final int itemCount;
+
+        Page(List<T> items, int itemCount) {
+            this.items = items;
+            this.itemCount = itemCount;
+        }
+    }
+}
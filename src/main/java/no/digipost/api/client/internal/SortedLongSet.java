@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An immutable set of longs, e.g. ids of documents, kept as a sorted primitive array, which is
+ * searched with binary search, so each value takes up 8 bytes. The set is persisted as the sorted
+ * values, 8 bytes each, which is read by mapping the file into memory.
+ * <p>
+ * Values can also be {@link #append(Path, long[], int) appended} to a file in no particular order, which
+ * only writes the appended values, and is {@link #readUnordered(Path) read} into a set.
+ */
+public final class SortedLongSet {
+
+    public static final SortedLongSet EMPTY = new SortedLongSet(new long[0]);
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    public static SortedLongSet of(long ... values) {
+        return sorted(Arrays.copyOf(values, values.length), values.length);
+    }
+
+    /**
+     * Read a set from a file written by {@link #write(Path)}.
+     *
+     * @return the set in the file, or {@link #EMPTY} if the file does not exist
+     * @throws UncheckedIOException if the file exists, but can not be read
+     * @throws IllegalStateException if the file is not a valid set
+     */
+    public static SortedLongSet read(Path file) {
+        long[] values;
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long size = channel.size();
+            if (size % Long.BYTES != 0 || size / Long.BYTES > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Invalid size of " + file + ": " + size + " bytes");
+            }
+            values = new long[(int) (size / Long.BYTES)];
+            if (size > 0) {
+                channel.map(READ_ONLY, 0, size).asLongBuffer().get(values);
+            }
+        } catch (NoSuchFileException e) {
+            return EMPTY;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + file + ": " + e.getMessage(), e);
+        }
+        for (int i = 1; i < values.length; i++) {
+            if (values[i - 1] >= values[i]) {
+                throw new IllegalStateException("Invalid content in " + file + ", value " + values[i] + " at position " + i + " is not greater than " + values[i - 1]);
+            }
+        }
+        return new SortedLongSet(values);
+    }
+
+    /**
+     * Read a set from a file of values {@link #append(Path, long[], int) appended} in no particular order.
+     * A partially written value at the end of the file, e.g. after a crash while appending, is ignored.
+     *
+     * @return the set of values in the file, or {@link #EMPTY} if the file does not exist
+     * @throws UncheckedIOException if the file exists, but can not be read
+     */
+    public static SortedLongSet readUnordered(Path file) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long count = channel.size() / Long.BYTES;
+            if (count > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many values in " + file + ": " + count);
+            }
+            long[] values = new long[(int) count];
+            if (count > 0) {
+                channel.map(READ_ONLY, 0, count * Long.BYTES).asLongBuffer().get(values);
+            }
+            return sorted(values, values.length);
+        } catch (NoSuchFileException e) {
+            return EMPTY;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Append values to a file, to be read by {@link #readUnordered(Path)}. Only the given values
+     * are written, regardless of how many values the file already has.
+     */
+    public static void append(Path file, long[] values, int length) {
+        try (FileChannel channel = FileChannel.open(file, CREATE, WRITE, APPEND)) {
+            write(values, length, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append to " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static SortedLongSet sorted(long[] values, int length) {
+        Arrays.sort(values, 0, length);
+        int distinct = 0;
+        for (int i = 0; i < length; i++) {
+            if (distinct == 0 || values[i] != values[distinct - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return new SortedLongSet(distinct == values.length ? values : Arrays.copyOf(values, distinct));
+    }
+
+
+    private final long[] values;
+
+    private SortedLongSet(long[] values) {
+        this.values = values;
+    }
+
+    public boolean contains(long value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @return a set with the values of both this and the other set
+     */
+    public SortedLongSet union(SortedLongSet other) {
+        if (other.values.length == 0) {
+            return this;
+        } else if (values.length == 0) {
+            return other;
+        }
+        long[] merged = new long[values.length + other.values.length];
+        int i = 0, j = 0, length = 0;
+        while (i < values.length && j < other.values.length) {
+            long a = values[i], b = other.values[j];
+            merged[length++] = a <= b ? a : b;
+            i += a <= b ? 1 : 0;
+            j += b <= a ? 1 : 0;
+        }
+        while (i < values.length) {
+            merged[length++] = values[i++];
+        }
+        while (j < other.values.length) {
+            merged[length++] = other.values[j++];
+        }
+        return new SortedLongSet(length == merged.length ? merged : Arrays.copyOf(merged, length));
+    }
+
+    /**
+     * Write the set to a temporary file, which then replaces the given file, so that the
+     * file is never left partially written.
+     */
+    public void write(Path file) {
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(written, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                write(values, values.length, channel);
+            }
+            try {
+                Files.move(written, file, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(written, file, REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void write(long[] values, int length, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(WRITE_BUFFER_SIZE, Math.max(length, 1) * Long.BYTES));
+        LongBuffer longs = buffer.asLongBuffer();
+        for (int next = 0; next < length; ) {
+            int count = Math.min(longs.capacity(), length - next);
+            longs.clear();
+            longs.put(values, next, count);
+            buffer.clear().limit(count * Long.BYTES);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            next += count;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof SortedLongSet && Arrays.equals(values, ((SortedLongSet) obj).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return "set of " + values.length + " values";
+    }
+
+}
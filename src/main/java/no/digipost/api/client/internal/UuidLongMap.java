@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import java.util.UUID;
+
+/**
+ * A map from {@link UUID} to {@code long}, keyed on the two longs of the UUID, and stored in primitive
+ * arrays using open addressing with linear probing. Each entry takes 24 bytes in the arrays, and there are no
+ * objects per entry, so the map can hold tens of millions of entries with little overhead and no pressure
+ * on the garbage collector.
+ * <p>
+ * The value {@code 0} denotes that there is no entry for a key, and can not be put in the map.
+ * Entries can not be removed.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class UuidLongMap {
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long mostSignificantBits, long leastSignificantBits, long value);
+    }
+
+    public static final long ABSENT = 0;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private long[] values;
+    private int size;
+    private int resizeAt;
+
+    public UuidLongMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public UuidLongMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (maxSizeFor(capacity) < expectedSize && capacity < MAX_CAPACITY) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    public long get(UUID key) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * @return the value for the key, or {@link #ABSENT} if there is no entry for the key
+     */
+    public long get(long msb, long lsb) {
+        return values[slotOf(msb, lsb)];
+    }
+
+    public void put(UUID key, long value) {
+        put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    public void put(long msb, long lsb, long value) {
+        if (value == ABSENT) {
+            throw new IllegalArgumentException("The value " + ABSENT + " denotes an absent entry, and can not be put in the map");
+        }
+        int slot = slotOf(msb, lsb);
+        if (values[slot] == ABSENT) {
+            if (size >= resizeAt) {
+                grow();
+                slot = slotOf(msb, lsb);
+            }
+            mostSignificantBits[slot] = msb;
+            leastSignificantBits[slot] = lsb;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != ABSENT) {
+                consumer.accept(mostSignificantBits[slot], leastSignificantBits[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return the slot containing the key, or the empty slot where it should be put
+     */
+    private int slotOf(long msb, long lsb) {
+        int mask = values.length - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (values[slot] != ABSENT && (mostSignificantBits[slot] != msb || leastSignificantBits[slot] != lsb)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        if (values.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Unable to hold more than " + size + " entries");
+        }
+        long[] oldMsb = mostSignificantBits;
+        long[] oldLsb = leastSignificantBits;
+        long[] oldValues = values;
+        allocate(values.length * 2);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != ABSENT) {
+                int slot = slotOf(oldMsb[i], oldLsb[i]);
+                mostSignificantBits[slot] = oldMsb[i];
+                leastSignificantBits[slot] = oldLsb[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mostSignificantBits = new long[capacity];
+        leastSignificantBits = new long[capacity];
+        values = new long[capacity];
+        resizeAt = maxSizeFor(capacity);
+    }
+
+    /**
+     * Linear probing performs well up to a load factor of about 0.7.
+     */
+    private static int maxSizeFor(int capacity) {
+        return capacity == MAX_CAPACITY ? capacity - 1 : (int) (capacity * 0.7);
+    }
+
+    private static int hash(long msb, long lsb) {
+        long hash = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
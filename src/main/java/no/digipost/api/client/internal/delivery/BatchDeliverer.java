@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.delivery.BatchDelivery;
+import no.digipost.api.client.delivery.BatchListener;
+import no.digipost.api.client.delivery.BatchOptions;
+import no.digipost.api.client.delivery.BatchStatistics;
+import no.digipost.api.client.delivery.OngoingDelivery;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.errorhandling.ErrorCode;
+import no.digipost.api.client.internal.DaemonThreadFactory;
+import no.digipost.api.client.internal.delivery.MessageDeliverer.MessageInProgress;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageDelivery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
+
+/**
+ * Sends messages through a pipeline of the steps of {@link MessageDeliverer}, where each step
+ * has its own thread pool. The number of messages in the pipeline is limited by a semaphore,
+ * which makes {@link #sendMultipartMessageAsync(Message, Map) submitting} a message block while
+ * the pipeline is full.
+ */
+final class BatchDeliverer implements BatchDelivery, MultipartMessageSender {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchDeliverer.class);
+
+    private final MessageDeliverer deliverer;
+    private final BatchListener listener;
+    private final Clock clock;
+    private final Instant started;
+
+    private final ExecutorService identification;
+    private final ExecutorService preparation;
+    private final ExecutorService sending;
+
+    private final int maxMessagesInProgress;
+    private final Semaphore messagesInProgress;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile boolean closing = false;
+    private volatile Instant closed;
+
+    BatchDeliverer(MessageDeliverer deliverer, BatchOptions options, Clock clock) {
+        this.deliverer = deliverer;
+        this.listener = options.listener;
+        this.clock = clock;
+        this.identification = Executors.newFixedThreadPool(options.identificationThreads, new DaemonThreadFactory("digipost-batch-identification"));
+        this.preparation = Executors.newFixedThreadPool(options.preparationThreads, new DaemonThreadFactory("digipost-batch-preparation"));
+        this.sending = Executors.newFixedThreadPool(options.sendingThreads, new DaemonThreadFactory("digipost-batch-sending"));
+        this.maxMessagesInProgress = options.maxMessagesInProgress;
+        this.messagesInProgress = new Semaphore(options.maxMessagesInProgress);
+        this.started = clock.instant();
+    }
+
+    @Override
+    public OngoingDelivery.WithPrintFallback createMessage(Message message) {
+        return new WithPrintFallback(message, this);
+    }
+
+    @Override
+    public OngoingDelivery.ForPrintOnly createPrintOnlyMessage(Message printMessage) {
+        return new PrintOnlyMessage(printMessage, this);
+    }
+
+    @Override
+    public ContentBuffer bufferOnFirstRead(InputStream content) {
+        return deliverer.bufferOnFirstRead(content);
+    }
+
+    @Override
+    public MessageDelivery sendMultipartMessage(Message message, Map<UUID, DocumentContent> documentsAndContent) {
+        try {
+            return sendMultipartMessageAsync(message, documentsAndContent).join();
+        } catch (CompletionException e) {
+            throw DigipostClientException.from(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<MessageDelivery> sendMultipartMessageAsync(Message message, Map<UUID, DocumentContent> documentsAndContent) {
+        if (closing) {
+            throw new IllegalStateException("The batch is closed, and can not send message " + message.messageId);
+        }
+        MessageInProgress inProgress = new MessageInProgress(message, documentsAndContent);
+        try {
+            messagesInProgress.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inProgress.close();
+            CompletableFuture<MessageDelivery> interrupted = new CompletableFuture<>();
+            interrupted.completeExceptionally(new DigipostClientException(ErrorCode.GENERAL_ERROR, "Interrupted while waiting to submit message " + message.messageId));
+            return interrupted;
+        }
+
+        CompletableFuture<Void> channelResolved;
+        try {
+            channelResolved = runAsync(() -> deliverer.resolveChannelAndEncryption(inProgress), identification);
+        } catch (RejectedExecutionException e) {
+            messagesInProgress.release();
+            inProgress.close();
+            throw new IllegalStateException("The batch is closed, and can not send message " + message.messageId, e);
+        }
+        submitted.increment();
+
+        return channelResolved
+                .thenRunAsync(() -> deliverer.prepareDocuments(inProgress), preparation)
+                .thenApplyAsync(prepared -> deliverer.sendPreparedMessage(inProgress), sending)
+                .whenComplete((delivery, failure) -> {
+                    inProgress.close();
+                    if (failure == null) {
+                        delivered.increment();
+                        notifyListener(() -> listener.delivered(message, delivery));
+                    } else {
+                        failed.increment();
+                        DigipostClientException error = DigipostClientException.from(failure instanceof CompletionException ? failure.getCause() : failure);
+                        notifyListener(() -> listener.failed(message, error));
+                    }
+                    messagesInProgress.release();
+                });
+    }
+
+    private static void notifyListener(Runnable notification) {
+        try {
+            notification.run();
+        } catch (RuntimeException e) {
+            LOG.warn("Batch listener failed: {}", exceptionNameAndMessage(e), e);
+        }
+    }
+
+    @Override
+    public BatchStatistics getStatistics() {
+        Instant end = closed != null ? closed : clock.instant();
+        return new BatchStatistics(submitted.sum(), delivered.sum(), failed.sum(), Duration.between(started, end));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closing) {
+            return;
+        }
+        closing = true;
+        messagesInProgress.acquireUninterruptibly(maxMessagesInProgress);
+        closed = clock.instant();
+        identification.shutdown();
+        preparation.shutdown();
+        sending.shutdown();
+        messagesInProgress.release(maxMessagesInProgress);
+        LOG.info("Batch completed: {}", getStatistics());
+    }
+
+}
@@ -0,0 +1,374 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Document content which can be read several times, e.g. for validation, encryption,
+ * hashing and writing to the request, and for both Digipost and print fallback.
+ * Content up to a threshold is kept on the heap, while larger content is spilled to
+ * a temporary file, which is removed when the buffer is {@link #close() closed}.
+ * <p>
+ * Content which already is in a file is not buffered, but read directly from the file when it is
+ * written to the request. The request is an {@link OutputStream}, so the content is copied to it through
+ * a buffer of {@value #TRANSFER_BUFFER_SIZE} bytes, without holding more of the file than that in memory.
+ */
+abstract class ContentBuffer implements Closeable {
+
+    static final int DEFAULT_IN_MEMORY_THRESHOLD = 1024 * 1024;
+    static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Buffer the content of a stream. The stream is read until exhausted, and closed.
+     */
+    static ContentBuffer buffer(InputStream content, int inMemoryThreshold) throws IOException {
+        DeferredFileOutputStream spool = new DeferredFileOutputStream(inMemoryThreshold, "digipost-", ".content", null);
+        try (InputStream source = content; OutputStream spoolOut = spool) {
+            IOUtils.copyLarge(source, spoolOut);
+        } catch (IOException | RuntimeException e) {
+            if (!spool.isInMemory()) {
+                Files.deleteIfExists(spool.getFile().toPath());
+            }
+            throw e;
+        }
+        return spool.isInMemory() ? new InMemory(spool.getData()) : new FileContent(spool.getFile().toPath(), true);
+    }
+
+    /**
+     * Content read directly from a file, which is left as is when the buffer is closed.
+     */
+    static ContentBuffer ofFile(Path file) {
+        return new FileContent(file, false);
+    }
+
+    /**
+     * Content read directly from a channel, from its current position to its end. The channel is
+     * only read using absolute positions, so its position is not changed, and it is not closed
+     * when the buffer is closed.
+     */
+    static ContentBuffer ofChannel(FileChannel channel) {
+        try {
+            long position = channel.position();
+            return new ChannelRegion(channel, position, Math.max(channel.size() - position, 0));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to determine the position and size of " + channel + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Buffer the content of a stream when it is read the first time. If the buffer is never read,
+     * the stream is never read either.
+     */
+    static ContentBuffer bufferOnFirstRead(InputStream content, int inMemoryThreshold) {
+        return new BufferedOnFirstRead(content, inMemoryThreshold);
+    }
+
+
+    /**
+     * @return a new stream of the content, starting from the beginning.
+     */
+    abstract InputStream openStream() throws IOException;
+
+    abstract long length() throws IOException;
+
+    abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * @return {@code true} if the content is held on the heap and {@link #bytes() available as a byte array}.
+     */
+    abstract boolean isInMemory() throws IOException;
+
+    /**
+     * @throws IllegalStateException if the content is not {@link #isInMemory() in memory}.
+     */
+    abstract byte[] bytes() throws IOException;
+
+    /**
+     * @return the file containing exactly the content, or empty if the content is not available as a file.
+     */
+    abstract Optional<Path> file() throws IOException;
+
+    /**
+     * Release the resources of the buffer. Closing a buffer more than once has no effect.
+     */
+    @Override
+    public abstract void close() throws IOException;
+
+
+
+    private static final class InMemory extends ContentBuffer {
+
+        private final byte[] content;
+
+        InMemory(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        InputStream openStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        long length() {
+            return content.length;
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            out.write(content);
+        }
+
+        @Override
+        boolean isInMemory() {
+            return true;
+        }
+
+        @Override
+        byte[] bytes() {
+            return content;
+        }
+
+        @Override
+        Optional<Path> file() {
+            return Optional.empty();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+
+    private static final class FileContent extends ContentBuffer {
+
+        private final Path file;
+        private final boolean deleteOnClose;
+
+        FileContent(Path file, boolean deleteOnClose) {
+            this.file = file;
+            this.deleteOnClose = deleteOnClose;
+        }
+
+        @Override
+        InputStream openStream() throws IOException {
+            return Files.newInputStream(file);
+        }
+
+        @Override
+        long length() throws IOException {
+            return Files.size(file);
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, READ)) {
+                transfer(channel, 0, channel.size(), out);
+            }
+        }
+
+        @Override
+        boolean isInMemory() {
+            return false;
+        }
+
+        @Override
+        byte[] bytes() {
+            throw new IllegalStateException("Content is in " + file + ", and is not available in memory");
+        }
+
+        @Override
+        Optional<Path> file() {
+            return Optional.of(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deleteOnClose) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+
+    private static final class ChannelRegion extends ContentBuffer {
+
+        private final FileChannel channel;
+        private final long position;
+        private final long length;
+
+        ChannelRegion(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        InputStream openStream() {
+            return new InputStream() {
+                private long next = position;
+                private final long end = position + length;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    int read = read(single, 0, 1);
+                    return read < 0 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    } else if (next >= end) {
+                        return -1;
+                    }
+                    int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - next)), next);
+                    if (read > 0) {
+                        next += read;
+                    }
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        long length() {
+            return length;
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            transfer(channel, position, length, out);
+        }
+
+        @Override
+        boolean isInMemory() {
+            return false;
+        }
+
+        @Override
+        byte[] bytes() {
+            throw new IllegalStateException("Content is in a file channel, and is not available in memory");
+        }
+
+        @Override
+        Optional<Path> file() {
+            return Optional.empty();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+
+    private static final class BufferedOnFirstRead extends ContentBuffer {
+
+        private final int inMemoryThreshold;
+        private InputStream source;
+        private ContentBuffer buffered;
+
+        BufferedOnFirstRead(InputStream source, int inMemoryThreshold) {
+            this.source = source;
+            this.inMemoryThreshold = inMemoryThreshold;
+        }
+
+        private synchronized ContentBuffer buffered() throws IOException {
+            if (buffered == null) {
+                if (source == null) {
+                    throw new IllegalStateException("Content buffer is closed");
+                }
+                buffered = buffer(source, inMemoryThreshold);
+                source = null;
+            }
+            return buffered;
+        }
+
+        @Override
+        InputStream openStream() throws IOException {
+            return buffered().openStream();
+        }
+
+        @Override
+        long length() throws IOException {
+            return buffered().length();
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            buffered().writeTo(out);
+        }
+
+        @Override
+        boolean isInMemory() throws IOException {
+            return buffered().isInMemory();
+        }
+
+        @Override
+        byte[] bytes() throws IOException {
+            return buffered().bytes();
+        }
+
+        @Override
+        Optional<Path> file() throws IOException {
+            return buffered().file();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (buffered != null) {
+                buffered.close();
+            } else if (source != null) {
+                source.close();
+                source = null;
+            }
+        }
+    }
+
+
+
+    private static void transfer(FileChannel source, long position, long count, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(TRANSFER_BUFFER_SIZE, Math.max(count, 1)));
+        long end = position + count;
+        for (long next = position; next < end; ) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), end - next));
+            int read = source.read(buffer, next);
+            if (read <= 0) {
+                throw new IOException("Unexpected end of file content after " + (next - position) + " of " + count + " bytes");
+            }
+            out.write(buffer.array(), 0, read);
+            next += read;
+        }
+    }
+
+}
@@ -15,18 +15,24 @@
  */
 package no.digipost.api.client.internal.delivery;
 
-import java.io.InputStream;
+import java.io.Closeable;
+import java.io.IOException;
 
-final class DocumentContent {
-    private final InputStream digipostContent;
-    private final InputStream printContent;
+/**
+ * The content of a document, for delivery through Digipost, print, or both. When the same
+ * content is used for both channels, it is backed by the same {@link ContentBuffer}, which
+ * may be read for either channel.
+ */
+final class DocumentContent implements Closeable {
+    private final ContentBuffer digipostContent;
+    private final ContentBuffer printContent;
 
-    private DocumentContent(InputStream digipostContent, InputStream printContent){
+    private DocumentContent(ContentBuffer digipostContent, ContentBuffer printContent){
         this.digipostContent = digipostContent;
         this.printContent = printContent;
     }
 
-    public InputStream getPrintContent(){
+    public ContentBuffer getPrintContent(){
         if(printContent == null){
             throw new IllegalAccessError("Content ikke tilgjengelig, dette er et digipost DocumentContent");
         }
@@ -34,7 +40,7 @@ final class DocumentContent {
         return printContent;
     }
 
-    public InputStream getDigipostContent(){
+    public ContentBuffer getDigipostContent(){
         if(digipostContent == null){
             throw new IllegalAccessError("Content ikke tilgjengelig, dette er et print DocumentContent");
         }
@@ -42,19 +48,28 @@ final class DocumentContent {
         return digipostContent;
     }
 
-    public static DocumentContent CreateDigiPostContent(InputStream content){
+    @Override
+    public void close() throws IOException {
+        try (ContentBuffer digipost = digipostContent) {
+            if (printContent != null && printContent != digipostContent) {
+                printContent.close();
+            }
+        }
+    }
+
+    public static DocumentContent CreateDigiPostContent(ContentBuffer content){
         return new DocumentContent(content, null);
     }
 
-    public static DocumentContent CreatePrintContent(InputStream content){
+    public static DocumentContent CreatePrintContent(ContentBuffer content){
         return new DocumentContent(null, content);
     }
 
-    public static DocumentContent CreateMultiStreamContent(InputStream digipostContent, InputStream printContent){
+    public static DocumentContent CreateMultiStreamContent(ContentBuffer digipostContent, ContentBuffer printContent){
         return new DocumentContent(digipostContent, printContent);
     }
 
-    public static DocumentContent CreateBothStreamContent(InputStream content){
+    public static DocumentContent CreateBothStreamContent(ContentBuffer content){
         return new DocumentContent(content, content);
     }
 }
@@ -28,58 +28,152 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static java.util.Optional.empty;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
 import static no.digipost.api.client.representations.Channel.PRINT;
 import static no.digipost.api.client.representations.FileType.PDF;
 import static no.digipost.print.validate.PdfValidationResult.EVERYTHING_OK;
-import static org.apache.commons.io.IOUtils.toByteArray;
 
 class DocumentsPreparer {
 
     private static final Logger LOG = LoggerFactory.getLogger(DocumentsPreparer.class);
 
     private final PdfValidator pdfValidator;
+    private final int inMemoryContentThreshold;
+    private final Executor executor;
 
     DocumentsPreparer(PdfValidator pdfValidator) {
+        this(pdfValidator, ContentBuffer.DEFAULT_IN_MEMORY_THRESHOLD, Runnable::run);
+    }
+
+    /**
+     * @param executor runs the validation and encryption of each document. The documents of a message
+     *                 are prepared concurrently if the executor runs tasks concurrently.
+     */
+    DocumentsPreparer(PdfValidator pdfValidator, int inMemoryContentThreshold, Executor executor) {
         this.pdfValidator = pdfValidator;
+        this.inMemoryContentThreshold = inMemoryContentThreshold;
+        this.executor = executor;
     }
 
 
 
-    Map<Document, InputStream> prepare(
-            Map<Document, InputStream> documentsAndContent, Message message,
+    /**
+     * Validates and encrypts the documents which are to be pre-encrypted. The encrypted content
+     * is put in new {@link ContentBuffer buffers}, which are owned by the caller and must be closed.
+     * Content for documents which are not pre-encrypted is returned as is.
+     * <p>
+     * The documents are prepared using the {@link #DocumentsPreparer(PdfValidator, int, Executor) executor}
+     * of this preparer, but the result is always in the {@link Message#documentOrder() order of the documents},
+     * and if preparing any of the documents fails, the failure of the first document in that order is thrown.
+     */
+    Map<Document, ContentBuffer> prepare(
+            Map<Document, ContentBuffer> documentsAndContent, Message message,
             Encrypter encrypter, Supplier<PdfValidationSettings> pdfValidationSettings) throws IOException {
 
-        final Map<Document, InputStream> prepared = new LinkedHashMap<>();
-
         if(message.recipient.hasPrintDetails() && message.recipient.hasDigipostIdentification()){
             throw new IllegalStateException("Forventet message med enkelt kanal");
         }
 
+        Map<Document, CompletableFuture<ContentBuffer>> preparations = new LinkedHashMap<>();
         for (Document document : (Iterable<Document>) documentsAndContent.keySet().stream().sorted(message.documentOrder())::iterator) {
-            if (document.willBeEncrypted()) {
-                byte[] byteContent = toByteArray(documentsAndContent.get(document));
-                LOG.debug("Validerer dokument med uuid '{}' før kryptering", document.uuid);
-                validateAndSetNrOfPages(message.getChannel(), document, byteContent, pdfValidationSettings);
-                LOG.debug("Krypterer innhold for dokument med uuid '{}'", document.uuid);
-                prepared.put(document, encrypter.encrypt(byteContent));
-
-            } else {
-                prepared.put(document, documentsAndContent.get(document));
+            ContentBuffer content = documentsAndContent.get(document);
+            CompletableFuture<ContentBuffer> preparation = document.willBeEncrypted()
+                    ? supplyAsync(() -> validateAndEncrypt(message.getChannel(), document, content, encrypter, pdfValidationSettings), executor)
+                    : completedFuture(content);
+            preparations.put(document, preparation);
+            if (preparation.isCompletedExceptionally()) {
+                break;
+            }
+        }
+
+        Map<Document, ContentBuffer> prepared = new LinkedHashMap<>();
+        Throwable failure = null;
+        for (Entry<Document, CompletableFuture<ContentBuffer>> preparation : preparations.entrySet()) {
+            try {
+                prepared.put(preparation.getKey(), preparation.getValue().join());
+            } catch (CompletionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+
+        if (failure != null) {
+            for (Entry<Document, ContentBuffer> preparedDocument : prepared.entrySet()) {
+                if (preparedDocument.getValue() != documentsAndContent.get(preparedDocument.getKey())) {
+                    try {
+                        preparedDocument.getValue().close();
+                    } catch (IOException e) {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) failure).getCause();
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
             }
+            throw asUnchecked((Exception) failure);
         }
         return prepared;
     }
 
+    private ContentBuffer validateAndEncrypt(
+            Channel channel, Document document, ContentBuffer content, Encrypter encrypter, Supplier<PdfValidationSettings> pdfValidationSettings) {
+        try {
+            LOG.debug("Validerer dokument med uuid '{}' før kryptering", document.uuid);
+            validateAndSetNrOfPages(channel, document, content, pdfValidationSettings);
+            LOG.debug("Krypterer innhold for dokument med uuid '{}'", document.uuid);
+            return ContentBuffer.buffer(encrypter.encrypt(content.openStream()), inMemoryContentThreshold);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 
+    Optional<PdfInfo> validateAndSetNrOfPages(Channel channel, Document document, ContentBuffer content, Supplier<PdfValidationSettings> pdfValidationSettings) throws IOException {
+        if (content.isInMemory()) {
+            return validateAndSetNrOfPages(channel, document, content.bytes(), pdfValidationSettings);
+        }
+        Optional<Path> file = content.file();
+        if (file.isPresent()) {
+            return validateAndSetNrOfPages(channel, document, settings -> {
+                try {
+                    return pdfValidator.validate(file.get(), settings);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, pdfValidationSettings);
+        } else {
+            try (ContentBuffer buffered = ContentBuffer.buffer(content.openStream(), inMemoryContentThreshold)) {
+                return validateAndSetNrOfPages(channel, document, buffered, pdfValidationSettings);
+            }
+        }
+    }
 
     Optional<PdfInfo> validateAndSetNrOfPages(Channel channel, Document document, byte[] content, Supplier<PdfValidationSettings> pdfValidationSettings) {
+        return validateAndSetNrOfPages(channel, document, settings -> pdfValidator.validate(content, settings), pdfValidationSettings);
+    }
+
+    private Optional<PdfInfo> validateAndSetNrOfPages(Channel channel, Document document,
+                                                      Function<PdfValidationSettings, PdfValidationResult> validation, Supplier<PdfValidationSettings> pdfValidationSettings) {
         if (channel == PRINT && !document.is(PDF)) {
             throw new DigipostClientException(ErrorCode.INVALID_PDF_CONTENT,
                     "PDF is required for direct-to-print messages. Document with uuid " + document.uuid + " had filetype " + document.getDigipostFileType());
@@ -89,7 +183,7 @@ class DocumentsPreparer {
         Optional<PdfInfo> pdfInfo;
         if (document.is(PDF)) {
             LOG.debug("Validerer PDF-dokument med uuid '{}'", document.uuid);
-            pdfValidation = pdfValidator.validate(content, pdfValidationSettings.get());
+            pdfValidation = validation.apply(pdfValidationSettings.get());
             if (document.willBeEncrypted()) {
                 document.setNumberOfEncryptedPages(pdfValidation.pages);
             }
@@ -17,6 +17,8 @@ package no.digipost.api.client.internal.delivery;
 
 import no.digipost.api.client.DigipostClientConfig;
 import no.digipost.api.client.EventLogger;
+import no.digipost.api.client.delivery.BatchDelivery;
+import no.digipost.api.client.delivery.BatchOptions;
 import no.digipost.api.client.delivery.MessageDeliveryApi;
 import no.digipost.api.client.delivery.OngoingDelivery;
 import no.digipost.api.client.errorhandling.DigipostClientException;
@@ -35,9 +37,8 @@ import no.digipost.api.client.representations.Message;
 import no.digipost.api.client.representations.MessageDelivery;
 import no.digipost.api.client.security.DigipostPublicKey;
 import no.digipost.api.client.security.Encrypter;
+import no.digipost.cache2.inmemory.Cache;
 import no.digipost.print.validate.PdfValidator;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.FormBodyPartBuilder;
@@ -47,45 +48,57 @@ import org.apache.http.entity.mime.content.ByteArrayBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.cert.X509Certificate;
 import java.time.Clock;
-import java.time.Instant;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.time.Duration.ZERO;
-import static java.time.Duration.between;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
 import static no.digipost.api.client.internal.ExceptionUtils.asUnchecked;
+import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
 import static no.digipost.api.client.internal.http.response.HttpResponseUtils.checkResponse;
 import static no.digipost.api.client.representations.MediaTypes.DIGIPOST_MULTI_MEDIA_SUB_TYPE_V7;
 import static no.digipost.api.client.security.Encrypter.FAIL_IF_TRYING_TO_ENCRYPT;
 import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
-import static no.digipost.api.client.util.JAXBContextUtils.marshal;
+import static no.digipost.api.client.util.JAXBContextUtils.marshalToBytes;
 import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
+import static no.digipost.cache2.inmemory.CacheConfig.expireAfterWrite;
+import static no.digipost.cache2.inmemory.CacheConfig.maximumSize;
 import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
 
-public class MessageDeliverer {
+public class MessageDeliverer implements MultipartMessageSender {
 
     private static final Logger LOG = LoggerFactory.getLogger(MessageDeliverer.class);
 
+    private static final List<ErrorCode> RECIPIENT_KEY_ERRORS = asList(
+            ErrorCode.CONTENT_NOT_ENCRYPTED_WITH_CORRECT_KEY, ErrorCode.ENCRYPTION_KEY_NOT_FOUND,
+            ErrorCode.FAILED_TO_PARSE_ENCRYPTION_KEY, ErrorCode.FAILED_PREENCRYPTION);
+
     private final Clock clock;
     private final DocumentsPreparer documentsPreparer;
     private final DigipostClientConfig config;
     private final MessageDeliveryApi apiService;
     private final EventLogger eventLogger;
 
-    private Instant printKeyCachedTime = Instant.MIN;
-    private X509Certificate cachedPrintCertificate;
+    private final Cache<RecipientKey, IdentifiedRecipient> identifiedRecipients;
+
+    private final RefreshAheadCache<X509Certificate> printCertificate;
 
 
     public MessageDeliverer(DigipostClientConfig config, MessageDeliveryApi apiService) {
-        this(config, apiService, new DocumentsPreparer(new PdfValidator()));
+        this(config, apiService, new DocumentsPreparer(new PdfValidator(), config.inMemoryContentThreshold, config.documentsPreparationExecutor));
     }
 
     public MessageDeliverer(DigipostClientConfig config, MessageDeliveryApi apiService, DocumentsPreparer documentsPreparer) {
@@ -94,6 +107,10 @@ public class MessageDeliverer {
         this.apiService = apiService;
         this.documentsPreparer = documentsPreparer;
         this.clock = config.clock;
+        this.printCertificate = new RefreshAheadCache<>("print encryption certificate", this::fetchEncryptionCertificateForPrint,
+                config.printKeyCacheTimeToLive, clock, config.asyncExecutor);
+        this.identifiedRecipients = ZERO.equals(config.recipientEncryptionKeyCacheTimeToLive) ? null : Cache.create("identified-recipients",
+                expireAfterWrite(config.recipientEncryptionKeyCacheTimeToLive), maximumSize(config.recipientEncryptionKeyCacheMaxSize));
     }
 
     public OngoingDelivery.WithPrintFallback createMessage(Message message) {
@@ -104,6 +121,18 @@ public class MessageDeliverer {
         return new PrintOnlyMessage(printMessage, this);
     }
 
+    /**
+     * Oppretter en batch for å sende mange meldinger med høy gjennomstrømning.
+     */
+    public BatchDelivery newBatch(BatchOptions options) {
+        return new BatchDeliverer(this, options, clock);
+    }
+
+    @Override
+    public ContentBuffer bufferOnFirstRead(InputStream content) {
+        return ContentBuffer.bufferOnFirstRead(content, config.inMemoryContentThreshold);
+    }
+
 
 
     /**
@@ -111,18 +140,48 @@ public class MessageDeliverer {
      * Dersom dokumentene skal direkte til print og skal prekrypteres før sending kan det gjøres en ekstra request for å hente
      * krypteringsnøkkel.
      */
+    @Override
     public MessageDelivery sendMultipartMessage(Message message, Map<UUID, DocumentContent> documentsAndContent) {
-        EncrypterAndDocsWithInputstream encryptionAndInputStream = createEncrypterIfNecessaryAndMapContentToInputstream(message, documentsAndContent);
-        Map<Document, InputStream> documentInputStream = encryptionAndInputStream.documentsAndInputstream;
-        Message singleChannelMessage = encryptionAndInputStream.getSingleChannelMessage();
+        try (MessageInProgress inProgress = new MessageInProgress(message, documentsAndContent)) {
+            resolveChannelAndEncryption(inProgress);
+            prepareDocuments(inProgress);
+            return sendPreparedMessage(inProgress);
+        }
+    }
 
+    /**
+     * Første steg av sending: bestemmer om meldingen skal til Digipost eller print, og henter
+     * eventuell krypteringsnøkkel. Kan gjøre forespørsler for å identifisere mottaker og hente nøkkel.
+     */
+    void resolveChannelAndEncryption(MessageInProgress inProgress) {
+        try {
+            inProgress.encryptionAndContent = createEncrypterIfNecessaryAndMapContentToDocuments(inProgress, inProgress.documentsAndContent);
+        } catch (Exception e) {
+            throw failed(inProgress, e);
+        }
+    }
+
+    /**
+     * Andre steg av sending: validerer og krypterer dokumentene som skal prekrypteres.
+     */
+    void prepareDocuments(MessageInProgress inProgress) {
+        EncrypterAndDocsWithContent encryptionAndContent = inProgress.encryptionAndContent;
         try {
-            Map<Document, InputStream> preparedDocuments = documentsPreparer.prepare(
-                    documentInputStream, singleChannelMessage, encryptionAndInputStream.encrypter, () -> apiService.getSenderInformation(message).getPdfValidationSettings());
+            inProgress.preparedDocuments = documentsPreparer.prepare(
+                    encryptionAndContent.documentsAndContent, encryptionAndContent.getSingleChannelMessage(), encryptionAndContent.encrypter,
+                    () -> apiService.getSenderInformation(inProgress.message).getPdfValidationSettings());
+        } catch (Exception e) {
+            throw failed(inProgress, e);
+        }
+    }
 
-            ByteArrayOutputStream bao = new ByteArrayOutputStream();
-            marshal(jaxbContext, singleChannelMessage, bao);
-            ByteArrayBody attachment = new ByteArrayBody(bao.toByteArray(),
+    /**
+     * Siste steg av sending: sender meldingen med de forberedte dokumentene.
+     */
+    MessageDelivery sendPreparedMessage(MessageInProgress inProgress) {
+        Message singleChannelMessage = inProgress.encryptionAndContent.getSingleChannelMessage();
+        try {
+            ByteArrayBody attachment = new ByteArrayBody(marshalToBytes(jaxbContext, singleChannelMessage),
                     ContentType.create(MediaTypes.DIGIPOST_MEDIA_TYPE_V7, UTF_8), "message");
 
             MultipartEntityBuilder multipartEntity = MultipartEntityBuilder.create()
@@ -132,15 +191,13 @@ public class MessageDeliverer {
                             .addField("Content-Disposition", "attachment;" + " filename=\"message\"")
                             .build());
 
-            for (Entry<Document, InputStream> documentAndContent : preparedDocuments.entrySet()) {
+            for (Entry<Document, ContentBuffer> documentAndContent : inProgress.preparedDocuments.entrySet()) {
                 Document document = documentAndContent.getKey();
-                InputStream content = documentAndContent.getValue();
-
-
-                byte[] bytes = IOUtils.toByteArray(content);
+                ContentBufferBody documentBody = new ContentBufferBody(documentAndContent.getValue(),
+                        ContentType.create("application/" + defaultIfBlank(document.getDigipostFileType(), "octet-stream")), document.uuid.toString());
                 multipartEntity = multipartEntity
                         .addPart(FormBodyPartBuilder
-                        .create("application", new ByteArrayBody(bytes, ContentType.create("application/" + defaultIfBlank(document.getDigipostFileType(), "octet-stream")), document.uuid.toString()))
+                        .create("application", documentBody)
                         .addField("Content-Disposition", "attachment;" + " filename=\"" + document.uuid.toString() + "\"").build());
             }
             eventLogger.log("*** STARTER INTERAKSJON MED API: SENDER MELDING MED ID " + singleChannelMessage.messageId + " ***");
@@ -156,7 +213,39 @@ public class MessageDeliverer {
             }
 
         } catch (Exception e) {
-            throw DigipostClientException.from(e);
+            throw failed(inProgress, e);
+        }
+    }
+
+    /**
+     * Dersom sending feiler på grunn av mottakers krypteringsnøkkel, fjernes mottakeren fra cache,
+     * slik at nøkkelen hentes på nytt ved neste sending til mottakeren.
+     */
+    private DigipostClientException failed(MessageInProgress inProgress, Exception e) {
+        DigipostClientException failure = DigipostClientException.from(e);
+        if (identifiedRecipients != null && inProgress.identification != null && failure.isOneOf(RECIPIENT_KEY_ERRORS)) {
+            eventLogger.log("Sending feilet med " + failure.getErrorCode() + ". Fjerner cachet krypteringsnøkkel for mottaker.");
+            identifiedRecipients.invalidate(new RecipientKey(inProgress.identification));
+        }
+        return failure;
+    }
+
+    /**
+     * Sender melding på samme måte som {@link #sendMultipartMessage(Message, Map)}, men asynkront
+     * på {@link DigipostClientConfig#asyncExecutor klientens executor}.
+     */
+    @Override
+    public CompletableFuture<MessageDelivery> sendMultipartMessageAsync(Message message, Map<UUID, DocumentContent> documentsAndContent) {
+        return CompletableFuture.supplyAsync(() -> sendMultipartMessage(message, documentsAndContent), config.asyncExecutor);
+    }
+
+    private static void release(Collection<? extends Closeable> buffers) {
+        for (Closeable buffer : buffers) {
+            try {
+                buffer.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to release buffered document content: {}", exceptionNameAndMessage(e));
+            }
         }
     }
 
@@ -212,23 +301,33 @@ public class MessageDeliverer {
         }
     }
 
+    /**
+     * Identifiserer mottaker og henter eventuell krypteringsnøkkel, fra cache dersom mottakeren
+     * nylig er identifisert.
+     */
+    IdentifiedRecipient identifyRecipientWithEncrypter(Identification identification) {
+        if (identifiedRecipients == null) {
+            return new IdentifiedRecipient(identifyAndGetEncryptionKey(identification));
+        }
+        return identifiedRecipients.get(new RecipientKey(identification), () -> new IdentifiedRecipient(identifyAndGetEncryptionKey(identification)));
+    }
+
+    /**
+     * Henter krypteringsnøkkel for print. Nøkkelen caches i {@link DigipostClientConfig#printKeyCacheTimeToLive},
+     * og fornyes i bakgrunnen før den utløper, slik at avsendere ikke må vente på å hente nøkkelen på nytt.
+     */
     public X509Certificate getEncryptionCertificateForPrint() {
-        Instant now = clock.instant();
+        return printCertificate.get();
+    }
 
-        if (ZERO.equals(config.printKeyCacheTimeToLive) || between(printKeyCachedTime, now).compareTo(config.printKeyCacheTimeToLive) > 0) {
-            eventLogger.log("*** STARTER INTERAKSJON MED API: HENT KRYPTERINGSNØKKEL FOR PRINT ***");
-            try (CloseableHttpResponse response = apiService.getEncryptionCertificateForPrint()) {
-                checkResponse(response, eventLogger);
-                EncryptionCertificate encryptionCertificate = unmarshal(jaxbContext, response.getEntity().getContent(), EncryptionCertificate.class);
-                cachedPrintCertificate = encryptionCertificate.getX509Certificate();
-                printKeyCachedTime = now;
-                return cachedPrintCertificate;
-            } catch (IOException e) {
-                throw new RuntimeException(e.getMessage(), e);
-            }
-        } else {
-            eventLogger.log("Bruker cachet krypteringsnøkkel for print");
-            return cachedPrintCertificate;
+    private X509Certificate fetchEncryptionCertificateForPrint() {
+        eventLogger.log("*** STARTER INTERAKSJON MED API: HENT KRYPTERINGSNØKKEL FOR PRINT ***");
+        try (CloseableHttpResponse response = apiService.getEncryptionCertificateForPrint()) {
+            checkResponse(response, eventLogger);
+            EncryptionCertificate encryptionCertificate = unmarshal(jaxbContext, response.getEntity().getContent(), EncryptionCertificate.class);
+            return encryptionCertificate.getX509Certificate();
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
         }
     }
 
@@ -244,14 +343,15 @@ public class MessageDeliverer {
     }
 
 
-    private EncrypterAndDocsWithInputstream createEncrypterIfNecessaryAndMapContentToInputstream(Message message,
-                                                                                                 Map<UUID, DocumentContent> documentsAndContent) {
-        final Map<Document, InputStream> documentsAndInputstream = new LinkedHashMap<>();
+    private EncrypterAndDocsWithContent createEncrypterIfNecessaryAndMapContentToDocuments(MessageInProgress inProgress,
+                                                                                         Map<UUID, DocumentContent> documentsAndContent) {
+        Message message = inProgress.message;
+        final Map<Document, ContentBuffer> documentsAndBuffers = new LinkedHashMap<>();
         Encrypter encrypter = FAIL_IF_TRYING_TO_ENCRYPT;
         Message singleChannelMessage;
 
             if (message.isDirectPrint()) {
-                singleChannelMessage = setMapAndMessageToPrint(message, documentsAndContent, documentsAndInputstream);
+                singleChannelMessage = setMapAndMessageToPrint(message, documentsAndContent, documentsAndBuffers);
 
                 if (singleChannelMessage.hasAnyDocumentRequiringEncryption()) {
                     eventLogger.log("Direkte print. Bruker krypteringsnøkkel for print.");
@@ -259,19 +359,21 @@ public class MessageDeliverer {
                 }
 
             } else if (!message.recipient.hasPrintDetails() && !message.hasAnyDocumentRequiringEncryption()) {
-                singleChannelMessage = setMapAndMessageToDigipost(message, documentsAndContent, documentsAndInputstream);
+                singleChannelMessage = setMapAndMessageToDigipost(message, documentsAndContent, documentsAndBuffers);
 
             } else {
-                IdentificationResultWithEncryptionKey result = identifyAndGetEncryptionKey(message.recipient.toIdentification());
+                inProgress.identification = message.recipient.toIdentification();
+                IdentifiedRecipient recipient = identifyRecipientWithEncrypter(inProgress.identification);
+                IdentificationResultWithEncryptionKey result = recipient.result;
                 if (result.getResultCode() == IdentificationResultCode.DIGIPOST) {
-                    singleChannelMessage = setMapAndMessageToDigipost(message, documentsAndContent, documentsAndInputstream);
+                    singleChannelMessage = setMapAndMessageToDigipost(message, documentsAndContent, documentsAndBuffers);
 
                     if (singleChannelMessage.hasAnyDocumentRequiringEncryption()) {
                         eventLogger.log("Mottaker er Digipost-bruker. Bruker brukers krypteringsnøkkel.");
-                        encrypter = Encrypter.using(new DigipostPublicKey(result.getEncryptionKey()));
+                        encrypter = recipient.encrypter();
                     }
                 } else if (message.recipient.hasPrintDetails()) {
-                    singleChannelMessage = setMapAndMessageToPrint(message, documentsAndContent, documentsAndInputstream);
+                    singleChannelMessage = setMapAndMessageToPrint(message, documentsAndContent, documentsAndBuffers);
 
                     if (singleChannelMessage.hasAnyDocumentRequiringEncryption()) {
                         eventLogger.log("Mottaker er ikke Digipost-bruker. Bruker krypteringsnøkkel for print.");
@@ -281,42 +383,113 @@ public class MessageDeliverer {
                     throw new DigipostClientException(ErrorCode.UNKNOWN_RECIPIENT, "Mottaker er ikke Digipost-bruker og forsendelse mangler print-fallback.");
                 }
             }
-        return new EncrypterAndDocsWithInputstream(encrypter, documentsAndInputstream, singleChannelMessage);
+        return new EncrypterAndDocsWithContent(encrypter, documentsAndBuffers, singleChannelMessage);
     }
 
     static Message setMapAndMessageToDigipost(Message messageToCopy, Map<UUID, DocumentContent> documentsAndContent,
-                                              Map<Document, InputStream> documentsAndInputStream){
+                                              Map<Document, ContentBuffer> documentsAndBuffers){
         Message singleChannelMessage = Message.copyMessageWithOnlyDigipostDetails(messageToCopy);
-        setDigipostContentToUUID(documentsAndContent, documentsAndInputStream, singleChannelMessage.getAllDocuments());
+        setDigipostContentToUUID(documentsAndContent, documentsAndBuffers, singleChannelMessage.getAllDocuments());
 
         return singleChannelMessage;
     }
 
     static Message setMapAndMessageToPrint(Message messageToCopy, Map<UUID, DocumentContent> documentsAndContent,
-                                           Map<Document, InputStream> documentsAndInputStream) {
+                                           Map<Document, ContentBuffer> documentsAndBuffers) {
         Message singleChannelMessage = Message.copyMessageWithOnlyPrintDetails(messageToCopy);
-        setPrintContentToUUID(documentsAndContent, documentsAndInputStream, singleChannelMessage.getAllDocuments());
+        setPrintContentToUUID(documentsAndContent, documentsAndBuffers, singleChannelMessage.getAllDocuments());
 
         return singleChannelMessage;
     }
 
-    static void setDigipostContentToUUID(Map<UUID, DocumentContent> documentsAndContent, Map<Document, InputStream> documentsAndInputstream, Stream<Document> allDocuments) {
-        allDocuments.forEach(doc -> documentsAndInputstream.put(doc, documentsAndContent.get(doc.uuid).getDigipostContent()));
+    static void setDigipostContentToUUID(Map<UUID, DocumentContent> documentsAndContent, Map<Document, ContentBuffer> documentsAndBuffers, Stream<Document> allDocuments) {
+        allDocuments.forEach(doc -> documentsAndBuffers.put(doc, documentsAndContent.get(doc.uuid).getDigipostContent()));
     }
 
-    static void setPrintContentToUUID(Map<UUID, DocumentContent> documentsAndContent, Map<Document, InputStream> documentsAndInputstream, Stream<Document> allDocuments) {
-        allDocuments.forEach(doc -> documentsAndInputstream.put(doc, documentsAndContent.get(doc.uuid).getPrintContent()));
+    static void setPrintContentToUUID(Map<UUID, DocumentContent> documentsAndContent, Map<Document, ContentBuffer> documentsAndBuffers, Stream<Document> allDocuments) {
+        allDocuments.forEach(doc -> documentsAndBuffers.put(doc, documentsAndContent.get(doc.uuid).getPrintContent()));
+    }
+
+    /**
+     * En melding som er under sending, med tilstanden fra hvert steg av sendingen. Når meldingen
+     * lukkes frigjøres alt bufret innhold, også dersom sendingen feilet underveis.
+     */
+    static final class MessageInProgress implements AutoCloseable {
+        final Message message;
+        final Map<UUID, DocumentContent> documentsAndContent;
+        private Identification identification;
+        private EncrypterAndDocsWithContent encryptionAndContent;
+        private Map<Document, ContentBuffer> preparedDocuments = emptyMap();
+
+        MessageInProgress(Message message, Map<UUID, DocumentContent> documentsAndContent) {
+            this.message = message;
+            this.documentsAndContent = documentsAndContent;
+        }
+
+        @Override
+        public void close() {
+            release(preparedDocuments.values());
+            release(documentsAndContent.values());
+        }
+    }
+
+    /**
+     * Nøkkel for en mottaker i cachen av identifiserte mottakere. Cachen logger nøkkelen når en mottaker
+     * legges i cachen, og {@link Identification#toString()} inneholder fødselsnummer, Digipost-adresse,
+     * kontonummer eller navn og adresse, så {@link #toString()} gir ingen opplysninger om mottakeren.
+     */
+    static final class RecipientKey {
+        private final Identification identification;
+
+        RecipientKey(Identification identification) {
+            this.identification = identification;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof RecipientKey && identification.equals(((RecipientKey) obj).identification);
+        }
+
+        @Override
+        public int hashCode() {
+            return identification.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "recipient@" + Integer.toHexString(System.identityHashCode(this));
+        }
+    }
+
+    /**
+     * Resultatet av å identifisere en mottaker, med ferdig oppsatt {@link Encrypter} for mottakere i Digipost.
+     */
+    static final class IdentifiedRecipient {
+        final IdentificationResultWithEncryptionKey result;
+        private final Encrypter encrypter;
+
+        IdentifiedRecipient(IdentificationResultWithEncryptionKey result) {
+            this.result = result;
+            this.encrypter = result.getResultCode() == IdentificationResultCode.DIGIPOST ? Encrypter.using(new DigipostPublicKey(result.getEncryptionKey())) : null;
+        }
+
+        Encrypter encrypter() {
+            if (encrypter == null) {
+                throw new IllegalStateException("Mottaker er ikke Digipost-bruker, og har ingen krypteringsnøkkel");
+            }
+            return encrypter;
+        }
     }
 
-    private static class EncrypterAndDocsWithInputstream {
+    private static class EncrypterAndDocsWithContent {
         public final Encrypter encrypter;
-        public final Map<Document, InputStream> documentsAndInputstream;
+        public final Map<Document, ContentBuffer> documentsAndContent;
         private final Message singleChannelMessage;
 
-        public EncrypterAndDocsWithInputstream(Encrypter encrypter,
-                                               Map<Document, InputStream> documentsAndInputstream, Message singleChannelMessage) {
+        public EncrypterAndDocsWithContent(Encrypter encrypter,
+                                           Map<Document, ContentBuffer> documentsAndContent, Message singleChannelMessage) {
             this.encrypter = encrypter;
-            this.documentsAndInputstream = documentsAndInputstream;
+            this.documentsAndContent = documentsAndContent;
             this.singleChannelMessage = singleChannelMessage;
         }
 
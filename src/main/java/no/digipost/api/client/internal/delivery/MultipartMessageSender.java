@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageDelivery;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends the messages of {@link WithPrintFallback} and {@link PrintOnlyMessage} deliveries.
+ */
+interface MultipartMessageSender {
+
+    ContentBuffer bufferOnFirstRead(InputStream content);
+
+    MessageDelivery sendMultipartMessage(Message message, Map<UUID, DocumentContent> documentsAndContent);
+
+    CompletableFuture<MessageDelivery> sendMultipartMessageAsync(Message message, Map<UUID, DocumentContent> documentsAndContent);
+
+}
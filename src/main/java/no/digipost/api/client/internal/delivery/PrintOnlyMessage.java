@@ -21,9 +21,12 @@ import no.digipost.api.client.representations.Message;
 import no.digipost.api.client.representations.MessageDelivery;
 
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Sender en forsendelse direkte til print gjennom Digipost i ett kall.
@@ -31,12 +34,12 @@ import java.util.UUID;
  */
 final class PrintOnlyMessage implements OngoingDelivery.SendableForPrintOnly {
 
-    private final MessageDeliverer sender;
+    private final MultipartMessageSender sender;
     private final Message printMessage;
     private final Map<UUID, DocumentContent> documents = new LinkedHashMap<>();
 
 
-    PrintOnlyMessage(Message printMessage, MessageDeliverer sender) {
+    PrintOnlyMessage(Message printMessage, MultipartMessageSender sender) {
         if (!printMessage.isDirectPrint()) {
             throw new IllegalArgumentException("Direct print messages must have PrintDetails and "
                     + "cannot have DigipostAddress, PersonalIdentificationNumber or NameAndAddress");
@@ -53,7 +56,20 @@ final class PrintOnlyMessage implements OngoingDelivery.SendableForPrintOnly {
      */
     @Override
     public PrintOnlyMessage addContent(Document document, InputStream content) {
-        documents.put(document.uuid, DocumentContent.CreatePrintContent(content));
+        documents.put(document.uuid, DocumentContent.CreatePrintContent(sender.bufferOnFirstRead(content)));
+        return this;
+    }
+
+
+    @Override
+    public PrintOnlyMessage addContent(Document document, Path content) {
+        documents.put(document.uuid, DocumentContent.CreatePrintContent(ContentBuffer.ofFile(content)));
+        return this;
+    }
+
+    @Override
+    public PrintOnlyMessage addContent(Document document, FileChannel content) {
+        documents.put(document.uuid, DocumentContent.CreatePrintContent(ContentBuffer.ofChannel(content)));
         return this;
     }
 
@@ -63,5 +79,10 @@ final class PrintOnlyMessage implements OngoingDelivery.SendableForPrintOnly {
         return sender.sendMultipartMessage(printMessage, documents);
     }
 
+    @Override
+    public CompletableFuture<MessageDelivery> sendAsync() {
+        return sender.sendMultipartMessageAsync(printMessage, documents);
+    }
+
 }
 
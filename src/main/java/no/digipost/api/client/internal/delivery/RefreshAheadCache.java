@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static java.time.Duration.ZERO;
+import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
+
+/**
+ * Caches a single value for a time to live, and refreshes it in the background before it expires.
+ * <p>
+ * A value is fetched while the caller waits only if there is no value, or the value has expired, and then
+ * only one thread fetches it while other threads wait for that result. When a value is older than
+ * {@link #REFRESH_AHEAD_FRACTION} of the time to live, one refresh is started on the given executor,
+ * and the current value is served until the refresh completes. If the refresh fails, the current value
+ * is served until it expires.
+ */
+final class RefreshAheadCache<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshAheadCache.class);
+
+    static final double REFRESH_AHEAD_FRACTION = 0.8;
+
+    private final String name;
+    private final Supplier<T> fetcher;
+    private final Duration timeToLive;
+    private final Duration refreshAfter;
+    private final Clock clock;
+    private final Executor refreshExecutor;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private volatile Entry<T> entry;
+
+    /**
+     * @param timeToLive how long a value is used. {@link Duration#ZERO} disables caching, and fetches
+     *                   the value every time it is requested.
+     */
+    RefreshAheadCache(String name, Supplier<T> fetcher, Duration timeToLive, Clock clock, Executor refreshExecutor) {
+        this.name = name;
+        this.fetcher = fetcher;
+        this.timeToLive = timeToLive;
+        this.refreshAfter = Duration.ofMillis((long) (timeToLive.toMillis() * REFRESH_AHEAD_FRACTION));
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    T get() {
+        if (ZERO.equals(timeToLive)) {
+            return fetcher.get();
+        }
+        Instant now = clock.instant();
+        Entry<T> current = entry;
+        if (current == null || current.age(now).compareTo(timeToLive) > 0) {
+            return fetchWhileWaiting();
+        }
+        if (current.age(now).compareTo(refreshAfter) > 0) {
+            refreshInBackground();
+        }
+        return current.value;
+    }
+
+    private synchronized T fetchWhileWaiting() {
+        Entry<T> current = entry;
+        if (current != null && current.age(clock.instant()).compareTo(timeToLive) <= 0) {
+            return current.value;
+        }
+        return fetch().value;
+    }
+
+    private void refreshInBackground() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    fetch();
+                } catch (RuntimeException e) {
+                    LOG.warn("Unable to refresh {}, will use the cached value until it expires: {}", name, exceptionNameAndMessage(e), e);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+            LOG.warn("Unable to start refresh of {}: {}", name, exceptionNameAndMessage(e));
+        }
+    }
+
+    private Entry<T> fetch() {
+        Instant fetchedAt = clock.instant();
+        Entry<T> fetched = new Entry<>(fetcher.get(), fetchedAt);
+        entry = fetched;
+        return fetched;
+    }
+
+
+    private static final class Entry<T> {
+        final T value;
+        final Instant fetched;
+
+        Entry(T value, Instant fetched) {
+            this.value = value;
+            this.fetched = fetched;
+        }
+
+        Duration age(Instant now) {
+            return Duration.between(fetched, now);
+        }
+    }
+
+}
@@ -21,9 +21,12 @@ import no.digipost.api.client.representations.Message;
 import no.digipost.api.client.representations.MessageDelivery;
 
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Sender en forsendelse gjennom Digipost i ett kall. Dersom mottaker ikke er
@@ -33,11 +36,11 @@ import java.util.UUID;
  */
 final class WithPrintFallback implements OngoingDelivery.SendableWithPrintFallback {
 
-    private final MessageDeliverer sender;
+    private final MultipartMessageSender sender;
     private final Message message;
     private final Map<UUID, DocumentContent> documents = new LinkedHashMap<>();
 
-    WithPrintFallback(Message message, MessageDeliverer sender) {
+    WithPrintFallback(Message message, MultipartMessageSender sender) {
         this.message = message;
         this.sender = sender;
     }
@@ -50,13 +53,31 @@ final class WithPrintFallback implements OngoingDelivery.SendableWithPrintFallba
      */
     @Override
     public OngoingDelivery.SendableWithPrintFallback addContent(Document document, InputStream content) {
-        documents.put(document.uuid, DocumentContent.CreateBothStreamContent(content));
+        documents.put(document.uuid, DocumentContent.CreateBothStreamContent(sender.bufferOnFirstRead(content)));
         return this;
     }
 
     @Override
     public OngoingDelivery.SendableWithPrintFallback addContent(Document document, InputStream content, InputStream printContent) {
-        documents.put(document.uuid, DocumentContent.CreateMultiStreamContent(content, printContent));
+        documents.put(document.uuid, DocumentContent.CreateMultiStreamContent(sender.bufferOnFirstRead(content), sender.bufferOnFirstRead(printContent)));
+        return this;
+    }
+
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, Path content) {
+        documents.put(document.uuid, DocumentContent.CreateBothStreamContent(ContentBuffer.ofFile(content)));
+        return this;
+    }
+
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, FileChannel content) {
+        documents.put(document.uuid, DocumentContent.CreateBothStreamContent(ContentBuffer.ofChannel(content)));
+        return this;
+    }
+
+    @Override
+    public OngoingDelivery.SendableWithPrintFallback addContent(Document document, Path content, Path printContent) {
+        documents.put(document.uuid, DocumentContent.CreateMultiStreamContent(ContentBuffer.ofFile(content), ContentBuffer.ofFile(printContent)));
         return this;
     }
 
@@ -64,5 +85,10 @@ final class WithPrintFallback implements OngoingDelivery.SendableWithPrintFallba
     public MessageDelivery send() {
         return sender.sendMultipartMessage(message, documents);
     }
+
+    @Override
+    public CompletableFuture<MessageDelivery> sendAsync() {
+        return sender.sendMultipartMessageAsync(message, documents);
+    }
 }
 
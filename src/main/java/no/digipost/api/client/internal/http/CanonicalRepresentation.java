@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http;
+
+import no.digipost.api.client.security.RequestMessageSignatureUtil;
+import no.digipost.api.client.security.ResponseMessageSignatureUtil;
+import org.apache.http.Header;
+import org.apache.http.HeaderIterator;
+import org.apache.http.HttpMessage;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static no.digipost.api.client.internal.http.Headers.Content_MD5;
+import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
+import static no.digipost.api.client.internal.http.Headers.X_Digipost_UserId;
+import static org.apache.http.HttpHeaders.DATE;
+
+/**
+ * Writes the canonical representation of requests and responses, which is the data that is signed,
+ * as UTF-8 directly into a buffer which is reused by each thread. The representation is the same as
+ * given by {@link RequestMessageSignatureUtil} and {@link ResponseMessageSignatureUtil}, but only the
+ * signed headers are kept, and no intermediate strings or collections are created.
+ * <p>
+ * The signed headers are ordered and deduplicated as by the {@link java.util.TreeMap TreeMap} of those classes:
+ * by the header names as they are given, using {@link String#compareTo(String) natural ordering}, which
+ * is case-sensitive, and with the last value of headers with exactly the same name. Headers with the same name
+ * in different case are all included.
+ * <p>
+ * The returned buffers are only valid until the next representation is written by the same thread.
+ */
+public final class CanonicalRepresentation {
+
+    private static final String[] SIGNED_HEADERS = {Content_MD5, DATE, X_Content_SHA256, X_Digipost_UserId};
+    private static final byte[][] SIGNED_HEADER_PREFIXES = new byte[SIGNED_HEADERS.length][];
+    static {
+        for (int i = 0; i < SIGNED_HEADERS.length; i++) {
+            SIGNED_HEADER_PREFIXES[i] = (SIGNED_HEADERS[i].toLowerCase() + ": ").getBytes(UTF_8);
+        }
+    }
+
+    private static final ThreadLocal<CanonicalRepresentation> perThread = ThreadLocal.withInitial(CanonicalRepresentation::new);
+
+    public static ByteBuffer of(HttpRequest request) {
+        return perThread.get().writeRequest(request);
+    }
+
+    public static ByteBuffer of(HttpResponse response, String requestPath) {
+        return perThread.get().writeResponse(response, requestPath);
+    }
+
+    /**
+     * @return the decoded path of the given request URI, which may be absolute or only a path with an
+     *         optional query. If the URI is only a path, it is returned as is.
+     */
+    public static String decodedPath(String requestUri) {
+        int start = pathStart(requestUri);
+        int end = pathEnd(requestUri, start);
+        if (requestUri.indexOf('%', start) >= 0 && requestUri.indexOf('%', start) < end) {
+            return URI.create(requestUri).getPath();
+        }
+        return start == 0 && end == requestUri.length() ? requestUri : requestUri.substring(start, end);
+    }
+
+
+    private Header[] signedHeaders = new Header[SIGNED_HEADERS.length];
+    private int signedHeaderCount;
+
+    private byte[] bytes = new byte[1024];
+    private ByteBuffer written = ByteBuffer.wrap(bytes);
+    private int length;
+
+    private CanonicalRepresentation() {
+    }
+
+    private ByteBuffer writeRequest(HttpRequest request) {
+        length = 0;
+        String uri = request.getRequestLine().getUri();
+        int pathStart = pathStart(uri);
+        int pathEnd = pathEnd(uri, pathStart);
+        writeUpperCase(request.getRequestLine().getMethod());
+        writeNewline();
+        writeLowerCase(uri, pathStart, pathEnd);
+        writeNewline();
+        writeSignedHeaders(request);
+        int queryStart = uri.indexOf('?', pathEnd);
+        if (queryStart >= 0) {
+            writeLowerCase(uri, queryStart + 1, uri.length());
+        }
+        writeNewline();
+        return written();
+    }
+
+    private ByteBuffer writeResponse(HttpResponse response, String requestPath) {
+        length = 0;
+        writeDecimal(response.getStatusLine().getStatusCode());
+        writeNewline();
+        writeLowerCase(requestPath, 0, requestPath.length());
+        writeNewline();
+        writeSignedHeaders(response);
+        return written();
+    }
+
+    private void writeSignedHeaders(HttpMessage message) {
+        signedHeaderCount = 0;
+        for (HeaderIterator headers = message.headerIterator(); headers.hasNext(); ) {
+            Header header = headers.nextHeader();
+            if (signedHeaderIndex(header.getName()) >= 0) {
+                putSorted(header);
+            }
+        }
+        for (int i = 0; i < signedHeaderCount; i++) {
+            Header header = signedHeaders[i];
+            signedHeaders[i] = null;
+            write(SIGNED_HEADER_PREFIXES[signedHeaderIndex(header.getName())]);
+            String value = header.getValue();
+            if (value != null) {
+                write(value, 0, value.length());
+            } else {
+                write("null", 0, 4);
+            }
+            writeNewline();
+        }
+    }
+
+    /**
+     * Insert a header by its name in natural order, replacing a header with exactly the same name.
+     */
+    private void putSorted(Header header) {
+        String name = header.getName();
+        int position = 0;
+        while (position < signedHeaderCount) {
+            int comparison = signedHeaders[position].getName().compareTo(name);
+            if (comparison == 0) {
+                signedHeaders[position] = header;
+                return;
+            } else if (comparison > 0) {
+                break;
+            }
+            position++;
+        }
+        if (signedHeaderCount == signedHeaders.length) {
+            signedHeaders = Arrays.copyOf(signedHeaders, signedHeaders.length * 2);
+        }
+        System.arraycopy(signedHeaders, position, signedHeaders, position + 1, signedHeaderCount - position);
+        signedHeaders[position] = header;
+        signedHeaderCount++;
+    }
+
+    private static int signedHeaderIndex(String name) {
+        for (int i = 0; i < SIGNED_HEADERS.length; i++) {
+            if (SIGNED_HEADERS[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuffer written() {
+        written.clear();
+        written.limit(length);
+        return written;
+    }
+
+
+    private void writeNewline() {
+        ensureCapacity(1);
+        bytes[length++] = '\n';
+    }
+
+    private void write(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, bytes, length, b.length);
+        length += b.length;
+    }
+
+    /**
+     * Write a non-negative number, e.g. a status code.
+     */
+    private void writeDecimal(int value) {
+        int digits = 1;
+        for (int remaining = value / 10; remaining > 0; remaining /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void writeUpperCase(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            write(Character.toUpperCase(s.charAt(i)), s, i);
+        }
+    }
+
+    private void writeLowerCase(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            write(Character.toLowerCase(s.charAt(i)), s, i);
+        }
+    }
+
+    private void write(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            write(s.charAt(i), s, i);
+        }
+    }
+
+    /**
+     * Write one char as UTF-8. A surrogate pair is written when given its high surrogate,
+     * and its low surrogate is then skipped.
+     */
+    private void write(char c, String s, int index) {
+        ensureCapacity(4);
+        if (c < 0x80) {
+            bytes[length++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[length++] = (byte) (0xC0 | (c >> 6));
+            bytes[length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < s.length() && Character.isLowSurrogate(s.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, s.charAt(index + 1));
+            bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            if (!Character.isLowSurrogate(c) || index == 0 || !Character.isHighSurrogate(s.charAt(index - 1))) {
+                bytes[length++] = '?';
+            }
+        } else {
+            bytes[length++] = (byte) (0xE0 | (c >> 12));
+            bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            bytes[length++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length * 2, length + additional)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+            written = ByteBuffer.wrap(bytes);
+        }
+    }
+
+
+    private static int pathStart(String uri) {
+        if (uri.startsWith("/")) {
+            return 0;
+        }
+        int scheme = uri.indexOf("://");
+        if (scheme < 0) {
+            return 0;
+        }
+        int authorityEnd = scheme + 3;
+        while (authorityEnd < uri.length() && "/?#".indexOf(uri.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        return authorityEnd;
+    }
+
+    private static int pathEnd(String uri, int pathStart) {
+        int end = pathStart;
+        while (end < uri.length() && uri.charAt(end) != '?' && uri.charAt(end) != '#') {
+            end++;
+        }
+        return end;
+    }
+
+}
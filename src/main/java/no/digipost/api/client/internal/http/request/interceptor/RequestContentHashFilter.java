@@ -17,11 +17,14 @@ package no.digipost.api.client.internal.http.request.interceptor;
 
 import no.digipost.api.client.EventLogger;
 import no.digipost.api.client.security.Digester;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpRequest;
 import org.bouncycastle.util.encoders.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+
 public class RequestContentHashFilter {
 
     private static final Logger LOG = LoggerFactory.getLogger(RequestContentHashFilter.class);
@@ -41,7 +44,26 @@ public class RequestContentHashFilter {
     }
 
     public void settContentHashHeader(final byte[] data, final HttpRequest httpRequest) {
-        byte[] result = digester.createDigest(data);
+        setHashHeader(digester.createDigest(data), httpRequest);
+    }
+
+    /**
+     * Set the content hash header from the given entity, which is digested as it is
+     * {@link HttpEntity#writeTo(java.io.OutputStream) written}, without reading it into memory.
+     * The entity must be {@link HttpEntity#isRepeatable() repeatable}, as it will be written
+     * again when the request is sent.
+     * <p>
+     * The entity is thus written twice for every request: once here, and once to the connection.
+     * For a multipart message this means the document content is read twice, and the
+     * MIME framing is generated twice. This can not be done in one pass, as the hash is part of the
+     * signed headers, and the headers are sent before the body. Nor can it be made from digests of
+     * each part, as SHA-256 digests can not be combined.
+     */
+    public void settContentHashHeader(final HttpEntity entity, final HttpRequest httpRequest) throws IOException {
+        setHashHeader(digester.createDigest(entity::writeTo), httpRequest);
+    }
+
+    private void setHashHeader(final byte[] result, final HttpRequest httpRequest) {
         String hash = new String(Base64.encode(result));
         httpRequest.setHeader(header, hash);
         eventLogger.log(RequestContentHashFilter.class.getSimpleName() + " satt headeren " + header + "=" + hash);
@@ -16,22 +16,23 @@
 package no.digipost.api.client.internal.http.request.interceptor;
 
 import no.digipost.api.client.EventLogger;
+import no.digipost.api.client.internal.http.CanonicalRepresentation;
 import no.digipost.api.client.internal.http.Headers;
-import no.digipost.api.client.security.RequestMessageSignatureUtil;
 import no.digipost.api.client.security.Signer;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
 import org.bouncycastle.util.encoders.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URI;
-import java.util.Optional;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class RequestSignatureInterceptor implements HttpRequestInterceptor {
 
@@ -40,25 +41,29 @@ public class RequestSignatureInterceptor implements HttpRequestInterceptor {
     private final Signer signer;
     private final RequestContentHashFilter hashFilter;
     private final EventLogger eventLogger;
+    private final boolean hasEventLogger;
 
     public RequestSignatureInterceptor(Signer signer, RequestContentHashFilter hashFilter) {
         this(signer, EventLogger.NOOP_LOGGER, hashFilter);
     }
 
     public RequestSignatureInterceptor(Signer signer, EventLogger eventLogger, RequestContentHashFilter hashFilter){
+        this.hasEventLogger = eventLogger != null && eventLogger != EventLogger.NOOP_LOGGER;
         this.eventLogger = (eventLogger != null ? eventLogger : EventLogger.NOOP_LOGGER).withDebugLogTo(LOG);
         this.signer = signer;
         this.hashFilter = hashFilter;
     }
 
     private void setSignatureHeader(HttpRequest httpRequest) {
-        String stringToSign = RequestMessageSignatureUtil.getCanonicalRequestRepresentation(new ApacheHttpRequestToSign(httpRequest));
-        eventLogger.log(getClass().getSimpleName() + " beregnet streng som skal signeres:\n" +
-                        "===START SIGNATURSTRENG===\n" +
-                        stringToSign +
-                        "===SLUTT SIGNATURSTRENG===");
+        ByteBuffer dataToSign = CanonicalRepresentation.of(httpRequest);
+        if (hasEventLogger || LOG.isDebugEnabled()) {
+            eventLogger.log(getClass().getSimpleName() + " beregnet streng som skal signeres:\n" +
+                            "===START SIGNATURSTRENG===\n" +
+                            UTF_8.decode(dataToSign.duplicate()) +
+                            "===SLUTT SIGNATURSTRENG===");
+        }
 
-        byte[] signatureBytes = signer.sign(stringToSign);
+        byte[] signatureBytes = signer.sign(dataToSign);
         String signature = new String(Base64.encode(signatureBytes));
         httpRequest.setHeader(Headers.X_Digipost_Signature, signature);
         eventLogger.log(getClass().getSimpleName() + " satt headeren " + Headers.X_Digipost_Signature + "=" + signature);
@@ -74,14 +79,18 @@ public class RequestSignatureInterceptor implements HttpRequestInterceptor {
             if (rqEntity == null) {
                 setSignatureHeader(httpRequest);
             } else {
-                byte[] entityBytes = Optional.ofNullable(EntityUtils.toByteArray(rqEntity)).orElseGet(() -> new byte[0]);
-                hashFilter.settContentHashHeader(entityBytes, request);
+                if (!rqEntity.isRepeatable()) {
+                    eventLogger.log(getClass().getSimpleName() + " bufrer ikke-repeterbar entity for å kunne beregne hash av innholdet");
+                    rqEntity = new BufferedHttpEntity(rqEntity);
+                    request.setEntity(rqEntity);
+                }
+                hashFilter.settContentHashHeader(rqEntity, request);
                 setSignatureHeader(httpRequest);
             }
         } else {
             setSignatureHeader(httpRequest);
         }
-        httpContext.setAttribute("request-path", URI.create(httpRequest.getRequestLine().getUri()).getPath());
+        httpContext.setAttribute("request-path", CanonicalRepresentation.decodedPath(httpRequest.getRequestLine().getUri()));
 
 
     }
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response.interceptor;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.encoders.Base64;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static no.digipost.api.client.errorhandling.ErrorCode.SERVER_SIGNATURE_ERROR;
+import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
+
+/**
+ * Response entity which hashes the content while it is read, and verifies the hash against the
+ * {@value no.digipost.api.client.internal.http.Headers#X_Content_SHA256} header when the end of the
+ * content is reached. If the content stream is closed before the end, the rest of the content is read
+ * and verified, the same way as the underlying stream reads the rest to release the connection.
+ * A mismatch is thrown as a {@link DigipostClientException} with {@code SERVER_SIGNATURE_ERROR}.
+ */
+final class ContentSHA256VerifyingEntity extends HttpEntityWrapper {
+
+    private final String expectedHash;
+    private InputStream verifyingContent;
+
+    ContentSHA256VerifyingEntity(HttpEntity wrappedEntity, String expectedHash) {
+        super(wrappedEntity);
+        this.expectedHash = expectedHash;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public synchronized InputStream getContent() throws IOException {
+        if (verifyingContent == null) {
+            verifyingContent = new VerifyingInputStream(super.getContent());
+        }
+        return verifyingContent;
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        try (InputStream content = getContent()) {
+            IOUtils.copyLarge(content, outStream);
+        }
+    }
+
+
+    private final class VerifyingInputStream extends FilterInputStream {
+
+        private final SHA256Digest digest = new SHA256Digest();
+        private boolean verified = false;
+
+        VerifyingInputStream(InputStream content) {
+            super(content);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (verified) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                verify();
+            } else {
+                digest.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (verified) {
+                return -1;
+            } else if (len == 0) {
+                return 0;
+            }
+            int read = in.read(b, off, len);
+            if (read < 0) {
+                verify();
+            } else {
+                digest.update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] skipped = new byte[(int) Math.min(n, 8192)];
+            long remaining = n;
+            while (remaining > 0) {
+                int read = read(skipped, 0, (int) Math.min(remaining, skipped.length));
+                if (read < 0) {
+                    break;
+                }
+                remaining -= read;
+            }
+            return n - remaining;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!verified) {
+                    byte[] rest = new byte[8192];
+                    while (read(rest, 0, rest.length) >= 0);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        private void verify() {
+            verified = true;
+            byte[] result = new byte[digest.getDigestSize()];
+            digest.doFinal(result, 0);
+            if (!expectedHash.equals(Base64.toBase64String(result))) {
+                throw new DigipostClientException(SERVER_SIGNATURE_ERROR, X_Content_SHA256 + " header did not match actual response body");
+            }
+        }
+    }
+}
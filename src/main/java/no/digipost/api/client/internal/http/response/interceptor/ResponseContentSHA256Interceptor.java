@@ -35,6 +35,13 @@ import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
 
 public class ResponseContentSHA256Interceptor implements HttpResponseInterceptor {
 
+    /**
+     * Context attribute for requests where the response content is offered as a stream. The content is
+     * then verified while it is read, instead of being read into memory and verified before the response
+     * is returned. See {@link ContentSHA256VerifyingEntity}.
+     */
+    public static final String VERIFY_WHILE_STREAMING = "VERIFY_WHILE_STREAMING";
+
     @Override
     public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
         final HttpEntity entity = response.getEntity();
@@ -45,9 +52,13 @@ public class ResponseContentSHA256Interceptor implements HttpResponseInterceptor
                     .orElseThrow(() -> new DigipostClientException(SERVER_SIGNATURE_ERROR,
                             String.format("Missing %s header in response. This header is expected when a response body is present. Http response was %s",
                                     X_Content_SHA256, response.getStatusLine())));
-            byte[] entityBytes = EntityUtils.toByteArray(entity);
-            validerBytesMotHashHeader(hashHeaderValue, entityBytes);
-            response.setEntity(new ByteArrayEntity(entityBytes));
+            if (Boolean.TRUE.equals(context.getAttribute(VERIFY_WHILE_STREAMING))) {
+                response.setEntity(new ContentSHA256VerifyingEntity(entity, hashHeaderValue));
+            } else {
+                byte[] entityBytes = EntityUtils.toByteArray(entity);
+                validerBytesMotHashHeader(hashHeaderValue, entityBytes);
+                response.setEntity(new ByteArrayEntity(entityBytes));
+            }
         }
     }
 
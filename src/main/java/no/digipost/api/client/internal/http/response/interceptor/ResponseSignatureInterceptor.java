@@ -16,8 +16,8 @@
 package no.digipost.api.client.internal.http.response.interceptor;
 
 import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.internal.http.CanonicalRepresentation;
 import no.digipost.api.client.representations.EntryPoint;
-import no.digipost.api.client.security.ResponseMessageSignatureUtil;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpResponseInterceptor;
@@ -27,7 +27,9 @@ import org.bouncycastle.util.encoders.Base64;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
@@ -37,10 +39,20 @@ import static no.digipost.api.client.errorhandling.ErrorCode.SERVER_SIGNATURE_ER
 import static no.digipost.api.client.internal.http.Headers.X_Digipost_Signature;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
+/**
+ * Verifies the signature of responses from Digipost using the certificate given in the
+ * {@link EntryPoint}. The certificate is parsed only once for each resolved {@code EntryPoint}
+ * instance, and each thread reuses its own {@link Signature} verifier, which is only
+ * reinitialized when the certificate changes.
+ */
 public class ResponseSignatureInterceptor implements HttpResponseInterceptor {
 
     public static final String NOT_SIGNED_RESPONSE = "NOT_SIGNED_RESPONSE";
+
+    private static final ThreadLocal<Verifier> verifiers = ThreadLocal.withInitial(Verifier::new);
+
     private final Supplier<EntryPoint> entryPointResolver;
+    private volatile ServerCertificate serverCertificate;
 
     public ResponseSignatureInterceptor(final Supplier<EntryPoint> entryPointResolver) {
         this.entryPointResolver = entryPointResolver;
@@ -55,14 +67,11 @@ public class ResponseSignatureInterceptor implements HttpResponseInterceptor {
 
         try {
             String serverSignaturBase64 = getServerSignaturFromResponse(response);
-            byte[] serverSignaturBytes = Base64.decode(serverSignaturBase64.getBytes());
+            byte[] serverSignaturBytes = Base64.decode(serverSignaturBase64);
 
-            String signatureString = ResponseMessageSignatureUtil.getCanonicalResponseRepresentation(new ApacheHttpResponseToVerify(context, response));
+            ByteBuffer signedData = CanonicalRepresentation.of(response, (String) context.getAttribute("request-path"));
 
-            Signature instance = Signature.getInstance("SHA256WithRSAEncryption");
-            instance.initVerify(lastSertifikat());
-            instance.update(signatureString.getBytes());
-            boolean verified = instance.verify(serverSignaturBytes);
+            boolean verified = verifiers.get().verify(serverCertificate().publicKey, signedData, serverSignaturBytes);
             if (!verified) {
                 throw new DigipostClientException(SERVER_SIGNATURE_ERROR, "Response from server did not match signature.");
             }
@@ -93,8 +102,22 @@ public class ResponseSignatureInterceptor implements HttpResponseInterceptor {
     }
 
     public X509Certificate lastSertifikat() {
+        return serverCertificate().certificate;
+    }
+
+    private ServerCertificate serverCertificate() {
+        EntryPoint entryPoint = entryPointResolver.get();
+        ServerCertificate cached = serverCertificate;
+        if (cached == null || cached.entryPoint != entryPoint) {
+            cached = new ServerCertificate(entryPoint, parseSertifikat(entryPoint.getCertificate()));
+            serverCertificate = cached;
+        }
+        return cached;
+    }
+
+    private static X509Certificate parseSertifikat(String pem) {
         try {
-            InputStream certStream = new ByteArrayInputStream(entryPointResolver.get().getCertificate().getBytes());
+            InputStream certStream = new ByteArrayInputStream(pem.getBytes());
 
             CertificateFactory cf = CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME);
             X509Certificate sertifikat = (X509Certificate) cf.generateCertificate(certStream);
@@ -108,4 +131,45 @@ public class ResponseSignatureInterceptor implements HttpResponseInterceptor {
                     "Unable to load Digipost's public key. Signature from server could not be validated");
         }
     }
+
+
+    private static final class ServerCertificate {
+        final EntryPoint entryPoint;
+        final X509Certificate certificate;
+        final PublicKey publicKey;
+
+        ServerCertificate(EntryPoint entryPoint, X509Certificate certificate) {
+            this.entryPoint = entryPoint;
+            this.certificate = certificate;
+            this.publicKey = certificate.getPublicKey();
+        }
+    }
+
+
+    /**
+     * A {@link Signature} is reset to its initialized state after each verification,
+     * so it only needs to be initialized again when verifying with another key.
+     */
+    private static final class Verifier {
+        private Signature signature;
+        private PublicKey initializedWith;
+
+        boolean verify(PublicKey key, ByteBuffer data, byte[] expectedSignature) throws GeneralSecurityException {
+            try {
+                if (key != initializedWith) {
+                    initializedWith = null;
+                    if (signature == null) {
+                        signature = Signature.getInstance("SHA256WithRSAEncryption");
+                    }
+                    signature.initVerify(key);
+                    initializedWith = key;
+                }
+                signature.update(data);
+                return signature.verify(expectedSignature);
+            } catch (GeneralSecurityException | RuntimeException e) {
+                initializedWith = null;
+                throw e;
+            }
+        }
+    }
 }
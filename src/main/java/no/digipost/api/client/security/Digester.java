@@ -15,20 +15,35 @@
  */
 package no.digipost.api.client.security;
 
-import org.bouncycastle.crypto.ExtendedDigest;
 import org.bouncycastle.crypto.digests.SHA256Digest;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 @FunctionalInterface
 public interface Digester {
 
-    final static Digester sha256 = data -> {
-        ExtendedDigest instance = new SHA256Digest();
-        byte[] result = new byte[instance.getDigestSize()];
-        instance.update(data, 0, data.length);
-        instance.doFinal(result, 0);
-        return result;
-    };
+    final static Digester sha256 = new StreamingDigester(SHA256Digest::new);
 
     byte[] createDigest(byte[] data);
 
+    /**
+     * Create a digest of the content written by the given {@link ContentWriter}.
+     * The default implementation collects the content in memory and delegates
+     * to {@link #createDigest(byte[])}. Implementations able to digest content
+     * as it is written should override this.
+     */
+    default byte[] createDigest(ContentWriter content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        content.writeTo(bytes);
+        return createDigest(bytes.toByteArray());
+    }
+
+
+    @FunctionalInterface
+    interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
 }
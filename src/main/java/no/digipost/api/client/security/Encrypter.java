@@ -16,10 +16,11 @@
 package no.digipost.api.client.security;
 
 import no.digipost.api.client.errorhandling.DigipostClientException;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.bouncycastle.cms.CMSAlgorithm;
 import org.bouncycastle.cms.CMSEnvelopedData;
 import org.bouncycastle.cms.CMSEnvelopedDataGenerator;
+import org.bouncycastle.cms.CMSEnvelopedDataStreamGenerator;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.jcajce.JceCMSContentEncryptorBuilder;
@@ -29,6 +30,8 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.security.InvalidKeyException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
@@ -46,6 +49,7 @@ public final class Encrypter {
     public static final Encrypter FAIL_IF_TRYING_TO_ENCRYPT = new Encrypter();
 
     private final JceKeyTransRecipientInfoGenerator keyInfoGenerator;
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
     private static final JceCMSContentEncryptorBuilder encryptorBuilder = new JceCMSContentEncryptorBuilder(CMSAlgorithm.AES256_CBC).setProvider(BouncyCastleProvider.PROVIDER_NAME);
 
     public static Encrypter using(DigipostPublicKey key) {
@@ -68,20 +72,49 @@ public final class Encrypter {
         keyInfoGenerator = null;
     }
 
+    /**
+     * Encrypt content from a stream. The content is encrypted as the returned stream is read, and
+     * neither the content nor the encrypted result is held in memory in its entirety.
+     *
+     * @param content the content to encrypt. It is closed when the returned stream is closed.
+     * @return a stream of the encrypted content, as CMS enveloped data. Failures reading the content are
+     *         thrown from the returned stream as they are, while failures to encrypt are thrown as
+     *         {@link DigipostClientException} with {@link no.digipost.api.client.errorhandling.ErrorCode#FAILED_PREENCRYPTION FAILED_PREENCRYPTION}.
+     */
     public InputStream encrypt(InputStream content) {
-        byte[] bytes;
+        return new EncryptingInputStream(content, this::openEncryptingStream);
+    }
+
+    /**
+     * Encrypt content from a stream, writing the encrypted content, as CMS enveloped data, directly
+     * to the given {@link OutputStream}. Neither the content nor the encrypted result is held
+     * in memory in its entirety.
+     *
+     * @param content the content to encrypt.
+     * @param encryptedOut where to write the encrypted content. The stream is not closed.
+     * @throws UncheckedIOException if reading the content fails, which is not reported as an encryption failure.
+     */
+    public void encrypt(InputStream content, OutputStream encryptedOut) {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try (OutputStream encrypting = openEncryptingStream(new CloseShieldOutputStream(encryptedOut))) {
+            for (int read = readContent(content, buffer); read >= 0; read = readContent(content, buffer)) {
+                encrypting.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new DigipostClientException(FAILED_PREENCRYPTION, "Feil ved kryptering av innhold: " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
+        }
+    }
+
+    private static int readContent(InputStream content, byte[] buffer) {
         try {
-            bytes = IOUtils.toByteArray(content);
+            return content.read(buffer);
         } catch (IOException e) {
-            throw new RuntimeException(e.getClass().getSimpleName() + ": '" + e.getMessage() + "'", e);
+            throw new UncheckedIOException("Feil ved lesing av innhold som skal krypteres: " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
         }
-        return encrypt(bytes);
     }
 
     public InputStream encrypt(byte[] content) {
-        if (keyInfoGenerator == null) {
-            throw new DigipostClientException(ENCRYPTION_KEY_NOT_FOUND, "Trying to preencrypt but have no encryption key.");
-        }
+        verifyHasKey();
 
         try {
             CMSEnvelopedDataGenerator gen = new CMSEnvelopedDataGenerator();
@@ -90,15 +123,39 @@ public final class Encrypter {
             CMSEnvelopedData d = gen.generate(new CMSProcessableByteArray(content), encryptorBuilder.build());
             return new ByteArrayInputStream(d.getEncoded());
         } catch (Exception e) {
-            if (e instanceof CMSException && getRootCause(e) instanceof InvalidKeyException) {
-                throw new DigipostClientException(FAILED_PREENCRYPTION,
-                        "Ugyldig krypteringsnøkkel. (" + InvalidKeyException.class.getName() + ") Er Java Cryptographic Extensions (JCE) " +
-                        "Unlimited Strength Jurisdiction Policy Files installert? " +
-                        "Dette kan lastes ned fra http://www.oracle.com/technetwork/java/javase/downloads/ under \"Additional Resources\". " +
-                        "Plasser filene US_export_policy.jar og local_policy.jar i ${JAVA_HOME}/jre/lib/security (overskriv eksisterende).", e);
-            } else {
-                throw new DigipostClientException(FAILED_PREENCRYPTION, "Feil ved kryptering av innhold: " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
-            }
+            throw asEncryptionException(e);
+        }
+    }
+
+    private OutputStream openEncryptingStream(OutputStream encryptedOut) {
+        verifyHasKey();
+
+        try {
+            CMSEnvelopedDataStreamGenerator gen = new CMSEnvelopedDataStreamGenerator();
+            gen.addRecipientInfoGenerator(keyInfoGenerator);
+            return gen.open(encryptedOut, encryptorBuilder.build());
+        } catch (Exception e) {
+            throw asEncryptionException(e);
+        }
+    }
+
+    private void verifyHasKey() {
+        if (keyInfoGenerator == null) {
+            throw new DigipostClientException(ENCRYPTION_KEY_NOT_FOUND, "Trying to preencrypt but have no encryption key.");
+        }
+    }
+
+    static DigipostClientException asEncryptionException(Exception e) {
+        if (e instanceof DigipostClientException) {
+            return (DigipostClientException) e;
+        } else if (e instanceof CMSException && getRootCause(e) instanceof InvalidKeyException) {
+            return new DigipostClientException(FAILED_PREENCRYPTION,
+                    "Ugyldig krypteringsnøkkel. (" + InvalidKeyException.class.getName() + ") Er Java Cryptographic Extensions (JCE) " +
+                    "Unlimited Strength Jurisdiction Policy Files installert? " +
+                    "Dette kan lastes ned fra http://www.oracle.com/technetwork/java/javase/downloads/ under \"Additional Resources\". " +
+                    "Plasser filene US_export_policy.jar og local_policy.jar i ${JAVA_HOME}/jre/lib/security (overskriv eksisterende).", e);
+        } else {
+            return new DigipostClientException(FAILED_PREENCRYPTION, "Feil ved kryptering av innhold: " + e.getClass().getSimpleName() + " '" + e.getMessage() + "'", e);
         }
     }
 }
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.UnaryOperator;
+
+/**
+ * Pull-based adapter for a push-based encrypting {@link OutputStream}. Plaintext is read
+ * from the source in chunks and pushed through the encrypting stream only when more
+ * ciphertext is requested, so only about one chunk of ciphertext is buffered at a time.
+ */
+final class EncryptingInputStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final InputStream plaintext;
+    private final ChunkBuffer ciphertext = new ChunkBuffer();
+    private final OutputStream encrypting;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    private int position = 0;
+    private boolean plaintextExhausted = false;
+
+    /**
+     * @param plaintext the content to encrypt
+     * @param encryptingStreamFactory opens an encrypting stream writing ciphertext to the given stream.
+     *                                It is invoked immediately, so any error regarding the encryption key
+     *                                is thrown from this constructor.
+     */
+    EncryptingInputStream(InputStream plaintext, UnaryOperator<OutputStream> encryptingStreamFactory) {
+        this.plaintext = plaintext;
+        this.encrypting = encryptingStreamFactory.apply(ciphertext);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == ciphertext.size() && !plaintextExhausted) {
+            encryptNextChunk();
+        }
+        int available = ciphertext.size() - position;
+        if (available == 0) {
+            return -1;
+        }
+        int read = Math.min(len, available);
+        System.arraycopy(ciphertext.bytes(), position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return ciphertext.size() - position;
+    }
+
+    /**
+     * Failures reading the plaintext are thrown as they are, while failures to encrypt are thrown as
+     * {@link no.digipost.api.client.errorhandling.DigipostClientException DigipostClientException} with
+     * {@link no.digipost.api.client.errorhandling.ErrorCode#FAILED_PREENCRYPTION FAILED_PREENCRYPTION},
+     * the same as when the encryption fails before the stream is read.
+     */
+    private void encryptNextChunk() throws IOException {
+        ciphertext.reset();
+        position = 0;
+        int read = plaintext.read(chunk);
+        try {
+            if (read < 0) {
+                plaintextExhausted = true;
+                encrypting.close();
+            } else {
+                encrypting.write(chunk, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw Encrypter.asEncryptionException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        plaintext.close();
+    }
+
+
+    private static final class ChunkBuffer extends ByteArrayOutputStream {
+        ChunkBuffer() {
+            super(CHUNK_SIZE + 1024);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
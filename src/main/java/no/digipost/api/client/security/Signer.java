@@ -16,8 +16,11 @@
 package no.digipost.api.client.security;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.PrivateKey;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 @FunctionalInterface
 public interface Signer {
 
@@ -31,4 +34,18 @@ public interface Signer {
 
     public byte[] sign(String dataToSign);
 
+    /**
+     * Sign the remaining bytes of a buffer, which are the UTF-8 encoded data to sign.
+     * The position of the buffer is advanced to its limit.
+     * <p>
+     * The default implementation decodes the bytes and delegates to {@link #sign(String)}, while
+     * the signer {@link #using(PrivateKey) using a private key} signs the bytes directly.
+     *
+     * @param dataToSign the UTF-8 encoded data to sign
+     * @return the signature
+     */
+    default byte[] sign(ByteBuffer dataToSign) {
+        return sign(UTF_8.decode(dataToSign).toString());
+    }
+
 }
@@ -15,20 +15,53 @@
  */
 package no.digipost.api.client.security;
 
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
+import java.security.Signature;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * Signs using a {@link Signature} for each thread, which is initialized with the private key
+ * only once. A signature is reset to its initialized state after having signed, and is
+ * discarded if signing fails.
+ */
 final class SignerUsingPrivateKey implements Signer {
 
     private final PrivateKey privateKey;
+    private final ThreadLocal<Signature> signatures;
 
     public SignerUsingPrivateKey(PrivateKey privateKey) {
         this.privateKey = privateKey;
+        this.signatures = ThreadLocal.withInitial(this::newSignature);
     }
 
     @Override
     public byte[] sign(String dataToSign) {
-        return CryptoUtil.sign(privateKey, dataToSign);
+        return sign(ByteBuffer.wrap(dataToSign.getBytes(UTF_8)));
+    }
+
+    @Override
+    public byte[] sign(ByteBuffer dataToSign) {
+        Signature signature = signatures.get();
+        try {
+            signature.update(dataToSign);
+            return signature.sign();
+        } catch (GeneralSecurityException | RuntimeException e) {
+            signatures.remove();
+            throw new RuntimeException("Det skjedde en feil ved signeringen", e);
+        }
+    }
+
+    private Signature newSignature() {
+        try {
+            Signature signature = Signature.getInstance("SHA256WithRSAEncryption");
+            signature.initSign(privateKey);
+            return signature;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Det skjedde en feil ved signeringen", e);
+        }
     }
 
 }
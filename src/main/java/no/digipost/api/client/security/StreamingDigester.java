@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import org.bouncycastle.crypto.ExtendedDigest;
+import org.bouncycastle.crypto.io.DigestOutputStream;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Digester which updates the digest as content is written, and never holds
+ * the content itself.
+ */
+final class StreamingDigester implements Digester {
+
+    private final Supplier<? extends ExtendedDigest> digestFactory;
+
+    StreamingDigester(Supplier<? extends ExtendedDigest> digestFactory) {
+        this.digestFactory = digestFactory;
+    }
+
+    @Override
+    public byte[] createDigest(byte[] data) {
+        ExtendedDigest instance = digestFactory.get();
+        byte[] result = new byte[instance.getDigestSize()];
+        instance.update(data, 0, data.length);
+        instance.doFinal(result, 0);
+        return result;
+    }
+
+    @Override
+    public byte[] createDigest(ContentWriter content) throws IOException {
+        DigestOutputStream digestingSink = new DigestOutputStream(digestFactory.get());
+        content.writeTo(digestingSink);
+        return digestingSink.getDigest();
+    }
+
+}
@@ -18,24 +18,50 @@ package no.digipost.api.client.util;
 import no.digipost.api.client.representations.*;
 import no.digipost.api.client.representations.accounts.UserInformation;
 import no.digipost.api.client.representations.accounts.UserAccount;
+import no.digipost.api.client.representations.inbox.Inbox;
 import no.digipost.api.client.representations.sender.SenderInformation;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import static no.digipost.api.client.internal.ExceptionUtils.exceptionNameAndMessage;
 
+/**
+ * Marshalling and unmarshalling of the API representations. Creating a {@link Marshaller} or
+ * {@link Unmarshaller} is costly compared to using one, so those of the shared {@link #jaxbContext}
+ * are pooled and reused. They are not thread-safe, and each one is only used by one thread at a time.
+ * Other contexts get new instances for every use, as nothing here knows when such a context is
+ * no longer in use and its pooled instances could be released.
+ */
 public class JAXBContextUtils {
     public static final JAXBContext jaxbContext = initContext(
             EntryPoint.class, ErrorMessage.class, Identification.class, IdentificationResult.class, Message.class, Recipients.class,
             Autocomplete.class, DocumentEvents.class, DocumentStatus.class, MessageDelivery.class, EncryptionKey.class,
             IdentificationResultWithEncryptionKey.class, SenderInformation.class, UserInformation.class, UserAccount.class,
-            AdditionalData.class, EncryptionCertificate.class
+            AdditionalData.class, EncryptionCertificate.class, Inbox.class
     );
 
+    private static final int MAX_POOLED = 64;
+    private static final int MAX_REUSED_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Marshallers and unmarshallers are only returned to the pool after successful use,
+     * as one which has failed may be in an inconsistent state.
+     */
+    private static final BlockingQueue<Marshaller> marshallers = new ArrayBlockingQueue<>(MAX_POOLED);
+    private static final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(MAX_POOLED);
+    private static final ThreadLocal<ReusableBuffer> buffers = ThreadLocal.withInitial(ReusableBuffer::new);
+
     private static JAXBContext initContext(Class<?>... clazz) {
         try {
             return JAXBContext.newInstance(clazz);
@@ -46,17 +72,110 @@ public class JAXBContextUtils {
 
     public static void marshal(JAXBContext context, Object objectToMarshall, OutputStream outputStream){
         try {
-            context.createMarshaller().marshal(objectToMarshall, outputStream);
+            Marshaller marshaller = marshaller(context);
+            marshaller.marshal(objectToMarshall, outputStream);
+            reuse(context, marshaller);
         } catch (JAXBException e) {
             throw new RuntimeException("Failed when trying to marshal object to outputstream. Cause: " + exceptionNameAndMessage(e), e);
         }
     }
 
+    /**
+     * Marshal an object to a byte array, using a buffer which is reused by the current thread.
+     */
+    public static byte[] marshalToBytes(JAXBContext context, Object objectToMarshall) {
+        ReusableBuffer buffer = buffers.get();
+        if (buffer.inUse) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            marshal(context, objectToMarshall, bytes);
+            return bytes.toByteArray();
+        }
+        buffer.inUse = true;
+        try {
+            marshal(context, objectToMarshall, buffer);
+            return buffer.toByteArray();
+        } finally {
+            buffer.release();
+        }
+    }
+
     public static <T> T unmarshal(JAXBContext context, InputStream inputStream, Class<T> type){
         try {
-            return type.cast(context.createUnmarshaller().unmarshal(inputStream));
+            Unmarshaller unmarshaller = unmarshaller(context);
+            T unmarshalled = type.cast(unmarshaller.unmarshal(inputStream));
+            reuse(context, unmarshaller);
+            return unmarshalled;
         } catch (JAXBException e) {
             throw new RuntimeException("Failed when trying to unmarshal inputstream to object. Cause: " + exceptionNameAndMessage(e), e);
         }
     }
+
+    /**
+     * Unmarshal the element at the current position of a reader. The reader is left at the token
+     * right after the end of the element, so that the rest of the document can be read.
+     */
+    public static <T> T unmarshal(JAXBContext context, XMLStreamReader reader, Class<T> declaredType) {
+        try {
+            Unmarshaller unmarshaller = unmarshaller(context);
+            T unmarshalled = unmarshaller.unmarshal(reader, declaredType).getValue();
+            reuse(context, unmarshaller);
+            return unmarshalled;
+        } catch (JAXBException e) {
+            throw new RuntimeException("Failed when trying to unmarshal " + declaredType.getSimpleName() + " from XML stream. Cause: " + exceptionNameAndMessage(e), e);
+        }
+    }
+
+    /**
+     * Unmarshal an element as the given type, which makes it possible to read elements of types which
+     * are not root elements, such as one marshalled as a {@link javax.xml.bind.JAXBElement} of the type.
+     */
+    public static <T> T unmarshal(JAXBContext context, Source source, Class<T> declaredType) {
+        try {
+            Unmarshaller unmarshaller = unmarshaller(context);
+            T unmarshalled = unmarshaller.unmarshal(source, declaredType).getValue();
+            reuse(context, unmarshaller);
+            return unmarshalled;
+        } catch (JAXBException e) {
+            throw new RuntimeException("Failed when trying to unmarshal " + declaredType.getSimpleName() + " from XML source. Cause: " + exceptionNameAndMessage(e), e);
+        }
+    }
+
+    private static Marshaller marshaller(JAXBContext context) throws JAXBException {
+        Marshaller pooled = context == jaxbContext ? marshallers.poll() : null;
+        return pooled != null ? pooled : context.createMarshaller();
+    }
+
+    private static Unmarshaller unmarshaller(JAXBContext context) throws JAXBException {
+        Unmarshaller pooled = context == jaxbContext ? unmarshallers.poll() : null;
+        return pooled != null ? pooled : context.createUnmarshaller();
+    }
+
+    private static void reuse(JAXBContext context, Marshaller marshaller) {
+        if (context == jaxbContext) {
+            marshallers.offer(marshaller);
+        }
+    }
+
+    private static void reuse(JAXBContext context, Unmarshaller unmarshaller) {
+        if (context == jaxbContext) {
+            unmarshallers.offer(unmarshaller);
+        }
+    }
+
+
+    private static final class ReusableBuffer extends ByteArrayOutputStream {
+        boolean inUse;
+
+        ReusableBuffer() {
+            super(8 * 1024);
+        }
+
+        void release() {
+            inUse = false;
+            if (buf.length > MAX_REUSED_BUFFER_SIZE) {
+                buf = new byte[8 * 1024];
+            }
+            reset();
+        }
+    }
 }
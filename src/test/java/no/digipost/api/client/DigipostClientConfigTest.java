@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static no.digipost.api.client.DigipostClientConfig.DEFAULT_ASYNC_QUEUE_PER_THREAD;
+import static no.digipost.api.client.DigipostClientConfig.newConfiguration;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class DigipostClientConfigTest {
+
+    @Test
+    public void each_client_gets_its_own_default_async_executor() {
+        DigipostClientConfig config = newConfiguration().build();
+        assertThat(config.forNewClient().asyncExecutor, not(sameInstance(config.forNewClient().asyncExecutor)));
+    }
+
+    @Test
+    public void given_async_executor_is_used_by_all_clients() {
+        Executor executor = Runnable::run;
+        DigipostClientConfig config = newConfiguration().asyncExecutor(executor).build();
+        assertThat(config.forNewClient(), sameInstance(config));
+        assertThat(config.asyncExecutor, sameInstance(executor));
+    }
+
+    @Test
+    public void default_async_executor_runs_operations_on_submitting_thread_when_queue_is_full() throws InterruptedException {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) newConfiguration().build().forNewClient().asyncExecutor;
+        int capacity = executor.getMaximumPoolSize() * (1 + DEFAULT_ASYNC_QUEUE_PER_THREAD);
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < capacity; i++) {
+                executor.execute(() -> {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            Thread[] ranOn = new Thread[1];
+            executor.execute(() -> ranOn[0] = Thread.currentThread());
+            assertThat(ranOn[0], is(Thread.currentThread()));
+        } finally {
+            blocked.countDown();
+            executor.shutdown();
+            executor.awaitTermination(5, SECONDS);
+        }
+    }
+}
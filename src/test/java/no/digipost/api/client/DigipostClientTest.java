@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client;
+
+import no.digipost.api.client.delivery.MessageDeliveryApi;
+import no.digipost.api.client.document.DocumentApi;
+import no.digipost.api.client.document.DocumentStatusResult;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.inbox.InboxApi;
+import no.digipost.api.client.representations.DocumentStatus;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static no.digipost.api.client.errorhandling.ErrorCode.DOCUMENT_NOT_FOUND;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DigipostClientTest {
+
+    private final SenderId sender = SenderId.of(1234);
+    private final DocumentApi documentApi = mock(DocumentApi.class);
+    private final InboxApi inboxApi = mock(InboxApi.class);
+    private final DigipostClient client = new DigipostClient(
+            DigipostClientConfig.newConfiguration().build(), mock(MessageDeliveryApi.class), inboxApi, documentApi);
+
+    @Test
+    public void gets_status_of_many_documents_and_reports_failure_per_document() {
+        List<UUID> uuids = IntStream.range(0, 50).mapToObj(i -> new UUID(0, i)).collect(toList());
+        UUID missing = uuids.get(17);
+        DocumentStatus status = new DocumentStatus();
+        when(documentApi.getDocumentStatus(eq(sender), any(UUID.class))).thenReturn(status);
+        when(documentApi.getDocumentStatus(sender, missing)).thenThrow(new DigipostClientException(DOCUMENT_NOT_FOUND, "not found"));
+
+        Map<UUID, DocumentStatusResult> results;
+        try (Stream<DocumentStatusResult> statuses = client.getDocumentStatuses(sender, uuids, 4)) {
+            results = statuses.collect(toMap(result -> result.uuid, identity()));
+        }
+
+        assertThat(results.size(), is(50));
+        assertThat(results.get(missing).isSuccess(), is(false));
+        assertThat(results.get(missing).getError().get().getErrorCode(), is(DOCUMENT_NOT_FOUND));
+        assertThat(results.get(uuids.get(0)).getStatus().get(), sameInstance(status));
+        assertThat(results.values().stream().filter(DocumentStatusResult::isSuccess).count(), is(49L));
+    }
+
+    @Test
+    public void streams_all_documents_in_inbox_across_pages() {
+        List<InboxDocument> inbox = IntStream.range(0, 25).mapToObj(i -> new InboxDocument()).collect(toList());
+        when(inboxApi.getInbox(eq(sender), anyInt(), anyInt(), any())).thenAnswer(invocation -> {
+            int offset = invocation.getArgument(1);
+            int limit = invocation.getArgument(2);
+            Consumer<InboxDocument> documentConsumer = invocation.getArgument(3);
+            List<InboxDocument> page = inbox.subList(Math.min(offset, inbox.size()), Math.min(offset + limit, inbox.size()));
+            page.forEach(documentConsumer);
+            return page.size();
+        });
+
+        try (Stream<InboxDocument> documents = client.streamInbox(sender, 10, 1)) {
+            assertThat(documents.collect(toList()), is(inbox));
+        }
+    }
+}
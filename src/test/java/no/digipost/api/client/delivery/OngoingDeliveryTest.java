@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.delivery;
+
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.MessageDelivery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static no.digipost.api.client.representations.FileType.PDF;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class OngoingDeliveryTest {
+
+    private final Document document = new Document(UUID.randomUUID(), "subject", PDF);
+    private final StreamOnlyDelivery delivery = new StreamOnlyDelivery();
+    private Path file;
+
+    @BeforeEach
+    public void writeFile() throws IOException {
+        file = Files.createTempFile("ongoing-delivery", ".pdf");
+        Files.write(file, "file content".getBytes(UTF_8));
+    }
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void addingFileByDefaultAddsTheContentOfTheFile() {
+        delivery.addContent(document, file);
+
+        assertThat(delivery.contents.get(document), is("file content"));
+    }
+
+    @Test
+    public void addingChannelByDefaultAddsTheContentOfTheChannelWithoutClosingIt() throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            delivery.addContent(document, channel);
+
+            assertThat(delivery.contents.get(document), is("file content"));
+            assertThat(channel.isOpen(), is(true));
+        }
+    }
+
+    @Test
+    public void sendingAsyncByDefaultGivesTheResultOfSend() {
+        assertThat(delivery.sendAsync().join(), sameInstance(delivery.delivery));
+    }
+
+
+    private static final class StreamOnlyDelivery implements OngoingDelivery.SendableForPrintOnly {
+
+        final Map<Document, String> contents = new LinkedHashMap<>();
+        final MessageDelivery delivery = new MessageDelivery();
+
+        @Override
+        public SendableForPrintOnly addContent(Document document, InputStream content) {
+            try (InputStream stream = content) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+                    bytes.write(buffer, 0, read);
+                }
+                contents.put(document, new String(bytes.toByteArray(), UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        @Override
+        public MessageDelivery send() {
+            return delivery;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.representations.Channel;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
+import no.digipost.api.client.representations.MessageDelivery;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static no.digipost.api.client.representations.Channel.DIGIPOST;
+import static no.digipost.api.client.representations.Channel.PRINT;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.DocumentEventType.POSTMARKED;
+import static no.digipost.api.client.representations.DocumentEventType.PRINT_FAILED;
+import static no.digipost.api.client.representations.DocumentEventType.SMS_NOTIFICATION_FAILED;
+import static no.digipost.api.client.representations.FileType.PDF;
+import static no.digipost.api.client.representations.MessageStatus.DELIVERED;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class DeliveryStatusTrackerTest {
+
+    private static final ZonedDateTime DELIVERED_AT = ZonedDateTime.of(2018, 12, 4, 10, 15, 30, 0, ZoneId.of("UTC"));
+
+    private final DeliveryStatusTracker tracker = new DeliveryStatusTracker();
+
+    @Test
+    public void records_all_documents_of_a_delivery() {
+        UUID primary = UUID.randomUUID();
+        UUID attachment = UUID.randomUUID();
+        tracker.record(delivery(DIGIPOST, DELIVERED_AT, primary, attachment));
+
+        assertThat(tracker.size(), is(2));
+        TrackedDocument tracked = tracker.get(attachment).get();
+        assertThat(tracked.getChannel().get(), is(DIGIPOST));
+        assertThat(tracked.getDeliveryTime().get(), is(DELIVERED_AT.toInstant()));
+        assertThat(tracked.getEvents(), empty());
+        assertThat(tracker.get(UUID.randomUUID()).isPresent(), is(false));
+    }
+
+    @Test
+    public void applies_events_to_documents() {
+        UUID uuid = UUID.randomUUID();
+        tracker.record(delivery(PRINT, DELIVERED_AT, uuid));
+
+        assertThat(tracker.apply(event(uuid, POSTMARKED)), is(true));
+        assertThat(tracker.apply(event(uuid, POSTMARKED)), is(false));
+        assertThat(tracker.apply(event(uuid, PRINT_FAILED)), is(true));
+
+        TrackedDocument tracked = tracker.get(uuid).get();
+        assertThat(tracked.getEvents(), containsInAnyOrder(POSTMARKED, PRINT_FAILED));
+        assertThat(tracked.getChannel().get(), is(PRINT));
+    }
+
+    @Test
+    public void documents_only_known_from_events_are_tracked_with_created_time() {
+        UUID uuid = UUID.randomUUID();
+        tracker.apply(event(uuid, OPENED));
+
+        TrackedDocument tracked = tracker.get(uuid).get();
+        assertThat(tracked.isOpened(), is(true));
+        assertThat(tracked.getChannel().isPresent(), is(false));
+        assertThat(tracked.getDeliveryTime().get(), is(DELIVERED_AT.toInstant()));
+
+        tracker.record(delivery(DIGIPOST, DELIVERED_AT.plusMinutes(1), uuid));
+        tracked = tracker.get(uuid).get();
+        assertThat("events applied before the delivery is recorded are kept", tracked.isOpened(), is(true));
+        assertThat(tracked.getChannel().get(), is(DIGIPOST));
+        assertThat(tracked.getDeliveryTime().get(), is(DELIVERED_AT.plusMinutes(1).toInstant()));
+    }
+
+    @Test
+    public void finds_digital_documents_unopened_after_given_time() {
+        UUID oldUnopened = UUID.randomUUID();
+        UUID oldOpened = UUID.randomUUID();
+        UUID oldPrinted = UUID.randomUUID();
+        UUID recentUnopened = UUID.randomUUID();
+        tracker.record(delivery(DIGIPOST, DELIVERED_AT, oldUnopened, oldOpened));
+        tracker.record(delivery(PRINT, DELIVERED_AT, oldPrinted));
+        tracker.record(delivery(DIGIPOST, DELIVERED_AT.plusDays(10), recentUnopened));
+        tracker.apply(event(oldOpened, OPENED));
+
+        List<UUID> unopened = new ArrayList<>();
+        tracker.forEachUnopened(DELIVERED_AT.plusDays(7).toInstant(), unopened::add);
+        assertThat(unopened, contains(oldUnopened));
+    }
+
+    @Test
+    public void documents_only_known_from_events_are_not_unopened_when_events_show_they_are_printed() {
+        UUID postmarked = UUID.randomUUID();
+        UUID printFailed = UUID.randomUUID();
+        UUID unknownChannel = UUID.randomUUID();
+        tracker.apply(event(postmarked, POSTMARKED));
+        tracker.apply(event(printFailed, PRINT_FAILED));
+        tracker.apply(event(unknownChannel, SMS_NOTIFICATION_FAILED));
+
+        assertThat(tracker.get(postmarked).get().getChannel().get(), is(PRINT));
+        assertThat(tracker.get(unknownChannel).get().getChannel().isPresent(), is(false));
+        List<UUID> unopened = new ArrayList<>();
+        tracker.forEachUnopened(DELIVERED_AT.plusDays(7).toInstant(), unopened::add);
+        assertThat(unopened, contains(unknownChannel));
+
+        tracker.record(delivery(null, DELIVERED_AT, postmarked));
+        assertThat("channel inferred from events is kept when the delivery has none", tracker.get(postmarked).get().getChannel().get(), is(PRINT));
+    }
+
+    @Test
+    public void finds_and_counts_documents_with_given_event() {
+        UUID failed1 = UUID.randomUUID();
+        UUID failed2 = UUID.randomUUID();
+        tracker.record(delivery(PRINT, DELIVERED_AT, failed1, failed2, UUID.randomUUID()));
+        tracker.apply(event(failed1, PRINT_FAILED));
+        tracker.apply(event(failed2, PRINT_FAILED));
+
+        List<UUID> failed = new ArrayList<>();
+        tracker.forEachWithEvent(PRINT_FAILED, failed::add);
+        assertThat(failed, containsInAnyOrder(failed1, failed2));
+        assertThat(tracker.countWithEvent(PRINT_FAILED), is(2L));
+        assertThat(tracker.countWithEvent(OPENED), is(0L));
+    }
+
+
+    private static DocumentEvent event(UUID uuid, DocumentEventType type) {
+        return new DocumentEvent(uuid, type, DELIVERED_AT.plusDays(1), DELIVERED_AT);
+    }
+
+    private static MessageDelivery delivery(Channel channel, ZonedDateTime deliveryTime, UUID primaryUuid, UUID ... attachmentUuids) {
+        Document primary = new Document(primaryUuid, "primary", PDF);
+        List<Document> attached = Stream.of(attachmentUuids).map(uuid -> new Document(uuid, "attachment", PDF)).collect(toList());
+        return new MessageDelivery("message", channel, DELIVERED, deliveryTime) {{
+            primaryDocument = primary;
+            attachments = attached;
+        }};
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.FailedPrintMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.DocumentEventType.POSTMARKED;
+import static no.digipost.api.client.representations.DocumentEventType.PRINT_FAILED;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DocumentEventArchiveTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final ZonedDateTime START = ZonedDateTime.of(2018, 12, 4, 10, 15, 30, 123_000_000, UTC);
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("document-event-archive-test");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void reads_events_as_they_were_written() {
+        UUID uuid = UUID.randomUUID();
+        DocumentEvent withMetadata = new DocumentEvent(uuid, PRINT_FAILED, START.plusSeconds(1), START, new FailedPrintMetadata("INVALID_ADDRESS"));
+        try (DocumentEventArchiveWriter writer = DocumentEventArchiveWriter.open(directory)) {
+            writer.append(new DocumentEvent(uuid, POSTMARKED, START, START));
+            writer.append(withMetadata);
+            writer.append(new DocumentEvent(UUID.randomUUID(), null, START.plusSeconds(2), START));
+        }
+
+        try (DocumentEventArchive archive = DocumentEventArchive.open(directory, UTC)) {
+            assertThat(archive.size(), is(3L));
+            DocumentEvent first = archive.get(0);
+            assertThat(first.getUuid(), is(uuid));
+            assertThat(first.getType(), is(POSTMARKED));
+            assertThat(first.getCreated(), is(START));
+            assertThat(first.getDocumentCreated(), is(START));
+            assertThat(first.getMetadata(), nullValue());
+
+            DocumentEvent second = archive.get(1);
+            assertThat(second.getType(), is(PRINT_FAILED));
+            assertThat(second.getMetadata(), instanceOf(FailedPrintMetadata.class));
+            assertThat(((FailedPrintMetadata) second.getMetadata()).errorCode, is("INVALID_ADDRESS"));
+
+            assertThat(archive.get(2).getType(), nullValue());
+        }
+    }
+
+    @Test
+    public void stores_only_the_metadata_of_events_in_the_metadata_file() throws IOException {
+        UUID uuid = UUID.randomUUID();
+        try (DocumentEventArchiveWriter writer = DocumentEventArchiveWriter.open(directory)) {
+            writer.append(new DocumentEvent(uuid, PRINT_FAILED, START, START, new FailedPrintMetadata("INVALID_ADDRESS")));
+        }
+
+        String metadataFile = new String(Files.readAllBytes(directory.resolve(DocumentEventArchive.METADATA_FILE)), UTF_8);
+        assertThat(metadataFile, containsString("INVALID_ADDRESS"));
+        assertThat(metadataFile, not(containsString(uuid.toString())));
+    }
+
+    @Test
+    public void scans_and_counts_events_by_created_and_type() {
+        writeEvents(0, 1000);
+        try (DocumentEventArchive archive = DocumentEventArchive.open(directory, UTC)) {
+            List<DocumentEvent> opened = new ArrayList<>();
+            archive.scan(START.plusMinutes(100).toInstant(), START.plusMinutes(110).toInstant(), EnumSet.of(OPENED)::contains, opened::add);
+
+            assertThat(opened.stream().map(DocumentEventArchiveTest::number).collect(toList()), contains(100, 102, 104, 106, 108));
+            assertThat(archive.count(START.toInstant(), START.plusMinutes(1000).toInstant(), type -> true), is(1000L));
+            assertThat(archive.count(START.toInstant(), START.plusMinutes(1000).toInstant(), EnumSet.of(POSTMARKED)::contains), is(500L));
+        }
+    }
+
+    @Test
+    public void finds_all_events_of_a_document() {
+        UUID document = UUID.randomUUID();
+        try (DocumentEventArchiveWriter writer = DocumentEventArchiveWriter.open(directory)) {
+            writer.append(new DocumentEvent(document, POSTMARKED, START, START));
+            IntStream.range(0, 100).forEach(i -> writer.append(new DocumentEvent(UUID.randomUUID(), OPENED, START, START)));
+            writer.append(new DocumentEvent(document, OPENED, START.plusDays(1), START));
+        }
+        try (DocumentEventArchive archive = DocumentEventArchive.open(directory, UTC)) {
+            assertThat(archive.findByUuid(document).stream().map(DocumentEvent::getType).collect(toList()), contains(POSTMARKED, OPENED));
+            assertThat(archive.findByUuid(UUID.randomUUID()).isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void appends_to_existing_archive() {
+        writeEvents(0, 10_000);
+        writeEvents(10_000, 10_005);
+        try (DocumentEventArchive archive = DocumentEventArchive.open(directory, UTC)) {
+            assertThat(archive.size(), is(10_005L));
+            assertThat(number(archive.get(10_004)), is(10_004));
+        }
+    }
+
+    @Test
+    public void incompletely_written_events_are_ignored_and_overwritten() throws IOException {
+        writeEvents(0, 5);
+        Files.write(directory.resolve("uuid-msb.col"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9}, StandardOpenOption.APPEND);
+        try (DocumentEventArchive archive = DocumentEventArchive.open(directory, UTC)) {
+            assertThat(archive.size(), is(5L));
+        }
+
+        writeEvents(5, 6);
+        try (DocumentEventArchive archive = DocumentEventArchive.open(directory, UTC)) {
+            assertThat(archive.size(), is(6L));
+            assertThat(number(archive.get(5)), is(5));
+        }
+    }
+
+    @Test
+    public void empty_archive() {
+        try (DocumentEventArchive archive = DocumentEventArchive.open(directory, UTC)) {
+            assertThat(archive.size(), is(0L));
+            assertThat(archive.count(START.toInstant(), START.plusDays(1).toInstant(), type -> true), is(0L));
+        }
+    }
+
+
+    private void writeEvents(int fromInclusive, int toExclusive) {
+        try (DocumentEventArchiveWriter writer = DocumentEventArchiveWriter.open(directory)) {
+            IntStream.range(fromInclusive, toExclusive)
+                    .mapToObj(i -> new DocumentEvent(new UUID(0, i), i % 2 == 0 ? OPENED : POSTMARKED, START.plusMinutes(i), START))
+                    .forEach(writer::append);
+        }
+    }
+
+    private static int number(DocumentEvent event) {
+        return (int) event.getUuid().getLeastSignificantBits();
+    }
+}
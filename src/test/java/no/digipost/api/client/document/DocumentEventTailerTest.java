@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.document;
+
+import no.digipost.api.client.SenderId;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
+import no.digipost.api.client.representations.DocumentEvents;
+import no.digipost.api.client.representations.DocumentStatus;
+import no.digipost.api.client.representations.Link;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.DocumentEventType.PRINT_FAILED;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DocumentEventTailerTest {
+
+    private static final ZonedDateTime START = ZonedDateTime.of(2018, 12, 4, 10, 0, 0, 0, ZoneId.of("UTC"));
+    private static final Clock CLOCK = Clock.fixed(START.plusDays(1).toInstant(), ZoneId.of("UTC"));
+
+    private final EventsApi api = new EventsApi();
+    private final List<Integer> delivered = new CopyOnWriteArrayList<>();
+    private Path directory;
+    private Path cursorFile;
+
+    @BeforeEach
+    public void createCursorDirectory() throws IOException {
+        directory = Files.createTempDirectory("document-event-tailer-test");
+        cursorFile = directory.resolve("events.cursor");
+    }
+
+    @AfterEach
+    public void deleteCursorDirectory() throws IOException {
+        Files.deleteIfExists(cursorFile);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void delivers_all_new_events_and_moves_window_to_latest_event() {
+        api.addEvents(0, 25);
+        DocumentEventTailer tailer = newTailer().build();
+
+        assertThat(tailer.poll(this::deliver), is(25));
+        assertThat(delivered, is(range(0, 25)));
+        assertThat(api.requestedOffsets, contains(0, 10, 20));
+        assertThat(tailer.cursorFrom(), is(created(24)));
+        assertThat(tailer.cursorOffset(), is(0));
+    }
+
+    @Test
+    public void continues_from_saved_cursor_after_restart() {
+        api.addEvents(0, 15);
+        newTailer().build().poll(this::deliver);
+        api.addEvents(15, 20);
+        delivered.clear();
+
+        newTailer().build().poll(this::deliver);
+        assertThat("the latest event before the restart is delivered again", delivered, is(range(14, 20)));
+    }
+
+    @Test
+    public void skips_events_seen_in_overlapping_window() {
+        api.addEvents(0, 20);
+        DocumentEventTailer tailer = newTailer().overlap(Duration.ofSeconds(10)).build();
+        tailer.poll(this::deliver);
+        assertThat(tailer.cursorFrom(), is(created(9)));
+
+        api.addEvents(20, 25);
+        delivered.clear();
+        assertThat(tailer.poll(this::deliver), is(5));
+        assertThat(delivered, is(range(20, 25)));
+    }
+
+    @Test
+    public void moves_window_to_latest_event_of_any_type_when_only_some_types_are_wanted() {
+        IntFunction<DocumentEventType> everyTenthFailed = i -> i % 10 == 3 ? PRINT_FAILED : OPENED;
+        api.addEvents(0, 25, everyTenthFailed);
+        DocumentEventTailer tailer = newTailer().types(PRINT_FAILED::equals).build();
+
+        assertThat(tailer.poll(this::deliver), is(3));
+        assertThat(tailer.cursorFrom(), is(created(24)));
+
+        api.addEvents(25, 40, everyTenthFailed);
+        api.requestedOffsets.clear();
+        assertThat(tailer.poll(this::deliver), is(1));
+        assertThat(tailer.cursorFrom(), is(created(39)));
+        assertThat(api.requestedOffsets, contains(0, 10));
+
+        api.requestedOffsets.clear();
+        assertThat(tailer.poll(this::deliver), is(0));
+        assertThat(tailer.cursorFrom(), is(created(39)));
+        assertThat(api.requestedOffsets, contains(0));
+        assertThat(delivered, contains(3, 13, 23, 33));
+    }
+
+    @Test
+    public void page_is_fetched_again_when_listener_fails() {
+        api.addEvents(0, 10);
+        DocumentEventTailer tailer = newTailer().pageSize(5).build();
+        assertThrows(IllegalStateException.class, () -> tailer.poll(event -> {
+            if (number(event) == 7) {
+                throw new IllegalStateException("failed to handle event 7");
+            }
+            deliver(event);
+        }));
+        assertThat(delivered, is(range(0, 7)));
+        assertThat(tailer.cursorOffset(), is(5));
+
+        tailer.poll(this::deliver);
+        assertThat(delivered, is(range(0, 10)));
+    }
+
+    @Test
+    public void page_size_can_not_exceed_what_digipost_gives_in_one_page() {
+        assertThrows(IllegalArgumentException.class, () -> newTailer().pageSize(DocumentEventsOptions.MAX_PAGE_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> DocumentEventsOptions.newDocumentEventsOptions().pageSize(DocumentEventsOptions.MAX_PAGE_SIZE + 1));
+        newTailer().pageSize(DocumentEventsOptions.MAX_PAGE_SIZE);
+    }
+
+    @Test
+    public void starts_from_given_time_when_there_is_no_saved_cursor() {
+        api.addEvents(0, 10);
+        newTailer().startFrom(created(6)).build().poll(this::deliver);
+        assertThat(delivered, is(range(6, 10)));
+    }
+
+    @Test
+    public void poll_interval_doubles_while_there_are_no_new_events() {
+        DocumentEventTailer tailer = newTailer().minPollInterval(Duration.ofSeconds(1)).maxPollInterval(Duration.ofSeconds(5)).build();
+
+        assertThat(tailer.nextPollInterval(0), is(Duration.ofSeconds(2)));
+        assertThat(tailer.nextPollInterval(0), is(Duration.ofSeconds(4)));
+        assertThat(tailer.nextPollInterval(0), is(Duration.ofSeconds(5)));
+        assertThat(tailer.nextPollInterval(0), is(Duration.ofSeconds(5)));
+        assertThat(tailer.nextPollInterval(3), is(Duration.ofSeconds(1)));
+    }
+
+    @Test
+    public void polls_in_background_until_closed() throws InterruptedException {
+        api.addEvents(0, 3);
+        CountDownLatch allDelivered = new CountDownLatch(5);
+        try (DocumentEventTailer tailer = newTailer().minPollInterval(Duration.ZERO).maxPollInterval(Duration.ofMillis(10)).build()) {
+            tailer.start(event -> {
+                deliver(event);
+                allDelivered.countDown();
+            });
+            api.addEvents(3, 5);
+            assertThat(allDelivered.await(5, SECONDS), is(true));
+        }
+        assertThat(delivered, is(range(0, 5)));
+    }
+
+
+    private DocumentEventTailer.Builder newTailer() {
+        return DocumentEventTailer.newDocumentEventTailer(api, cursorFile).startFrom(START).pageSize(10).clock(CLOCK);
+    }
+
+    private void deliver(DocumentEvent event) {
+        delivered.add(number(event));
+    }
+
+    private static int number(DocumentEvent event) {
+        return (int) event.getUuid().getLeastSignificantBits();
+    }
+
+    private static ZonedDateTime created(int number) {
+        return START.plusSeconds(number);
+    }
+
+    private static List<Integer> range(int fromInclusive, int toExclusive) {
+        return IntStream.range(fromInclusive, toExclusive).boxed().collect(toList());
+    }
+
+
+    private static final class EventsApi implements DocumentApi {
+
+        final List<DocumentEvent> events = new CopyOnWriteArrayList<>();
+        final List<Integer> requestedOffsets = new CopyOnWriteArrayList<>();
+
+        void addEvents(int fromInclusive, int toExclusive) {
+            addEvents(fromInclusive, toExclusive, i -> OPENED);
+        }
+
+        void addEvents(int fromInclusive, int toExclusive, IntFunction<DocumentEventType> type) {
+            IntStream.range(fromInclusive, toExclusive)
+                    .mapToObj(i -> new DocumentEvent(new UUID(0, i), type.apply(i), created(i), START))
+                    .forEach(events::add);
+        }
+
+        @Override
+        public DocumentEvents getDocumentEvents(String organisation, String partId, ZonedDateTime from, ZonedDateTime to, int offset, int maxResults) {
+            requestedOffsets.add(offset);
+            return new DocumentEvents(events.stream()
+                    .filter(event -> !event.getCreated().isBefore(from) && !event.getCreated().isAfter(to))
+                    .skip(offset).limit(maxResults)
+                    .collect(toList()));
+        }
+
+        @Override
+        public DocumentStatus getDocumentStatus(SenderId senderId, UUID uuid) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DocumentStatus getDocumentStatus(Link linkToDocumentStatus) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputStream getDocumentContent(String path) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
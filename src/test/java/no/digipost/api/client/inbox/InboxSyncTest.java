@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.inbox;
+
+import no.digipost.api.client.SenderId;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static no.digipost.api.client.errorhandling.ErrorCode.GENERAL_ERROR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InboxSyncTest {
+
+    private final SenderId sender = SenderId.of(1234);
+    private final InboxApi inboxApi = mock(InboxApi.class);
+    private final List<InboxDocument> inbox = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Answer<Integer> listing = invocation -> {
+        int offset = invocation.getArgument(1);
+        int limit = invocation.getArgument(2);
+        Consumer<InboxDocument> documentConsumer = invocation.getArgument(3);
+        List<InboxDocument> page = new ArrayList<>(inbox).subList(Math.min(offset, inbox.size()), Math.min(offset + limit, inbox.size()));
+        page.forEach(documentConsumer);
+        return page.size();
+    };
+    private Path directory;
+    private Path processedIdsFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("inbox-sync-test");
+        processedIdsFile = directory.resolve("processed-ids");
+        when(inboxApi.getInbox(eq(sender), anyInt(), anyInt(), any())).thenAnswer(listing);
+        doAnswer(invocation -> {
+            if (!inbox.remove(invocation.<InboxDocument>getArgument(0))) {
+                throw new DigipostClientException(GENERAL_ERROR, "document not found");
+            }
+            return null;
+        }).when(inboxApi).deleteInboxDocument(any());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void processes_only_new_documents_also_after_restart() {
+        deliver(1, 2, 3);
+        List<Long> processed = new ArrayList<>();
+
+        InboxSyncResult first = newSync().build().sync(document -> processed.add(document.getId()));
+        deliver(4, 5);
+        InboxSyncResult second = newSync().build().sync(document -> processed.add(document.getId()));
+
+        assertThat(processed, contains(1L, 2L, 3L, 4L, 5L));
+        assertThat(first.processed, is(3));
+        assertThat(second.listed, is(5));
+        assertThat(second.processed, is(2));
+    }
+
+    @Test
+    public void keeps_only_ids_of_documents_still_in_the_inbox() {
+        deliver(1, 2, 3, 4);
+        InboxSync sync = newSync().build();
+        sync.sync(document -> {});
+
+        inbox.remove(0);
+        inbox.remove(0);
+        sync.sync(document -> {});
+
+        assertThat(sync.size(), is(2));
+        assertThat(newSync().build().size(), is(2));
+    }
+
+    @Test
+    public void deletes_processed_documents_after_listing_the_whole_inbox() {
+        deliver(LongStream.rangeClosed(1, 25).toArray());
+        List<Long> processed = new ArrayList<>();
+
+        InboxSyncResult result = newSync().deleteAfterProcessing(true).build().sync(document -> processed.add(document.getId()));
+
+        assertThat(processed, is(LongStream.rangeClosed(1, 25).boxed().collect(toList())));
+        assertThat(result.deleted, is(25));
+        assertThat(inbox, empty());
+    }
+
+    @Test
+    public void documents_listed_again_because_of_new_documents_are_only_processed_and_deleted_once() {
+        deliver(LongStream.rangeClosed(1, 15).toArray());
+        newSync().build().sync(document -> {});
+        deliver(LongStream.rangeClosed(16, 25).toArray());
+        Answer<?> listInbox = invocation -> {
+            if (invocation.<Integer>getArgument(1) == 20 && inbox.size() == 25) {
+                // shifts the documents of the third page, so documents 19 and 20 are listed again
+                deliverFirst(100, 101);
+            }
+            return listing.answer(invocation);
+        };
+        when(inboxApi.getInbox(eq(sender), anyInt(), anyInt(), any())).thenAnswer(listInbox);
+        List<Long> processed = new ArrayList<>();
+
+        InboxSyncResult result = newSync().executor(Runnable::run).deleteAfterProcessing(true).build().sync(document -> processed.add(document.getId()));
+
+        assertThat(processed, is(LongStream.rangeClosed(16, 25).boxed().collect(toList())));
+        assertThat(result.listed, is(25));
+        assertThat(result.deleted, is(25));
+        assertThat(result.failedDeletes, is(0));
+        assertThat(inbox.stream().map(InboxDocument::getId).collect(toList()), contains(100L, 101L));
+    }
+
+    @Test
+    public void deletes_documents_which_failed_to_be_deleted_in_the_next_sync_without_processing_them_again() {
+        deliver(1, 2, 3);
+        InboxDocument undeletable = inbox.get(1);
+        doAnswer(invocation -> {
+            throw new DigipostClientException(GENERAL_ERROR, "unavailable");
+        }).when(inboxApi).deleteInboxDocument(undeletable);
+        InboxSync sync = newSync().deleteAfterProcessing(true).build();
+        List<Long> processed = new ArrayList<>();
+
+        InboxSyncResult first = sync.sync(document -> processed.add(document.getId()));
+        doAnswer(invocation -> inbox.remove(undeletable)).when(inboxApi).deleteInboxDocument(undeletable);
+        InboxSyncResult second = sync.sync(document -> processed.add(document.getId()));
+
+        assertThat(first.deleted, is(2));
+        assertThat(first.failedDeletes, is(1));
+        assertThat(second.processed, is(0));
+        assertThat(second.deleted, is(1));
+        assertThat(processed, contains(1L, 2L, 3L));
+        assertThat(inbox, empty());
+    }
+
+    @Test
+    public void stores_processed_ids_when_processing_fails() {
+        deliver(LongStream.rangeClosed(1, 10).toArray());
+        List<Long> processed = new ArrayList<>();
+
+        assertThrows(IllegalStateException.class, () -> newSync().build().sync(document -> {
+            if (document.getId() == 7) {
+                throw new IllegalStateException("processing failed");
+            }
+            processed.add(document.getId());
+        }));
+        InboxSyncResult result = newSync().build().sync(document -> processed.add(document.getId()));
+
+        assertThat(processed, is(LongStream.rangeClosed(1, 10).boxed().collect(toList())));
+        assertThat(result.processed, is(4));
+    }
+
+
+    @Test
+    public void appends_only_newly_processed_ids_while_syncing_and_compacts_when_sync_completes() throws IOException {
+        deliver(LongStream.rangeClosed(1, 25).toArray());
+        Path journal = directory.resolve("processed-ids.journal");
+
+        assertThrows(IllegalStateException.class, () -> newSync().build().sync(document -> {
+            if (document.getId() == 23) {
+                throw new IllegalStateException("processing failed");
+            }
+        }));
+        assertThat(Files.exists(processedIdsFile), is(false));
+        assertThat("2 pages and the 2 ids processed before failing", Files.size(journal), is(22L * Long.BYTES));
+
+        InboxSync sync = newSync().build();
+        assertThat(sync.size(), is(22));
+        InboxSyncResult result = sync.sync(document -> {});
+        assertThat(result.processed, is(3));
+        assertThat(Files.exists(journal), is(false));
+        assertThat(Files.size(processedIdsFile), is(25L * Long.BYTES));
+    }
+
+    private InboxSync.Builder newSync() {
+        return InboxSync.newInboxSync(inboxApi, sender, processedIdsFile).pageSize(10).executor(executor);
+    }
+
+    private void deliver(long ... ids) {
+        LongStream.of(ids).mapToObj(InboxSyncTest::document).forEach(inbox::add);
+    }
+
+    private void deliverFirst(long ... ids) {
+        inbox.addAll(0, LongStream.of(ids).mapToObj(InboxSyncTest::document).collect(toList()));
+    }
+
+    private static InboxDocument document(long documentId) {
+        return new InboxDocument() {{
+            id = documentId;
+        }};
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ConcurrentMapperTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("concurrent-mapper-test"));
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void maps_all_items() {
+        try (Stream<Integer> squares = ConcurrentMapper.stream(numbers(100), i -> i * i, 8, executor)) {
+            assertThat(squares.collect(toList()), containsInAnyOrder(IntStream.range(0, 100).map(i -> i * i).boxed().toArray()));
+        }
+    }
+
+    @Test
+    public void gives_results_in_the_order_they_are_completed() {
+        Function<Integer, Integer> slowFirst = i -> {
+            sleep(i == 0 ? 200 : 0);
+            return i;
+        };
+        try (Stream<Integer> results = ConcurrentMapper.stream(numbers(3), slowFirst, 3, executor)) {
+            List<Integer> completed = results.collect(toList());
+            assertThat(completed.get(2), is(0));
+        }
+    }
+
+    @Test
+    public void never_has_more_than_given_number_of_items_in_progress() {
+        AtomicInteger inProgress = new AtomicInteger();
+        AtomicInteger maxInProgress = new AtomicInteger();
+        Function<Integer, Integer> tracked = i -> {
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            sleep(2);
+            inProgress.decrementAndGet();
+            return i;
+        };
+        try (Stream<Integer> results = ConcurrentMapper.stream(numbers(200), tracked, 5, executor)) {
+            assertThat(results.count(), is(200L));
+        }
+        assertThat(maxInProgress.get(), lessThanOrEqualTo(5));
+    }
+
+    @Test
+    public void submits_items_as_results_are_consumed() {
+        AtomicInteger submitted = new AtomicInteger();
+        Iterator<Integer> items = IntStream.range(0, 10).peek(i -> submitted.incrementAndGet()).iterator();
+        ConcurrentMapper<Integer, Integer> mapper = new ConcurrentMapper<>(items, Function.identity(), 2, Runnable::run);
+
+        mapper.next();
+        assertThat(submitted.get(), is(2));
+        mapper.next();
+        assertThat(submitted.get(), is(3));
+        mapper.close();
+        assertThat(mapper.hasNext(), is(false));
+    }
+
+    @Test
+    public void exception_from_function_is_thrown_from_stream() {
+        Function<Integer, Integer> failing = i -> {
+            if (i == 42) {
+                throw new IllegalStateException("failed " + i);
+            }
+            return i;
+        };
+        try (Stream<Integer> results = ConcurrentMapper.stream(numbers(100), failing, 4, executor)) {
+            IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> results.collect(toList()));
+            assertThat(thrown.getMessage(), is("failed 42"));
+        }
+    }
+
+
+    private static Iterator<Integer> numbers(int count) {
+        return IntStream.range(0, count).iterator();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.DocumentEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static no.digipost.api.client.errorhandling.ErrorCode.GENERAL_ERROR;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DocumentEventsBackfillTest {
+
+    private static final ZonedDateTime START = ZonedDateTime.of(2018, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+    private static final ZonedDateTime END = START.plusHours(100);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8, new DaemonThreadFactory("backfill-test"));
+    private final List<ZonedDateTime> requestedSlices = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void gives_all_events_in_period_in_order_of_created() {
+        List<DocumentEvent> events = hourlyEvents(100);
+        try (Stream<DocumentEvent> backfilled = DocumentEventsBackfill.stream(windowsOf(events), START, END, Duration.ofHours(7), 3, 1, 4, executor)) {
+            assertThat(backfilled.map(DocumentEventsBackfillTest::hour).collect(toList()), is(hours(0, 100)));
+        }
+        assertThat(requestedSlices.size(), is(15));
+    }
+
+    @Test
+    public void events_returned_out_of_order_are_given_sorted_by_created() {
+        List<DocumentEvent> newestFirst = hourlyEvents(100);
+        Collections.reverse(newestFirst);
+        try (Stream<DocumentEvent> backfilled = DocumentEventsBackfill.stream(windowsOf(newestFirst), START, END, Duration.ofHours(7), 3, 1, 4, executor)) {
+            assertThat(backfilled.map(DocumentEventsBackfillTest::hour).collect(toList()), is(hours(0, 100)));
+        }
+    }
+
+    @Test
+    public void events_on_slice_boundary_are_only_given_once() {
+        List<DocumentEvent> events = hourlyEvents(10);
+        try (Stream<DocumentEvent> backfilled = DocumentEventsBackfill.stream(windowsOf(events), START, START.plusHours(10), Duration.ofHours(1), 10, 1, 2, executor)) {
+            assertThat(backfilled.map(DocumentEventsBackfillTest::hour).collect(toList()), is(hours(0, 10)));
+        }
+    }
+
+    @Test
+    public void fetches_no_more_slices_concurrently_than_allowed() {
+        AtomicInteger inProgress = new AtomicInteger();
+        AtomicInteger maxInProgress = new AtomicInteger();
+        DocumentEventsBackfill.SliceReader windows = windowsOf(hourlyEvents(100));
+        DocumentEventsBackfill.SliceReader slow = (from, to, offset, maxResults, eventConsumer) -> {
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+                return windows.read(from, to, offset, maxResults, eventConsumer);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                inProgress.decrementAndGet();
+            }
+        };
+        try (Stream<DocumentEvent> backfilled = DocumentEventsBackfill.stream(slow, START, END, Duration.ofHours(5), 2, 0, 3, executor)) {
+            assertThat(backfilled.count(), is(100L));
+        }
+        assertThat(maxInProgress.get(), lessThanOrEqualTo(3));
+    }
+
+    @Test
+    public void slices_ahead_only_fetch_their_first_pages_until_they_are_consumed() {
+        List<DocumentEvent> events = hourlyEvents(100);
+        AtomicInteger pagesFetched = new AtomicInteger();
+        DocumentEventsBackfill.SliceReader windows = windowsOf(events);
+        DocumentEventsBackfill.SliceReader counting = (from, to, offset, maxResults, eventConsumer) -> {
+            if (!from.equals(START)) {
+                pagesFetched.incrementAndGet();
+            }
+            return windows.read(from, to, offset, maxResults, eventConsumer);
+        };
+        try (Stream<DocumentEvent> backfilled = DocumentEventsBackfill.stream(counting, START, END, Duration.ofHours(50), 5, 1, 2, Runnable::run)) {
+            assertThat(backfilled.limit(1).count(), is(1L));
+        }
+        assertThat("the first page and 1 page ahead of the second slice", pagesFetched.get(), is(2));
+    }
+
+    @Test
+    public void does_not_fetch_more_slices_after_stream_is_closed() {
+        List<DocumentEvent> events = hourlyEvents(100);
+        try (Stream<DocumentEvent> backfilled = DocumentEventsBackfill.stream(windowsOf(events), START, END, Duration.ofHours(10), 100, 1, 2, Runnable::run)) {
+            assertThat(backfilled.limit(5).map(DocumentEventsBackfillTest::hour).collect(toList()), contains(0, 1, 2, 3, 4));
+        }
+        assertThat(requestedSlices, contains(START, START.plusHours(10)));
+    }
+
+    @Test
+    public void failure_fetching_a_slice_is_thrown_from_the_stream() {
+        DocumentEventsBackfill.SliceReader windows = windowsOf(hourlyEvents(100));
+        DocumentEventsBackfill.SliceReader failing = (from, to, offset, maxResults, eventConsumer) -> {
+            if (from.equals(START.plusHours(50))) {
+                throw new DigipostClientException(GENERAL_ERROR, "slice from " + from + " failed");
+            }
+            return windows.read(from, to, offset, maxResults, eventConsumer);
+        };
+        try (Stream<DocumentEvent> backfilled = DocumentEventsBackfill.stream(failing, START, END, Duration.ofHours(10), 10, 1, 4, executor)) {
+            DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> backfilled.collect(toList()));
+            assertThat(thrown.getMessage(), containsString("failed"));
+        }
+    }
+
+
+    /**
+     * Events in the window {@code [from, to]}, i.e. including events created at {@code to}.
+     */
+    private DocumentEventsBackfill.SliceReader windowsOf(List<DocumentEvent> events) {
+        return (from, to, offset, maxResults, eventConsumer) -> {
+            if (offset == 0) {
+                requestedSlices.add(from);
+            }
+            List<DocumentEvent> page = events.stream()
+                    .filter(event -> !event.getCreated().isBefore(from) && !event.getCreated().isAfter(to))
+                    .skip(offset).limit(maxResults)
+                    .collect(toList());
+            page.forEach(eventConsumer);
+            return page.size();
+        };
+    }
+
+    private static List<DocumentEvent> hourlyEvents(int hours) {
+        return IntStream.range(0, hours)
+                .mapToObj(i -> new DocumentEvent(new UUID(0, i), OPENED, START.plusHours(i), START))
+                .collect(toList());
+    }
+
+    private static int hour(DocumentEvent event) {
+        return (int) event.getUuid().getLeastSignificantBits();
+    }
+
+    private static List<Integer> hours(int fromInclusive, int toExclusive) {
+        return IntStream.range(fromInclusive, toExclusive).boxed().collect(toList());
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
+import no.digipost.api.client.representations.DocumentEvents;
+import no.digipost.api.client.representations.FailedPrintMetadata;
+import no.digipost.api.client.representations.PostmarkedMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.DocumentEventType.POSTMARKED;
+import static no.digipost.api.client.representations.DocumentEventType.PRINT_FAILED;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.marshalToBytes;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DocumentEventsReaderTest {
+
+    private static final ZonedDateTime CREATED = ZonedDateTime.of(2018, 12, 4, 10, 15, 30, 0, ZoneId.of("UTC"));
+
+    private final DocumentEvents page = new DocumentEvents(Arrays.asList(
+            new DocumentEvent(new UUID(0, 1), OPENED, CREATED, CREATED),
+            new DocumentEvent(new UUID(0, 2), POSTMARKED, CREATED.plusHours(1), CREATED, new PostmarkedMetadata(CREATED.plusHours(2))),
+            new DocumentEvent(new UUID(0, 3), PRINT_FAILED, CREATED.plusHours(3), CREATED, new FailedPrintMetadata("ADDRESS_ERROR")),
+            new DocumentEvent(new UUID(0, 4), OPENED, CREATED.plusHours(4), CREATED)));
+
+    @Test
+    public void reads_all_events_with_metadata() {
+        List<DocumentEvent> read = new ArrayList<>();
+        int count = DocumentEventsReader.read(xml(page), type -> true, read::add);
+
+        assertThat(count, is(4));
+        assertThat(read.stream().map(DocumentEvent::getUuid).collect(toList()), contains(new UUID(0, 1), new UUID(0, 2), new UUID(0, 3), new UUID(0, 4)));
+        assertThat(read.get(0).getMetadata(), nullValue());
+        assertThat(read.get(1).getMetadata(), instanceOf(PostmarkedMetadata.class));
+        assertThat(((PostmarkedMetadata) read.get(1).getMetadata()).postmarkedTime.toInstant(), is(CREATED.plusHours(2).toInstant()));
+        assertThat(((FailedPrintMetadata) read.get(2).getMetadata()).errorCode, is("ADDRESS_ERROR"));
+        assertThat(read.get(3).getCreated().toInstant(), is(CREATED.plusHours(4).toInstant()));
+    }
+
+    @Test
+    public void only_builds_events_of_wanted_types_but_counts_all() {
+        List<DocumentEvent> read = new ArrayList<>();
+        int count = DocumentEventsReader.read(xml(page), EnumSet.of(PRINT_FAILED, POSTMARKED)::contains, read::add);
+
+        assertThat(count, is(4));
+        assertThat(read.stream().map(DocumentEvent::getType).collect(toList()), contains(POSTMARKED, PRINT_FAILED));
+    }
+
+    @Test
+    public void empty_page() {
+        List<DocumentEvent> read = new ArrayList<>();
+        assertThat(DocumentEventsReader.read(xml(new DocumentEvents()), type -> true, read::add), is(0));
+        assertThat(read, empty());
+    }
+
+    @Test
+    public void unknown_event_types_are_given_as_null_to_type_filter() {
+        String xml = new String(marshalToBytes(jaxbContext, page), UTF_8).replace("type=\"OPENED\"", "type=\"SOMETHING_NEW\"");
+        List<DocumentEventType> testedTypes = new ArrayList<>();
+        List<DocumentEvent> read = new ArrayList<>();
+        int count = DocumentEventsReader.read(new ByteArrayInputStream(xml.getBytes(UTF_8)), type -> testedTypes.add(type) && type != null, read::add);
+
+        assertThat(count, is(4));
+        assertThat(testedTypes, contains(null, POSTMARKED, PRINT_FAILED, null));
+        assertThat(read.stream().map(DocumentEvent::getType).collect(toList()), contains(POSTMARKED, PRINT_FAILED));
+    }
+
+    private static InputStream xml(DocumentEvents events) {
+        return new ByteArrayInputStream(marshalToBytes(jaxbContext, events));
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.representations.DocumentEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static no.digipost.api.client.representations.DocumentEventType.PRINT_FAILED;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class EventFingerprintSetTest {
+
+    private static final ZonedDateTime CREATED = ZonedDateTime.of(2018, 12, 4, 10, 15, 30, 0, ZoneId.of("UTC"));
+
+    private final EventFingerprintSet seen = new EventFingerprintSet();
+
+    @Test
+    public void adds_each_event_once() {
+        DocumentEvent event = new DocumentEvent(new UUID(1, 2), OPENED, CREATED, CREATED);
+        assertThat(seen.add(event), is(true));
+        assertThat(seen.add(new DocumentEvent(new UUID(1, 2), OPENED, CREATED, CREATED)), is(false));
+        assertThat(seen.contains(event), is(true));
+        assertThat(seen.size(), is(1));
+    }
+
+    @Test
+    public void events_are_distinguished_by_uuid_type_and_created() {
+        seen.add(new DocumentEvent(new UUID(1, 2), OPENED, CREATED, CREATED));
+
+        assertThat(seen.add(new DocumentEvent(new UUID(1, 3), OPENED, CREATED, CREATED)), is(true));
+        assertThat(seen.add(new DocumentEvent(new UUID(1, 2), PRINT_FAILED, CREATED, CREATED)), is(true));
+        assertThat(seen.add(new DocumentEvent(new UUID(1, 2), OPENED, CREATED.plusSeconds(1), CREATED)), is(true));
+        assertThat(seen.add(new DocumentEvent(new UUID(1, 2), null, CREATED, CREATED)), is(true));
+        assertThat(seen.size(), is(5));
+    }
+
+    @Test
+    public void grows_to_hold_many_events() {
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(seen.add(event(i)), is(true));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(seen.contains(event(i)), is(true));
+        }
+        assertThat(seen.contains(event(10_000)), is(false));
+        assertThat(seen.size(), is(10_000));
+    }
+
+    @Test
+    public void removes_events_created_before_given_time() {
+        for (int i = 0; i < 100; i++) {
+            seen.add(event(i));
+        }
+        seen.removeCreatedBefore(CREATED.plusSeconds(60).toInstant().toEpochMilli());
+
+        assertThat(seen.size(), is(40));
+        assertThat(seen.contains(event(59)), is(false));
+        assertThat(seen.contains(event(60)), is(true));
+        assertThat(seen.contains(event(99)), is(true));
+    }
+
+    private static DocumentEvent event(int i) {
+        return new DocumentEvent(new UUID(0, i), OPENED, CREATED.plusSeconds(i), CREATED);
+    }
+}
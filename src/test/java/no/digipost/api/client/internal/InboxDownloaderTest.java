@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.inbox.InboxDownloadResult;
+import no.digipost.api.client.inbox.InboxDownloadSummary;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static no.digipost.api.client.errorhandling.ErrorCode.GENERAL_ERROR;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+public class InboxDownloaderTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("inbox-downloader-test"));
+    private final Map<Long, byte[]> contents = new HashMap<>();
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("inbox-downloader-test");
+    }
+
+    @AfterEach
+    public void deleteDirectoryAndShutdownExecutor() throws IOException {
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void downloads_documents_and_attachments_to_files() throws IOException {
+        InboxDocument invoice = document(1, "application/pdf", 3 * 1024 * 1024, document(11, "application/pdf", 100));
+        InboxDocument letter = document(2, "text/plain; charset=UTF-8", 0);
+
+        Map<Long, InboxDownloadResult> results = download(asList(invoice, letter), this::contentOf);
+
+        assertThat(results.keySet(), containsInAnyOrder(1L, 11L, 2L));
+        assertThat(results.get(1L).getFile().get(), is(directory.resolve("1.pdf")));
+        assertThat(results.get(11L).getFile().get(), is(directory.resolve("1-1.pdf")));
+        assertThat(results.get(2L).getFile().get(), is(directory.resolve("2.txt")));
+        for (InboxDownloadResult result : results.values()) {
+            assertThat(Files.readAllBytes(result.getFile().get()), is(contents.get(result.document.getId())));
+            assertThat(result.bytes, is((long) contents.get(result.document.getId()).length));
+        }
+    }
+
+    @Test
+    public void reports_failed_download_and_removes_the_partially_written_file() throws IOException {
+        InboxDocument complete = document(1, "application/pdf", 1024);
+        InboxDocument broken = document(2, "application/pdf", 256 * 1024);
+        InboxDocument unavailable = document(3, "application/pdf", 1024);
+
+        Map<Long, InboxDownloadResult> results = download(asList(complete, broken, unavailable), document -> {
+            if (document == unavailable) {
+                throw new DigipostClientException(GENERAL_ERROR, "unavailable");
+            }
+            InputStream content = contentOf(document);
+            return document != broken ? content : new InputStream() {
+                int remaining = 100 * 1024;
+                @Override
+                public int read() throws IOException {
+                    if (remaining == 0) {
+                        throw new IOException("connection reset");
+                    }
+                    remaining--;
+                    return content.read();
+                }
+            };
+        });
+
+        assertThat(results.get(1L).isSuccess(), is(true));
+        assertThat(results.get(2L).isSuccess(), is(false));
+        assertThat(results.get(2L).getError().get().getMessage(), containsString("connection reset"));
+        assertThat(results.get(3L).getError().get().getErrorCode(), is(GENERAL_ERROR));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.collect(toList()), contains(directory.resolve("1.pdf")));
+        }
+    }
+
+    @Test
+    public void summarizes_downloads() {
+        InboxDocument first = document(1, "application/pdf", 1000);
+        InboxDocument second = document(2, "application/pdf", 2000);
+        InboxDocument failing = document(3, "application/pdf", 1000);
+
+        InboxDownloadSummary summary;
+        try (Stream<InboxDownloadResult> results = InboxDownloader.stream(asList(first, second, failing), directory,
+                document -> document == failing ? null : contentOf(document), 2, executor, Clock.systemUTC())) {
+            summary = results.collect(InboxDownloadSummary.summarizing());
+        }
+
+        assertThat(summary.getDownloaded(), is(2));
+        assertThat(summary.getFailed(), is(1));
+        assertThat(summary.getBytes(), is(3000L));
+    }
+
+    @Test
+    public void names_files_by_content_type() {
+        assertThat(InboxDownloader.extension("application/pdf"), is("pdf"));
+        assertThat(InboxDownloader.extension("text/html;charset=UTF-8"), is("html"));
+        assertThat(InboxDownloader.extension("text/plain"), is("txt"));
+        assertThat(InboxDownloader.extension("image/jpeg"), is("jpg"));
+        assertThat(InboxDownloader.extension("application/vnd.api+json"), is("json"));
+        assertThat(InboxDownloader.extension("pdf"), is("pdf"));
+        assertThat(InboxDownloader.extension("../../"), is("bin"));
+        assertThat(InboxDownloader.extension(null), is("bin"));
+    }
+
+
+    private Map<Long, InboxDownloadResult> download(List<InboxDocument> documents, Function<InboxDocument, InputStream> content) {
+        try (Stream<InboxDownloadResult> results = InboxDownloader.stream(documents, directory, content, 2, executor, Clock.systemUTC())) {
+            return results.collect(toMap(result -> result.document.getId(), result -> result));
+        }
+    }
+
+    private InputStream contentOf(InboxDocument document) {
+        return new ByteArrayInputStream(contents.get(document.getId()));
+    }
+
+    private InboxDocument document(long documentId, String documentContentType, int size, InboxDocument ... documentAttachments) {
+        byte[] content = new byte[size];
+        new Random(documentId).nextBytes(content);
+        contents.put(documentId, content);
+        return new InboxDocument() {{
+            id = documentId;
+            contentType = documentContentType;
+            attachments.addAll(asList(documentAttachments));
+        }};
+    }
+}
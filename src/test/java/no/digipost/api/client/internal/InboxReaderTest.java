@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.representations.inbox.Inbox;
+import no.digipost.api.client.representations.inbox.InboxDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.marshalToBytes;
+import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class InboxReaderTest {
+
+    private static final String INBOX = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<inbox xmlns=\"http://api.digipost.no/schema/v7\">" +
+            document(1, "Faktura") +
+            document(2, "Kontrakt", document(4, "Vedlegg").replace("document>", "attachment>")) +
+            document(3, "Kvittering") +
+            "</inbox>";
+
+    @Test
+    public void reads_all_documents_in_page() {
+        List<InboxDocument> documents = new ArrayList<>();
+        int count = InboxReader.read(new ByteArrayInputStream(INBOX.getBytes(UTF_8)), documents::add);
+
+        assertThat(count, is(3));
+        assertThat(documents.stream().map(InboxDocument::getId).collect(toList()), contains(1L, 2L, 3L));
+        assertThat(documents.get(1).getSubject(), is("Kontrakt"));
+        assertThat(documents.get(1).getAttachments().get(0).getSubject(), is("Vedlegg"));
+    }
+
+    @Test
+    public void reads_same_documents_as_unmarshalling_the_whole_page() {
+        Inbox inbox = unmarshal(jaxbContext, new ByteArrayInputStream(INBOX.getBytes(UTF_8)), Inbox.class);
+        List<InboxDocument> documents = new ArrayList<>();
+        InboxReader.read(new ByteArrayInputStream(marshalToBytes(jaxbContext, inbox)), documents::add);
+
+        assertThat(documents.stream().map(InboxDocument::getSubject).collect(toList()),
+                is(inbox.documents.stream().map(InboxDocument::getSubject).collect(toList())));
+    }
+
+    @Test
+    public void reads_empty_page() {
+        List<InboxDocument> documents = new ArrayList<>();
+        int count = InboxReader.read(new ByteArrayInputStream(marshalToBytes(jaxbContext, new Inbox())), documents::add);
+        assertThat(count, is(0));
+        assertThat(documents, empty());
+    }
+
+    private static String document(long id, String subject) {
+        return document(id, subject, "");
+    }
+
+    private static String document(long id, String subject, String attachments) {
+        return "<document>" +
+                "<id>" + id + "</id>" +
+                "<subject>" + subject + "</subject>" +
+                "<sender>Avsender AS</sender>" +
+                "<delivery-time>2018-12-04T10:15:30.000+01:00</delivery-time>" +
+                "<first-accessed>2018-12-05T10:15:30.000+01:00</first-accessed>" +
+                "<content-type>application/pdf</content-type>" +
+                attachments +
+                "</document>";
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LongHashSetTest {
+
+    @Test
+    public void adds_each_value_once() {
+        LongHashSet set = new LongHashSet();
+
+        assertThat(set.add(42), is(true));
+        assertThat(set.add(42), is(false));
+        assertThat(set.add(0), is(true));
+        assertThat(set.add(0), is(false));
+        assertThat(set.add(-1), is(true));
+
+        assertThat(set.size(), is(3));
+        assertThat(set.contains(0), is(true));
+        assertThat(set.contains(42), is(true));
+        assertThat(set.contains(43), is(false));
+    }
+
+    @Test
+    public void grows_to_hold_many_values() {
+        LongHashSet set = new LongHashSet();
+        long[] values = new Random(1).longs(10_000).toArray();
+        for (long value : values) {
+            set.add(value);
+        }
+        for (long i = 1; i <= 10_000; i++) {
+            set.add(i);
+        }
+
+        assertThat(set.size(), is(20_000));
+        for (long value : values) {
+            assertThat(set.contains(value), is(true));
+        }
+        long[] all = set.toArray();
+        Arrays.sort(all);
+        assertThat(SortedLongSet.of(all).size(), is(20_000));
+        assertThat(set.contains(10_001), is(false));
+    }
+
+    @Test
+    public void removes_values_attached_before_given_attachment() {
+        LongHashSet set = LongHashSet.withAttachments(0);
+        for (long value = 0; value < 100; value++) {
+            set.add(value, value * 10);
+        }
+        assertThat(set.add(99, 0), is(false));
+
+        set.removeAttachedBefore(600);
+
+        assertThat(set.size(), is(40));
+        assertThat(set.contains(0), is(false));
+        assertThat(set.contains(59), is(false));
+        assertThat(set.contains(60), is(true));
+        assertThat(set.contains(99), is(true));
+        set.clear();
+        assertThat(set.size(), is(0));
+        assertThat(set.contains(60), is(false));
+    }
+
+    @Test
+    public void only_sets_with_attachments_can_remove_by_attachment() {
+        assertThrows(IllegalStateException.class, () -> new LongHashSet().removeAttachedBefore(0));
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.DocumentEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static no.digipost.api.client.errorhandling.ErrorCode.GENERAL_ERROR;
+import static no.digipost.api.client.representations.DocumentEventType.OPENED;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PagerTest {
+
+    private static final ZonedDateTime CREATED = ZonedDateTime.of(2018, 12, 4, 10, 15, 30, 0, ZoneId.of("UTC"));
+
+    private final List<Integer> requestedOffsets = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void streams_all_events_across_pages_in_order() {
+        List<DocumentEvent> events = events(25);
+        try (Stream<DocumentEvent> stream = Pager.stream(pagesOf(events), 10, 2, Runnable::run)) {
+            assertThat(stream.map(DocumentEvent::getUuid).collect(toList()), is(uuids(events)));
+        }
+        assertThat(requestedOffsets, contains(0, 10, 20));
+    }
+
+    @Test
+    public void fetches_next_page_while_current_is_consumed() {
+        List<DocumentEvent> events = events(30);
+        Pager<DocumentEvent> pager = new Pager<>(pagesOf(events), 10, 1, Runnable::run);
+
+        assertThat(requestedOffsets, empty());
+        pager.hasNext();
+        assertThat(requestedOffsets, contains(0, 10));
+
+        for (int i = 0; i < 10; i++) {
+            pager.next();
+        }
+        assertThat("page 3 is not requested before page 2 is needed", requestedOffsets, contains(0, 10));
+        assertThat(pager.hasNext(), is(true));
+        assertThat(requestedOffsets, contains(0, 10, 20));
+    }
+
+    @Test
+    public void stops_at_page_which_is_not_full() {
+        List<DocumentEvent> events = events(12);
+        try (Stream<DocumentEvent> stream = Pager.stream(pagesOf(events), 10, 3, Runnable::run)) {
+            assertThat(stream.count(), is(12L));
+        }
+        assertThat(requestedOffsets, contains(0, 10));
+    }
+
+    @Test
+    public void pages_not_yet_fetched_are_discarded_when_closed() {
+        List<Runnable> pending = new ArrayList<>();
+        Executor firstTaskOnly = task -> {
+            if (requestedOffsets.isEmpty() && pending.isEmpty()) {
+                task.run();
+            } else {
+                pending.add(task);
+            }
+        };
+        Pager<DocumentEvent> pager = new Pager<>(pagesOf(events(40)), 10, 3, firstTaskOnly);
+        for (int i = 0; i < 10; i++) {
+            pager.next();
+        }
+        pager.close();
+        pending.forEach(Runnable::run);
+
+        assertThat(pager.hasNext(), is(false));
+        assertThat(requestedOffsets, contains(0));
+    }
+
+    @Test
+    public void pages_without_fetching_ahead() {
+        List<DocumentEvent> events = events(20);
+        try (Stream<DocumentEvent> stream = Pager.stream(pagesOf(events), 10, 0, Runnable::run)) {
+            assertThat(stream.count(), is(20L));
+        }
+        assertThat("an empty page ends the stream when the last page was full", requestedOffsets, contains(0, 10, 20));
+    }
+
+    @Test
+    public void uses_count_of_all_events_in_page_when_some_are_filtered_out() {
+        List<DocumentEvent> events = events(15);
+        Pager.PageReader<DocumentEvent> onlyEvenEvents = (offset, maxResults, eventConsumer) -> {
+            requestedOffsets.add(offset);
+            List<DocumentEvent> page = page(events, offset, maxResults);
+            page.stream().filter(e -> e.getUuid().getLeastSignificantBits() % 2 == 0).forEach(eventConsumer);
+            return page.size();
+        };
+        try (Stream<DocumentEvent> stream = Pager.stream(onlyEvenEvents, 10, 1, Runnable::run)) {
+            assertThat(stream.count(), is(8L));
+        }
+        assertThat(requestedOffsets, contains(0, 10));
+    }
+
+    @Test
+    public void failure_fetching_a_page_is_thrown_from_the_stream() {
+        Pager.PageReader<DocumentEvent> failing = (offset, maxResults, eventConsumer) -> {
+            if (offset > 0) {
+                throw new DigipostClientException(GENERAL_ERROR, "page " + offset + " failed");
+            }
+            return pagesOf(events(10)).read(offset, maxResults, eventConsumer);
+        };
+        try (Stream<DocumentEvent> stream = Pager.stream(failing, 10, 1, Runnable::run)) {
+            DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> stream.collect(toList()));
+            assertThat(thrown.getMessage(), containsString("page 10 failed"));
+        }
+    }
+
+    @Test
+    public void empty_when_there_are_no_events() {
+        try (Stream<DocumentEvent> stream = Pager.stream(pagesOf(events(0)), 10, 1, Runnable::run)) {
+            assertThat(stream.collect(toList()), empty());
+        }
+    }
+
+
+    private Pager.PageReader<DocumentEvent> pagesOf(List<DocumentEvent> events) {
+        return (offset, maxResults, eventConsumer) -> {
+            requestedOffsets.add(offset);
+            List<DocumentEvent> page = page(events, offset, maxResults);
+            page.forEach(eventConsumer);
+            return page.size();
+        };
+    }
+
+    private static List<DocumentEvent> page(List<DocumentEvent> events, int offset, int maxResults) {
+        return events.subList(Math.min(offset, events.size()), Math.min(offset + maxResults, events.size()));
+    }
+
+    private static List<DocumentEvent> events(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new DocumentEvent(new UUID(0, i), OPENED, CREATED.plusSeconds(i), CREATED))
+                .collect(Collectors.toList());
+    }
+
+    private static List<UUID> uuids(List<DocumentEvent> events) {
+        return events.stream().map(DocumentEvent::getUuid).collect(toList());
+    }
+}
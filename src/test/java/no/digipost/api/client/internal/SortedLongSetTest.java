@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SortedLongSetTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("sorted-long-set-test");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void contains_distinct_values() {
+        SortedLongSet set = SortedLongSet.of(42, -7, 42, Long.MAX_VALUE, 0, -7);
+
+        assertThat(set.size(), is(4));
+        assertThat(set.contains(42), is(true));
+        assertThat(set.contains(-7), is(true));
+        assertThat(set.contains(Long.MAX_VALUE), is(true));
+        assertThat(set.contains(1), is(false));
+        assertThat(set, is(SortedLongSet.of(-7, 0, 42, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void union_has_values_of_both_sets() {
+        assertThat(SortedLongSet.of(1, 3, 5, 7).union(SortedLongSet.of(2, 3, 4, 9)), is(SortedLongSet.of(1, 2, 3, 4, 5, 7, 9)));
+        SortedLongSet set = SortedLongSet.of(1, 2);
+        assertThat(set.union(SortedLongSet.EMPTY), sameInstance(set));
+        assertThat(SortedLongSet.EMPTY.union(set), sameInstance(set));
+    }
+
+    @Test
+    public void reads_the_set_which_was_written() throws IOException {
+        SortedLongSet set = SortedLongSet.of(new Random(1).longs(20_000).toArray());
+        Path file = directory.resolve("ids");
+
+        set.write(file);
+
+        assertThat(Files.size(file), is(20_000L * Long.BYTES));
+        assertThat(SortedLongSet.read(file), is(set));
+        SortedLongSet.EMPTY.write(file);
+        assertThat(SortedLongSet.read(file), is(SortedLongSet.EMPTY));
+    }
+
+    @Test
+    public void reads_missing_file_as_empty_set() {
+        assertThat(SortedLongSet.read(directory.resolve("missing")), sameInstance(SortedLongSet.EMPTY));
+    }
+
+    @Test
+    public void fails_to_read_invalid_file() throws IOException {
+        Path file = directory.resolve("ids");
+        Files.write(file, new byte[12]);
+        assertThrows(IllegalStateException.class, () -> SortedLongSet.read(file));
+        Files.write(file, new byte[16]);
+        assertThrows(IllegalStateException.class, () -> SortedLongSet.read(file));
+    }
+
+    @Test
+    public void reads_values_appended_in_any_order() throws IOException {
+        Path file = directory.resolve("journal");
+        assertThat(SortedLongSet.readUnordered(file), sameInstance(SortedLongSet.EMPTY));
+
+        SortedLongSet.append(file, new long[] {9, 3, 5, 100}, 3);
+        SortedLongSet.append(file, new long[] {1, 3}, 2);
+        assertThat(Files.size(file), is(5L * Long.BYTES));
+        assertThat(SortedLongSet.readUnordered(file), is(SortedLongSet.of(1, 3, 5, 9)));
+
+        Files.write(file, new byte[3], StandardOpenOption.APPEND);
+        assertThat("partially appended value is ignored", SortedLongSet.readUnordered(file), is(SortedLongSet.of(1, 3, 5, 9)));
+    }
+}
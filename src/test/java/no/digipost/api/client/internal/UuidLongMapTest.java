@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UuidLongMapTest {
+
+    private final UuidLongMap map = new UuidLongMap();
+
+    @Test
+    public void absent_keys_give_zero() {
+        assertThat(map.get(UUID.randomUUID()), is(UuidLongMap.ABSENT));
+        assertThat(map.get(0, 0), is(UuidLongMap.ABSENT));
+    }
+
+    @Test
+    public void puts_and_replaces_values() {
+        UUID key = UUID.randomUUID();
+        map.put(key, 42);
+        assertThat(map.get(key), is(42L));
+        map.put(key, 43);
+        assertThat(map.get(key), is(43L));
+        assertThat(map.size(), is(1));
+    }
+
+    @Test
+    public void keys_are_distinguished_by_both_halves_of_the_uuid() {
+        map.put(new UUID(1, 2), 1);
+        map.put(new UUID(2, 1), 2);
+        map.put(new UUID(0, 0), 3);
+        assertThat(map.get(new UUID(1, 2)), is(1L));
+        assertThat(map.get(new UUID(2, 1)), is(2L));
+        assertThat(map.get(new UUID(0, 0)), is(3L));
+    }
+
+    @Test
+    public void zero_can_not_be_put() {
+        assertThrows(IllegalArgumentException.class, () -> map.put(UUID.randomUUID(), 0));
+    }
+
+    @Test
+    public void grows_and_agrees_with_hash_map() {
+        Random random = new Random(1);
+        Map<UUID, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            UUID key = i % 3 == 0 ? new UUID(0, i) : UUID.randomUUID();
+            long value = random.nextLong() | 1;
+            map.put(key, value);
+            expected.put(key, value);
+        }
+
+        assertThat(map.size(), is(expected.size()));
+        expected.forEach((key, value) -> assertThat(map.get(key), is(value)));
+
+        Map<UUID, Long> iterated = new HashMap<>();
+        map.forEach((msb, lsb, value) -> iterated.put(new UUID(msb, lsb), value));
+        assertThat(iterated, is(expected));
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import no.digipost.api.client.delivery.BatchDelivery;
+import no.digipost.api.client.delivery.BatchListener;
+import no.digipost.api.client.delivery.BatchStatistics;
+import no.digipost.api.client.delivery.MessageDeliveryApi;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.errorhandling.ErrorCode;
+import no.digipost.api.client.representations.DigipostAddress;
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.FileType;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.MessageDelivery;
+import no.digipost.print.validate.PdfValidator;
+import org.apache.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static no.digipost.api.client.DigipostClientConfig.newConfiguration;
+import static no.digipost.api.client.delivery.BatchOptions.newBatchOptions;
+import static no.digipost.api.client.pdf.EksempelPdf.printablePdf1Page;
+import static no.digipost.api.client.testing.MockfriendlyResponse.getDefaultResponse;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BatchDelivererTest {
+
+    private final MessageDeliveryApi api = mock(MessageDeliveryApi.class);
+    private final MessageDeliverer deliverer = new MessageDeliverer(newConfiguration().build(), api, new DocumentsPreparer(new PdfValidator()));
+
+    @Test
+    public void deliversAllMessagesAndReportsStatistics() {
+        when(api.sendMultipartMessage(any(HttpEntity.class))).thenAnswer(invocation -> getDefaultResponse());
+        AtomicInteger delivered = new AtomicInteger();
+        BatchListener listener = new BatchListener() {
+            @Override
+            public void delivered(Message message, MessageDelivery delivery) {
+                delivered.incrementAndGet();
+            }
+        };
+
+        BatchDelivery batch = deliverer.newBatch(newBatchOptions().sendingThreads(4).maxMessagesInProgress(10).listener(listener).build());
+        try (BatchDelivery closedAfterwards = batch) {
+            batch.sendAll(IntStream.range(0, 50).boxed(), i -> {
+                Message message = newMessage();
+                return batch.createMessage(message).addContent(message.primaryDocument, printablePdf1Page());
+            });
+        }
+
+        BatchStatistics statistics = batch.getStatistics();
+        assertThat(statistics.submitted, is(50L));
+        assertThat(statistics.delivered, is(50L));
+        assertThat(statistics.failed, is(0L));
+        assertThat(statistics.inProgress(), is(0L));
+        assertThat(delivered.get(), is(50));
+    }
+
+    @Test
+    public void reportsFailedMessages() {
+        when(api.sendMultipartMessage(any(HttpEntity.class))).thenThrow(new DigipostClientException(ErrorCode.CONNECTION_ERROR, "no connection"));
+        List<Message> failed = new ArrayList<>();
+        BatchListener listener = new BatchListener() {
+            @Override
+            public synchronized void failed(Message message, DigipostClientException error) {
+                failed.add(message);
+            }
+        };
+
+        Message message = newMessage();
+        CompletableFuture<MessageDelivery> delivery;
+        try (BatchDelivery batch = deliverer.newBatch(newBatchOptions().listener(listener).build())) {
+            delivery = batch.createMessage(message).addContent(message.primaryDocument, printablePdf1Page()).sendAsync();
+            ExecutionException thrown = assertThrows(ExecutionException.class, delivery::get);
+            assertThat(thrown.getCause(), instanceOf(DigipostClientException.class));
+            assertThat(batch.getStatistics().failed, is(1L));
+        }
+        assertThat(failed.size(), is(1));
+        assertThat(failed.get(0), is(message));
+    }
+
+    @Test
+    public void blocksSubmissionWhileMaxMessagesAreInProgress() throws Exception {
+        CountDownLatch sendingBlocked = new CountDownLatch(1);
+        when(api.sendMultipartMessage(any(HttpEntity.class))).thenAnswer(invocation -> {
+            sendingBlocked.await();
+            return getDefaultResponse();
+        });
+
+        try (BatchDelivery batch = deliverer.newBatch(newBatchOptions().maxMessagesInProgress(2).build())) {
+            for (int i = 0; i < 2; i++) {
+                Message message = newMessage();
+                batch.createMessage(message).addContent(message.primaryDocument, printablePdf1Page()).sendAsync();
+            }
+            Message third = newMessage();
+            CompletableFuture<MessageDelivery> thirdSubmitted = CompletableFuture.supplyAsync(() ->
+                    batch.createMessage(third).addContent(third.primaryDocument, printablePdf1Page()).sendAsync()).thenCompose(delivery -> delivery);
+
+            TimeUnit.MILLISECONDS.sleep(200);
+            assertThat(thirdSubmitted.isDone(), is(false));
+            assertThat(batch.getStatistics().submitted, is(2L));
+
+            sendingBlocked.countDown();
+            thirdSubmitted.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void cannotSendWithClosedBatch() {
+        BatchDelivery batch = deliverer.newBatch(newBatchOptions().build());
+        batch.close();
+
+        Message message = newMessage();
+        assertThrows(IllegalStateException.class, () -> batch.createMessage(message).addContent(message.primaryDocument, printablePdf1Page()).sendAsync());
+    }
+
+    private static Message newMessage() {
+        Document document = new Document(UUID.randomUUID(), "subject", FileType.PDF);
+        return Message.newMessage(UUID.randomUUID(), document).recipient(new DigipostAddress("test.testesen#1234")).build();
+    }
+
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.delivery;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.apache.commons.io.IOUtils.toByteArray;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static java.util.Arrays.copyOfRange;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class ContentBufferTest {
+
+    private final byte[] content = new byte[3 * ContentBuffer.TRANSFER_BUFFER_SIZE + 123];
+    private Path file;
+
+    {
+        new Random(42).nextBytes(content);
+    }
+
+    @BeforeEach
+    public void writeContentToFile() throws IOException {
+        file = Files.write(Files.createTempFile("content-buffer-test", ".pdf"), content);
+    }
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void keepsContentBelowThresholdInMemory() throws IOException {
+        try (ContentBuffer buffer = ContentBuffer.buffer(new ByteArrayInputStream(content), content.length)) {
+            assertThat(buffer.isInMemory(), is(true));
+            assertThat(buffer.length(), is((long) content.length));
+            assertThat(buffer.bytes(), is(content));
+            assertThat(buffer.file(), is(Optional.empty()));
+        }
+    }
+
+    @Test
+    public void spillsContentAboveThresholdToTemporaryFileWhichIsRemovedWhenClosed() throws IOException {
+        Path spilled;
+        try (ContentBuffer buffer = ContentBuffer.buffer(new ByteArrayInputStream(content), 1024)) {
+            assertThat(buffer.isInMemory(), is(false));
+            spilled = buffer.file().get();
+            assertThat(Files.exists(spilled), is(true));
+            assertThat(buffer.length(), is((long) content.length));
+            assertThrows(IllegalStateException.class, buffer::bytes);
+        }
+        assertThat(Files.exists(spilled), is(false));
+    }
+
+    @Test
+    public void spilledContentCanBeReadSeveralTimes() throws IOException {
+        try (ContentBuffer buffer = ContentBuffer.buffer(new ByteArrayInputStream(content), 1024)) {
+            for (int i = 0; i < 2; i++) {
+                try (InputStream read = buffer.openStream()) {
+                    assertThat(toByteArray(read), is(content));
+                }
+                ByteArrayOutputStream written = new ByteArrayOutputStream();
+                buffer.writeTo(written);
+                assertThat(written.toByteArray(), is(content));
+            }
+        }
+    }
+
+    @Test
+    public void doesNotReadSourceUntilFirstRead() throws IOException {
+        InputStream source = mock(InputStream.class);
+        ContentBuffer buffer = ContentBuffer.bufferOnFirstRead(source, 1024);
+        verifyZeroInteractions(source);
+
+        buffer.close();
+        verify(source).close();
+        assertThrows(IllegalStateException.class, buffer::openStream);
+    }
+
+    @Test
+    public void buffersSourceOnceOnFirstRead() throws IOException {
+        try (ContentBuffer buffer = ContentBuffer.bufferOnFirstRead(new ByteArrayInputStream(content), 1024)) {
+            assertThat(toByteArray(buffer.openStream()), is(content));
+            assertThat(toByteArray(buffer.openStream()), is(content));
+            assertThat(buffer.isInMemory(), is(false));
+        }
+    }
+
+    @Test
+    public void readsContentDirectlyFromFileWhichIsLeftAsIsWhenClosed() throws IOException {
+        try (ContentBuffer buffer = ContentBuffer.ofFile(file)) {
+            assertThat(buffer.file(), is(Optional.of(file)));
+            assertThat(buffer.length(), is((long) content.length));
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            buffer.writeTo(written);
+            assertThat(written.toByteArray(), is(content));
+        }
+        assertThat(Files.exists(file), is(true));
+    }
+
+    @Test
+    public void readsContentFromCurrentPositionOfChannelWithoutChangingIt() throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            channel.position(1000);
+            ContentBuffer buffer = ContentBuffer.ofChannel(channel);
+            byte[] expected = copyOfRange(content, 1000, content.length);
+
+            assertThat(buffer.length(), is((long) expected.length));
+            assertThat(toByteArray(buffer.openStream()), is(expected));
+            ByteArrayOutputStream written = new ByteArrayOutputStream();
+            buffer.writeTo(written);
+            assertThat(written.toByteArray(), is(expected));
+            assertThat(channel.position(), is(1000L));
+
+            buffer.close();
+            assertThat(channel.isOpen(), is(true));
+        }
+    }
+
+    @Test
+    public void multipartWithContentFromFileHasExactContentLength() throws IOException {
+        HttpEntity multipart = MultipartEntityBuilder.create()
+                .addPart("application", new ContentBufferBody(ContentBuffer.ofFile(file), ContentType.create("application/pdf"), "content"))
+                .build();
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        multipart.writeTo(written);
+        assertThat(multipart.getContentLength(), is((long) written.size()));
+    }
+
+    @Test
+    public void multipartWithSpooledContentIsRepeatableAndReadsSourceOnce() throws IOException {
+        CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(content));
+        try (ContentBuffer spooled = ContentBuffer.bufferOnFirstRead(source, 1024)) {
+            HttpEntity multipart = MultipartEntityBuilder.create()
+                    .addPart("application", new ContentBufferBody(spooled, ContentType.create("application/pdf"), "content"))
+                    .build();
+            assertThat(multipart.isRepeatable(), is(true));
+
+            ByteArrayOutputStream hashed = new ByteArrayOutputStream();
+            multipart.writeTo(hashed);
+            ByteArrayOutputStream sent = new ByteArrayOutputStream();
+            multipart.writeTo(sent);
+
+            assertThat(spooled.isInMemory(), is(false));
+            assertThat(sent.toByteArray(), is(hashed.toByteArray()));
+            byte[] body = sent.toByteArray();
+            int partStart = indexOf(body, copyOfRange(content, 0, 64));
+            assertThat(copyOfRange(body, partStart, partStart + content.length), is(content));
+            assertThat(source.bytesRead, is((long) content.length));
+        }
+        assertThat(source.closed, is(1));
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i <= bytes.length - part.length; i++) {
+            if (Arrays.equals(copyOfRange(bytes, i, i + part.length), part)) {
+                return i;
+            }
+        }
+        throw new AssertionError("part not found");
+    }
+
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long bytesRead;
+        int closed;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                bytesRead += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed++;
+            super.close();
+        }
+    }
+
+}
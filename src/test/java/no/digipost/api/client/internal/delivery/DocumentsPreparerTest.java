@@ -34,13 +34,18 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static co.unruly.matchers.Java8Matchers.where;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static no.digipost.api.client.pdf.EksempelPdf.pdf20Pages;
 import static no.digipost.api.client.pdf.EksempelPdf.printablePdf1Page;
 import static no.digipost.api.client.pdf.EksempelPdf.printablePdf2Pages;
@@ -80,7 +85,7 @@ public class DocumentsPreparerTest {
     private final Encrypter encrypter = Encrypter.using(new DigipostPublicKey(FakeEncryptionKey.createFakeEncryptionKey()));
 
     private final Document primaryDocument = new Document(UUID.randomUUID(), "primary", PDF);
-    private final Map<Document, InputStream> documents = new HashMap<Document, InputStream>() {{ put(primaryDocument, printablePdf1Page()); }};
+    private final Map<Document, ContentBuffer> documents = new HashMap<Document, ContentBuffer>() {{ put(primaryDocument, buffered(printablePdf1Page())); }};
     private final MessageBuilder messageBuilder = Message.newMessage(UUID.randomUUID(), primaryDocument).printDetails(
             new PrintDetails(new PrintRecipient("Joe Schmoe", new NorwegianAddress("7845", "Far away")), new PrintRecipient("Dolly Parton", new NorwegianAddress("8942", "Farther away"))));
 
@@ -127,7 +132,7 @@ public class DocumentsPreparerTest {
 
     @Test
     public void doesNothingForNonPreEncryptedDocuments() throws IOException {
-        Map<Document, InputStream> preparedDocuments = preparer.prepare(documents, messageBuilder.build(), FAIL_IF_TRYING_TO_ENCRYPT, () -> PdfValidationSettings.CHECK_ALL);
+        Map<Document, ContentBuffer> preparedDocuments = preparer.prepare(documents, messageBuilder.build(), FAIL_IF_TRYING_TO_ENCRYPT, () -> PdfValidationSettings.CHECK_ALL);
 
         assertThat(documents.keySet(), contains(primaryDocument));
         assertThat(documents.get(primaryDocument), sameInstance(preparedDocuments.get(primaryDocument)));
@@ -138,16 +143,62 @@ public class DocumentsPreparerTest {
         primaryDocument.encrypt();
         addAttachment("attachment", PDF, printablePdf2Pages()).encrypt();
         Message message = messageBuilder.build();
-        Map<Document, InputStream> preparedDocuments = preparer.prepare(documents, message, encrypter, () -> PdfValidationSettings.CHECK_ALL);
+        Map<Document, ContentBuffer> preparedDocuments = preparer.prepare(documents, message, encrypter, () -> PdfValidationSettings.CHECK_ALL);
 
         assertThat(preparedDocuments.size(), is(2));
     }
 
+    @Test
+    public void preparesDocumentsConcurrentlyInDocumentOrder() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DocumentsPreparer concurrentPreparer = new DocumentsPreparer(new PdfValidator(), ContentBuffer.DEFAULT_IN_MEMORY_THRESHOLD, executor);
+            primaryDocument.encrypt();
+            List<Document> attachments = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Document attachment = new Document(UUID.randomUUID(), "attachment " + i, PDF).encrypt();
+                documents.put(attachment, buffered(i % 2 == 0 ? printablePdf1Page() : printablePdf2Pages()));
+                attachments.add(attachment);
+            }
+            Message message = messageBuilder.attachments(attachments).build();
+
+            Map<Document, ContentBuffer> preparedDocuments = concurrentPreparer.prepare(documents, message, encrypter, () -> PdfValidationSettings.CHECK_ALL);
+
+            assertThat(new ArrayList<>(preparedDocuments.keySet()), is(message.getAllDocuments().collect(toList())));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentPreparationFailsWithFailureOfFirstFailingDocument() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DocumentsPreparer concurrentPreparer = new DocumentsPreparer(new PdfValidator(), ContentBuffer.DEFAULT_IN_MEMORY_THRESHOLD, executor);
+            primaryDocument.encrypt();
+            Document bogusPdf = new Document(UUID.randomUUID(), "bogus", PDF).encrypt();
+            documents.put(bogusPdf, buffered(toInputStream("not a pdf", UTF_8)));
+            Document gif = new Document(UUID.randomUUID(), "gif", GIF).encrypt();
+            documents.put(gif, buffered(toInputStream("not for print", UTF_8)));
+            Message message = messageBuilder.attachments(asList(bogusPdf, gif)).build();
+
+            DigipostClientException thrown = assertThrows(DigipostClientException.class,
+                    () -> concurrentPreparer.prepare(documents, message, encrypter, () -> PdfValidationSettings.CHECK_ALL));
+            assertThat(thrown, where(Exception::getMessage, containsString("Could not parse")));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private Document addAttachment(String subject, FileType fileType, InputStream content) {
         Document document = new Document(UUID.randomUUID(), subject, fileType);
-        documents.put(document, content);
+        documents.put(document, buffered(content));
         messageBuilder.attachments(asList(document));
         return document;
     }
 
+    private static ContentBuffer buffered(InputStream content) {
+        return ContentBuffer.bufferOnFirstRead(content, ContentBuffer.DEFAULT_IN_MEMORY_THRESHOLD);
+    }
+
 }
@@ -19,6 +19,8 @@ import no.digipost.api.client.SenderId;
 import no.digipost.api.client.delivery.MessageDeliveryApi;
 import no.digipost.api.client.delivery.OngoingDelivery.SendableForPrintOnly;
 import no.digipost.api.client.delivery.OngoingDelivery.SendableWithPrintFallback;
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.errorhandling.ErrorCode;
 import no.digipost.api.client.internal.http.StatusLineMock;
 import no.digipost.api.client.representations.Channel;
 import no.digipost.api.client.representations.DigipostAddress;
@@ -36,7 +38,9 @@ import no.digipost.api.client.representations.Message;
 import no.digipost.api.client.representations.MessageDelivery;
 import no.digipost.api.client.representations.MessageRecipient;
 import no.digipost.api.client.representations.MessageStatus;
+import no.digipost.api.client.representations.NameAndAddress;
 import no.digipost.api.client.representations.NorwegianAddress;
+import no.digipost.api.client.representations.PersonalIdentificationNumber;
 import no.digipost.api.client.representations.PrintDetails;
 import no.digipost.api.client.representations.PrintRecipient;
 import no.digipost.api.client.representations.sender.SenderInformation;
@@ -63,17 +67,22 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.cert.X509Certificate;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Stream;
 
 import static java.time.Duration.ofMillis;
 import static java.time.Duration.ofMinutes;
 import static java.time.ZonedDateTime.now;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static java.util.stream.Stream.concat;
 import static no.digipost.api.client.DigipostClientConfig.newConfiguration;
@@ -91,11 +100,18 @@ import static no.digipost.api.client.representations.sender.SenderFeatureName.PR
 import static no.digipost.api.client.representations.sender.SenderStatus.VALID_SENDER;
 import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
 import static no.digipost.api.client.util.JAXBContextUtils.marshal;
+import static org.apache.commons.io.IOUtils.toInputStream;
 import static org.apache.http.HttpStatus.SC_OK;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
@@ -128,6 +144,7 @@ public class MessageDelivererTest {
     @Spy
     private PdfValidator pdfValidator;
 
+    private final List<Runnable> backgroundTasks = new ArrayList<>();
     private MessageDeliverer sender;
     private MessageDeliverer cachelessSender;
     private EncryptionKey fakeEncryptionKey = FakeEncryptionKey.createFakeEncryptionKey();
@@ -143,7 +160,7 @@ public class MessageDelivererTest {
                 .entity(new ByteArrayEntity(bao.toByteArray()))
                 .build();
 
-        sender = new MessageDeliverer(newConfiguration().clock(clock).build(), api, new DocumentsPreparer(pdfValidator));
+        sender = new MessageDeliverer(newConfiguration().clock(clock).asyncExecutor(backgroundTasks::add).build(), api, new DocumentsPreparer(pdfValidator));
 
         cachelessSender = new MessageDeliverer(newConfiguration().clock(clock).disablePrintKeyCache().build(), api, new DocumentsPreparer(pdfValidator));
     }
@@ -164,6 +181,40 @@ public class MessageDelivererTest {
         then(api).should(times(2)).getEncryptionCertificateForPrint();
     }
 
+    @Test
+    public void fornyer_print_encryption_key_i_bakgrunnen_foer_den_utloeper() {
+        when(api.getEncryptionCertificateForPrint()).thenReturn(encryptionCertificateResponse);
+
+        X509Certificate certificate = sender.getEncryptionCertificateForPrint();
+        clock.timePasses(ofMinutes(4).plusMillis(1));
+        assertThat(sender.getEncryptionCertificateForPrint(), sameInstance(certificate));
+        assertThat(sender.getEncryptionCertificateForPrint(), sameInstance(certificate));
+        then(api).should(times(1)).getEncryptionCertificateForPrint();
+        assertThat(backgroundTasks.size(), is(1));
+
+        backgroundTasks.remove(0).run();
+        then(api).should(times(2)).getEncryptionCertificateForPrint();
+
+        clock.timePasses(ofMinutes(4));
+        sender.getEncryptionCertificateForPrint();
+        then(api).should(times(2)).getEncryptionCertificateForPrint();
+        assertThat(backgroundTasks.size(), is(0));
+    }
+
+    @Test
+    public void bruker_cached_print_encryption_key_til_den_utloeper_dersom_fornying_feiler() {
+        when(api.getEncryptionCertificateForPrint()).thenReturn(encryptionCertificateResponse).thenThrow(new DigipostClientException(ErrorCode.CONNECTION_ERROR, "no connection"));
+
+        X509Certificate certificate = sender.getEncryptionCertificateForPrint();
+        clock.timePasses(ofMinutes(4).plusMillis(1));
+        sender.getEncryptionCertificateForPrint();
+        backgroundTasks.remove(0).run();
+
+        assertThat(sender.getEncryptionCertificateForPrint(), sameInstance(certificate));
+        then(api).should(times(2)).getEncryptionCertificateForPrint();
+        assertThat(backgroundTasks.size(), is(1));
+    }
+
     @Test
     public void skal_ikke_bruke_cached_print_encryption_key_da_encryption_er_avskrudd() {
         when(api.getEncryptionCertificateForPrint()).thenReturn(encryptionCertificateResponse);
@@ -215,9 +266,9 @@ public class MessageDelivererTest {
         Message message = Message.newMessage(UUID.randomUUID(), printDocument).attachments(printAttachments)
                 .recipient(new MessageRecipient(new DigipostAddress("asdfasd"), new PrintDetails(recipient, returnAddress))).build();
 
-        documentAndContent.put(message.primaryDocument.uuid, DocumentContent.CreateMultiStreamContent(printablePdf1Page(), printablePdf1Page()));
+        documentAndContent.put(message.primaryDocument.uuid, DocumentContent.CreateMultiStreamContent(buffered(printablePdf1Page()), buffered(printablePdf1Page())));
         for (Document attachment : printAttachments) {
-            documentAndContent.put(attachment.uuid, DocumentContent.CreateMultiStreamContent(printablePdf1Page(), printablePdf1Page()));
+            documentAndContent.put(attachment.uuid, DocumentContent.CreateMultiStreamContent(buffered(printablePdf1Page()), buffered(printablePdf1Page())));
         }
         SendableWithPrintFallback delivery = deliverer.createMessage(message).addContent(printDocument, printablePdf1Page());
         printAttachments.forEach(d -> delivery.addContent(d, printablePdf1Page(), printablePdf1Page()));
@@ -236,18 +287,18 @@ public class MessageDelivererTest {
         Message message = Message.newMessage(UUID.randomUUID(), printDocument).attachments(printAttachments)
                 .recipient(new MessageRecipient(new DigipostAddress("asdfasd"), new PrintDetails(recipient, returnAddress))).build();
 
-        documentAndContent.put(message.primaryDocument.uuid, DocumentContent.CreateMultiStreamContent(printablePdf1Page(), printablePdf2Pages()));
+        documentAndContent.put(message.primaryDocument.uuid, DocumentContent.CreateMultiStreamContent(buffered(printablePdf1Page()), buffered(printablePdf2Pages())));
         for (Document attachment : printAttachments) {
-            documentAndContent.put(attachment.uuid, DocumentContent.CreateMultiStreamContent(printablePdf1Page(), printablePdf2Pages()));
+            documentAndContent.put(attachment.uuid, DocumentContent.CreateMultiStreamContent(buffered(printablePdf1Page()), buffered(printablePdf2Pages())));
         }
 
-        Map<Document, InputStream> documentAndInputStreams = new HashMap<>();
+        Map<Document, ContentBuffer> documentAndBuffers = new HashMap<>();
         Message digipostCopyMessage = Message.copyMessageWithOnlyDigipostDetails(message);
-        MessageDeliverer.setDigipostContentToUUID(documentAndContent, documentAndInputStreams, digipostCopyMessage.getAllDocuments());
+        MessageDeliverer.setDigipostContentToUUID(documentAndContent, documentAndBuffers, digipostCopyMessage.getAllDocuments());
 
         digipostCopyMessage.getAllDocuments().forEach(doc -> {
-            InputStream inputStream = documentAndInputStreams.get(doc);
-            assertThat(inputStream, is(documentAndContent.get(doc.uuid).getDigipostContent()));
+            ContentBuffer content = documentAndBuffers.get(doc);
+            assertThat(content, is(documentAndContent.get(doc.uuid).getDigipostContent()));
         });
 
         assertThat(digipostCopyMessage.recipient.hasPrintDetails(), is(false));
@@ -265,18 +316,18 @@ public class MessageDelivererTest {
         Message message = Message.newMessage(UUID.randomUUID(), printDocument).attachments(printAttachments)
                 .recipient(new MessageRecipient(new DigipostAddress("asdfasd"), new PrintDetails(recipient, returnAddress))).build();
 
-        documentAndContent.put(message.primaryDocument.uuid, DocumentContent.CreateMultiStreamContent(printablePdf1Page(), printablePdf2Pages()));
+        documentAndContent.put(message.primaryDocument.uuid, DocumentContent.CreateMultiStreamContent(buffered(printablePdf1Page()), buffered(printablePdf2Pages())));
         for (Document attachment : printAttachments) {
-            documentAndContent.put(attachment.uuid, DocumentContent.CreateMultiStreamContent(printablePdf1Page(), printablePdf2Pages()));
+            documentAndContent.put(attachment.uuid, DocumentContent.CreateMultiStreamContent(buffered(printablePdf1Page()), buffered(printablePdf2Pages())));
         }
 
-        Map<Document, InputStream> documentAndInputStreams = new HashMap<>();
+        Map<Document, ContentBuffer> documentAndBuffers = new HashMap<>();
         Message printCopyMessage = Message.copyMessageWithOnlyPrintDetails(message);
-        MessageDeliverer.setPrintContentToUUID(documentAndContent, documentAndInputStreams, printCopyMessage.getAllDocuments());
+        MessageDeliverer.setPrintContentToUUID(documentAndContent, documentAndBuffers, printCopyMessage.getAllDocuments());
 
         printCopyMessage.getAllDocuments().forEach(doc -> {
-            InputStream inputStream = documentAndInputStreams.get(doc);
-            assertThat(inputStream, is(documentAndContent.get(doc.uuid).getPrintContent()));
+            ContentBuffer content = documentAndBuffers.get(doc);
+            assertThat(content, is(documentAndContent.get(doc.uuid).getPrintContent()));
         });
 
         assertThat(printCopyMessage.recipient.hasPrintDetails(), is(true));
@@ -326,4 +377,105 @@ public class MessageDelivererTest {
         then(pdfValidator).should(times(2)).validate(any(byte[].class), any(PdfValidationSettings.class));
         reset(pdfValidator);
     }
+
+    @Test
+    public void sends_message_asynchronously_using_configured_executor() throws Exception {
+        UUID messageId = UUID.randomUUID();
+        when(api.sendMultipartMessage(any(HttpEntity.class))).thenReturn(mockClientResponse);
+        when(mockClientResponse.getStatusLine()).thenReturn(new StatusLineMock(SC_OK));
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        marshal(jaxbContext, new MessageDelivery(messageId.toString(), Channel.DIGIPOST, MessageStatus.DELIVERED, now()), bao);
+        when(mockClientResponse.getEntity()).thenReturn(new ByteArrayEntity(bao.toByteArray()));
+
+        List<Runnable> submitted = new ArrayList<>();
+        MessageDeliverer asyncSender = new MessageDeliverer(newConfiguration().asyncExecutor(submitted::add).build(), api, new DocumentsPreparer(pdfValidator));
+        Document document = new Document(UUID.randomUUID(), "subject", FileType.PDF);
+        Message message = Message.newMessage(messageId, document).recipient(new DigipostAddress("test.testesen#1234")).build();
+
+        CompletableFuture<MessageDelivery> delivery = asyncSender.createMessage(message).addContent(document, printablePdf1Page()).sendAsync();
+        assertThat(delivery.isDone(), is(false));
+        then(api).should(never()).sendMultipartMessage(any(HttpEntity.class));
+
+        submitted.forEach(Runnable::run);
+        assertThat(delivery.get().getStatus(), is(MessageStatus.DELIVERED));
+        then(api).should(times(1)).sendMultipartMessage(any(HttpEntity.class));
+    }
+
+    @Test
+    public void failed_asynchronous_send_completes_exceptionally() {
+        when(api.sendMultipartMessage(any(HttpEntity.class))).thenThrow(new DigipostClientException(ErrorCode.CONNECTION_ERROR, "no connection"));
+
+        MessageDeliverer asyncSender = new MessageDeliverer(newConfiguration().asyncExecutor(Runnable::run).build(), api, new DocumentsPreparer(pdfValidator));
+        Document document = new Document(UUID.randomUUID(), "subject", FileType.PDF);
+        Message message = Message.newMessage(UUID.randomUUID(), document).recipient(new DigipostAddress("test.testesen#1234")).build();
+
+        CompletableFuture<MessageDelivery> delivery = asyncSender.createMessage(message).addContent(document, printablePdf1Page()).sendAsync();
+        ExecutionException failed = assertThrows(ExecutionException.class, delivery::get);
+        assertThat(failed.getCause(), instanceOf(DigipostClientException.class));
+    }
+
+    @Test
+    public void identifies_recipient_once_for_several_messages() {
+        when(api.identifyAndGetEncryptionKey(any(Identification.class))).thenAnswer(invocation -> digipostUserIdentificationResponse());
+        Identification recipient = new Identification(new DigipostAddress("test.testesen#1234"));
+
+        MessageDeliverer.IdentifiedRecipient first = sender.identifyRecipientWithEncrypter(recipient);
+        MessageDeliverer.IdentifiedRecipient second = sender.identifyRecipientWithEncrypter(new Identification(new DigipostAddress("test.testesen#1234")));
+
+        assertThat(second, sameInstance(first));
+        assertThat(second.encrypter(), sameInstance(first.encrypter()));
+        then(api).should(times(1)).identifyAndGetEncryptionKey(any(Identification.class));
+    }
+
+    @Test
+    public void cache_key_for_recipient_does_not_reveal_the_identification() {
+        Identification byPersonalIdentificationNumber = new Identification(new PersonalIdentificationNumber("01017012345"));
+        Identification byNameAndAddress = new Identification(new NameAndAddress("Test Testesen", "Storgata 1", null, "0101", "Oslo"));
+
+        MessageDeliverer.RecipientKey key = new MessageDeliverer.RecipientKey(byPersonalIdentificationNumber);
+        assertThat(key.toString(), not(containsString("01017012345")));
+        assertThat(new MessageDeliverer.RecipientKey(byNameAndAddress).toString(), not(containsString("Testesen")));
+        assertThat(new MessageDeliverer.RecipientKey(new Identification(new DigipostAddress("test.testesen#1234"))).toString(), not(containsString("testesen")));
+        assertThat(key, is(new MessageDeliverer.RecipientKey(new Identification(new PersonalIdentificationNumber("01017012345")))));
+    }
+
+    @Test
+    public void identifies_recipient_for_every_message_when_cache_is_disabled() {
+        when(api.identifyAndGetEncryptionKey(any(Identification.class))).thenAnswer(invocation -> digipostUserIdentificationResponse());
+        MessageDeliverer uncachedSender = new MessageDeliverer(newConfiguration().disableRecipientEncryptionKeyCache().build(), api, new DocumentsPreparer(pdfValidator));
+        Identification recipient = new Identification(new DigipostAddress("test.testesen#1234"));
+
+        uncachedSender.identifyRecipientWithEncrypter(recipient);
+        uncachedSender.identifyRecipientWithEncrypter(recipient);
+
+        then(api).should(times(2)).identifyAndGetEncryptionKey(any(Identification.class));
+    }
+
+    @Test
+    public void removes_cached_recipient_when_sending_fails_because_of_encryption_key() {
+        when(api.identifyAndGetEncryptionKey(any(Identification.class))).thenAnswer(invocation -> digipostUserIdentificationResponse());
+        when(api.sendMultipartMessage(any(HttpEntity.class))).thenThrow(new DigipostClientException(ErrorCode.CONTENT_NOT_ENCRYPTED_WITH_CORRECT_KEY, "wrong key"));
+        Document document = new Document(UUID.randomUUID(), "subject", FileType.HTML).encrypt();
+        Message message = Message.newMessage(UUID.randomUUID(), document).recipient(new DigipostAddress("test.testesen#1234")).build();
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> sender.createMessage(message).addContent(document, toInputStream("<html></html>", UTF_8)).send());
+        assertThat(thrown.getErrorCode(), is(ErrorCode.CONTENT_NOT_ENCRYPTED_WITH_CORRECT_KEY));
+        sender.identifyRecipientWithEncrypter(message.recipient.toIdentification());
+
+        then(api).should(times(2)).identifyAndGetEncryptionKey(any(Identification.class));
+    }
+
+    private CloseableHttpResponse digipostUserIdentificationResponse() {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        marshal(jaxbContext, new IdentificationResultWithEncryptionKey(IdentificationResult.digipost("test.testesen#1234"), fakeEncryptionKey), bao);
+        return MockfriendlyResponse.MockedResponseBuilder.create()
+                .status(SC_OK)
+                .entity(new ByteArrayEntity(bao.toByteArray()))
+                .build();
+    }
+
+    private static ContentBuffer buffered(InputStream content) {
+        return ContentBuffer.bufferOnFirstRead(content, ContentBuffer.DEFAULT_IN_MEMORY_THRESHOLD);
+    }
+
 }
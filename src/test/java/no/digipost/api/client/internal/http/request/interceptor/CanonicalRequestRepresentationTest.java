@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.request.interceptor;
+
+import no.digipost.api.client.internal.http.CanonicalRepresentation;
+import no.digipost.api.client.security.RequestMessageSignatureUtil;
+import org.apache.http.HttpRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class CanonicalRequestRepresentationTest {
+
+    @Test
+    public void request_with_path_only() {
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("GET", "/"));
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("get", "/Recipients/Search/Ola"));
+    }
+
+    @Test
+    public void request_with_query_and_absolute_uri() {
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("GET", "/documents/events?From=2018-12-01T00:00&offset=0"));
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("GET", "https://api.digipost.no/documents/events?from=x&maxResults=10"));
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("GET", "https://api.digipost.no?q=1"));
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("GET", "https://api.digipost.no"));
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("GET", "/messages?"));
+    }
+
+    @Test
+    public void only_signed_headers_are_included() {
+        HttpRequest request = new BasicHttpRequest("POST", "/messages");
+        request.addHeader("X-Digipost-UserId", "123456");
+        request.addHeader("Accept", "application/vnd.digipost-v7+xml");
+        request.addHeader("X-Content-SHA256", "47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=");
+        request.addHeader("Date", "Tue, 04 Dec 2018 10:15:30 GMT");
+        request.addHeader("Content-MD5", "1B2M2Y8AsgTpgAmY7PhCfg==");
+        request.addHeader("User-Agent", "Digipost API Client");
+        assertSameAsRequestMessageSignatureUtil(request);
+    }
+
+    @Test
+    public void signed_headers_in_mixed_case_are_ordered_case_sensitively() {
+        HttpRequest request = new BasicHttpRequest("POST", "/messages");
+        request.addHeader("x-digipost-userid", "123456");
+        request.addHeader("Date", "Tue, 04 Dec 2018 10:15:30 GMT");
+        request.addHeader("X-Content-SHA256", "47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=");
+        request.addHeader("content-md5", "1B2M2Y8AsgTpgAmY7PhCfg==");
+        assertSameAsRequestMessageSignatureUtil(request);
+    }
+
+    @Test
+    public void duplicated_signed_headers() {
+        HttpRequest request = new BasicHttpRequest("POST", "/messages");
+        request.addHeader("Date", "Tue, 04 Dec 2018 10:15:30 GMT");
+        request.addHeader("X-Digipost-UserId", "123456");
+        request.addHeader("Date", "Tue, 04 Dec 2018 10:15:31 GMT");
+        request.addHeader("date", "Tue, 04 Dec 2018 10:15:32 GMT");
+        request.addHeader("X-DIGIPOST-USERID", "654321");
+        request.addHeader("X-Content-SHA256", null);
+        assertSameAsRequestMessageSignatureUtil(request);
+    }
+
+    @Test
+    public void non_ascii_is_encoded_as_utf8() {
+        HttpRequest request = new BasicHttpRequest("GET", "/recipients/search/Ærlig-Østgård?q=Blåbær😀");
+        request.addHeader("X-Digipost-UserId", "Ærlig");
+        assertSameAsRequestMessageSignatureUtil(request);
+    }
+
+    @Test
+    public void long_request_grows_buffer() {
+        StringBuilder path = new StringBuilder("/documents");
+        for (int i = 0; i < 500; i++) {
+            path.append("/segment").append(i);
+        }
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("GET", path.toString()));
+        assertSameAsRequestMessageSignatureUtil(new BasicHttpRequest("GET", "/messages"));
+    }
+
+    @Test
+    public void decoded_path() {
+        String pathOnly = "/messages";
+        assertThat(CanonicalRepresentation.decodedPath(pathOnly), sameInstance(pathOnly));
+        assertThat(CanonicalRepresentation.decodedPath("/messages?x=1"), is("/messages"));
+        assertThat(CanonicalRepresentation.decodedPath("https://api.digipost.no/messages/1#x"), is("/messages/1"));
+        assertThat(CanonicalRepresentation.decodedPath("https://api.digipost.no"), is(""));
+        assertThat(CanonicalRepresentation.decodedPath("/recipients/search/ola%20nordmann?q=%20"), is("/recipients/search/ola nordmann"));
+    }
+
+    private static void assertSameAsRequestMessageSignatureUtil(HttpRequest request) {
+        ByteBuffer canonical = CanonicalRepresentation.of(request);
+        String expected = RequestMessageSignatureUtil.getCanonicalRequestRepresentation(new ApacheHttpRequestToSign(request));
+        assertThat(UTF_8.decode(canonical).toString(), is(expected));
+    }
+}
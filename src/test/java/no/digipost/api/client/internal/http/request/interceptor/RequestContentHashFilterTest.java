@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.request.interceptor;
+
+import no.digipost.api.client.security.Digester;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RequestContentHashFilterTest {
+
+    private final RequestContentHashFilter hashFilter = new RequestContentHashFilter(Digester.sha256, X_Content_SHA256);
+
+    @Test
+    public void hashOfStreamedEntityIsSameAsHashOfEntityBytes() throws IOException {
+        HttpEntity multipart = MultipartEntityBuilder.create()
+                .addBinaryBody("application", new byte[64 * 1024], ContentType.APPLICATION_OCTET_STREAM, "content")
+                .addTextBody("message", "<message/>", ContentType.APPLICATION_XML.withCharset(UTF_8))
+                .build();
+        ByteArrayOutputStream entityBytes = new ByteArrayOutputStream();
+        multipart.writeTo(entityBytes);
+
+        HttpPost hashedFromEntity = new HttpPost("/messages");
+        hashFilter.settContentHashHeader(multipart, hashedFromEntity);
+        HttpPost hashedFromBytes = new HttpPost("/messages");
+        hashFilter.settContentHashHeader(entityBytes.toByteArray(), hashedFromBytes);
+
+        assertThat(hashedFromEntity.getFirstHeader(X_Content_SHA256).getValue(), is(hashedFromBytes.getFirstHeader(X_Content_SHA256).getValue()));
+    }
+
+    @Test
+    public void hashOfEmptyEntity() throws IOException {
+        HttpPost request = new HttpPost("/");
+        hashFilter.settContentHashHeader(new ByteArrayEntity(new byte[0]), request);
+        assertThat(request.getFirstHeader(X_Content_SHA256).getValue(), is("47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU="));
+    }
+
+}
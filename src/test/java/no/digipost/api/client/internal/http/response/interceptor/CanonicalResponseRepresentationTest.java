@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response.interceptor;
+
+import no.digipost.api.client.internal.http.CanonicalRepresentation;
+import no.digipost.api.client.security.ResponseMessageSignatureUtil;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static no.digipost.api.client.internal.http.response.interceptor.SignedResponses.REQUEST_PATH;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CanonicalResponseRepresentationTest {
+
+    private final HttpContext context = new SignedResponses().newContext();
+
+    @Test
+    public void signed_response() {
+        assertSameAsResponseMessageSignatureUtil(new SignedResponses().newSignedResponse(context));
+    }
+
+    @Test
+    public void signed_headers_in_mixed_case_and_duplicated() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 404, "Not Found");
+        response.addHeader("X-Digipost-UserId", "123456");
+        response.addHeader("date", "Tue, 04 Dec 2018 10:15:30 GMT");
+        response.addHeader("Date", "Tue, 04 Dec 2018 10:15:31 GMT");
+        response.addHeader("X-Content-SHA256", "47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=");
+        response.addHeader("X-Digipost-UserId", "654321");
+        response.addHeader("Content-Type", "application/vnd.digipost-v7+xml");
+        assertSameAsResponseMessageSignatureUtil(response);
+    }
+
+    private void assertSameAsResponseMessageSignatureUtil(HttpResponse response) {
+        ByteBuffer canonical = CanonicalRepresentation.of(response, REQUEST_PATH);
+        String expected = ResponseMessageSignatureUtil.getCanonicalResponseRepresentation(new ApacheHttpResponseToVerify(context, response));
+        assertThat(UTF_8.decode(canonical).toString(), is(expected));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response.interceptor;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.encoders.Base64;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import static co.unruly.matchers.Java8Matchers.where;
+import static no.digipost.api.client.errorhandling.ErrorCode.SERVER_SIGNATURE_ERROR;
+import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ResponseContentSHA256InterceptorTest {
+
+    private final ResponseContentSHA256Interceptor interceptor = new ResponseContentSHA256Interceptor();
+    private final byte[] content = new byte[100_000];
+    {
+        new Random(42).nextBytes(content);
+    }
+
+    @Test
+    public void buffers_and_verifies_content_by_default() throws Exception {
+        HttpResponse response = response(content, sha256(content));
+        interceptor.process(response, new BasicHttpContext());
+
+        assertThat(response.getEntity(), instanceOf(ByteArrayEntity.class));
+        assertThat(IOUtils.toByteArray(response.getEntity().getContent()), is(content));
+    }
+
+    @Test
+    public void buffered_content_not_matching_hash_is_rejected_immediately() {
+        HttpResponse response = response(content, sha256(new byte[] {1, 2, 3}));
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, new BasicHttpContext()));
+        assertThat(thrown, where(DigipostClientException::getErrorCode, is(SERVER_SIGNATURE_ERROR)));
+    }
+
+    @Test
+    public void verifies_streamed_content_while_reading() throws Exception {
+        HttpResponse response = response(content, sha256(content));
+        interceptor.process(response, streamingContext());
+
+        assertThat(response.getEntity(), not(instanceOf(ByteArrayEntity.class)));
+        try (InputStream stream = response.getEntity().getContent()) {
+            assertThat(IOUtils.toByteArray(stream), is(content));
+            assertThat(stream.read(), is(-1));
+        }
+    }
+
+    @Test
+    public void streamed_content_not_matching_hash_fails_at_end_of_stream() throws Exception {
+        HttpResponse response = response(content, sha256(new byte[] {1, 2, 3}));
+        interceptor.process(response, streamingContext());
+
+        InputStream stream = response.getEntity().getContent();
+        byte[] start = new byte[1000];
+        assertThat(IOUtils.read(stream, start), is(start.length));
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> IOUtils.toByteArray(stream));
+        assertThat(thrown, where(DigipostClientException::getErrorCode, is(SERVER_SIGNATURE_ERROR)));
+        assertThat(thrown, where(Exception::getMessage, containsString(X_Content_SHA256)));
+    }
+
+    @Test
+    public void streamed_content_not_matching_hash_fails_when_closed_before_end() throws Exception {
+        HttpResponse response = response(content, sha256(new byte[] {1, 2, 3}));
+        interceptor.process(response, streamingContext());
+
+        InputStream stream = response.getEntity().getContent();
+        stream.read(new byte[10]);
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, stream::close);
+        assertThat(thrown, where(DigipostClientException::getErrorCode, is(SERVER_SIGNATURE_ERROR)));
+    }
+
+    @Test
+    public void skipped_streamed_content_is_included_in_verification() throws Exception {
+        HttpResponse response = response(content, sha256(content));
+        interceptor.process(response, streamingContext());
+
+        try (InputStream stream = response.getEntity().getContent()) {
+            assertThat(stream.skip(50_000), is(50_000L));
+            assertThat(IOUtils.toByteArray(stream).length, is(50_000));
+        }
+    }
+
+    @Test
+    public void missing_hash_header_is_rejected() {
+        HttpResponse response = response(content, null);
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(response, streamingContext()));
+        assertThat(thrown, where(Exception::getMessage, containsString("Missing " + X_Content_SHA256)));
+    }
+
+
+    private static HttpContext streamingContext() {
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(ResponseContentSHA256Interceptor.VERIFY_WHILE_STREAMING, true);
+        return context;
+    }
+
+    private static HttpResponse response(byte[] content, String sha256) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new InputStreamEntity(new ByteArrayInputStream(content), content.length));
+        if (sha256 != null) {
+            response.addHeader(X_Content_SHA256, sha256);
+        }
+        return response;
+    }
+
+    private static String sha256(byte[] content) {
+        SHA256Digest digest = new SHA256Digest();
+        digest.update(content, 0, content.length);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return Base64.toBase64String(result);
+    }
+}
@@ -19,6 +19,7 @@ import no.digipost.api.client.errorhandling.DigipostClientException;
 import no.digipost.api.client.representations.EntryPoint;
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.protocol.HttpContext;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -26,9 +27,15 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static co.unruly.matchers.Java8Matchers.where;
+import static no.digipost.api.client.errorhandling.ErrorCode.SERVER_SIGNATURE_ERROR;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -50,4 +57,50 @@ public class ResponseSignatureFilterTest {
         when(httpContext.getAttribute(ResponseSignatureInterceptor.NOT_SIGNED_RESPONSE)).thenReturn(true);
         assertDoesNotThrow(() -> interceptor.process(response, httpContext));
     }
+
+    @Test
+    public void verifiserer_signert_respons_gjentatte_ganger() {
+        SignedResponses signedResponses = new SignedResponses();
+        EntryPoint entryPoint = signedResponses.newEntryPoint();
+        ResponseSignatureInterceptor interceptor = new ResponseSignatureInterceptor(() -> entryPoint);
+        HttpContext context = signedResponses.newContext();
+
+        for (int i = 0; i < 3; i++) {
+            assertDoesNotThrow(() -> interceptor.process(signedResponses.newSignedResponse(context), context));
+        }
+    }
+
+    @Test
+    public void skal_kaste_feil_om_respons_ikke_stemmer_med_signatur() {
+        SignedResponses signedResponses = new SignedResponses();
+        EntryPoint entryPoint = signedResponses.newEntryPoint();
+        ResponseSignatureInterceptor interceptor = new ResponseSignatureInterceptor(() -> entryPoint);
+        HttpContext context = signedResponses.newContext();
+        HttpResponse tampered = signedResponses.newSignedResponse(context);
+        tampered.setHeader(new BasicHeader("Date", "Tue, 04 Dec 2018 10:15:31 GMT"));
+
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> interceptor.process(tampered, context));
+        assertThat(thrown, where(DigipostClientException::getErrorCode, is(SERVER_SIGNATURE_ERROR)));
+        assertThat(thrown, where(Exception::getMessage, containsString("did not match signature")));
+        assertDoesNotThrow(() -> interceptor.process(signedResponses.newSignedResponse(context), context));
+    }
+
+    @Test
+    public void parser_sertifikat_kun_paa_nytt_naar_entry_point_endres() {
+        SignedResponses signedResponses = new SignedResponses();
+        AtomicReference<EntryPoint> entryPoint = new AtomicReference<>(signedResponses.newEntryPoint());
+        ResponseSignatureInterceptor interceptor = new ResponseSignatureInterceptor(entryPoint::get);
+
+        X509Certificate first = interceptor.lastSertifikat();
+        assertThat(interceptor.lastSertifikat(), sameInstance(first));
+
+        entryPoint.set(signedResponses.newEntryPoint());
+        X509Certificate refreshed = interceptor.lastSertifikat();
+        assertThat(refreshed, not(sameInstance(first)));
+        assertThat(refreshed, is(first));
+        assertThat(interceptor.lastSertifikat(), sameInstance(refreshed));
+
+        HttpContext context = signedResponses.newContext();
+        assertDoesNotThrow(() -> interceptor.process(signedResponses.newSignedResponse(context), context));
+    }
 }
@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response.interceptor;
+
+import no.digipost.api.client.representations.EntryPoint;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent verifying the signature of one response. {@link #cachedCertificate()} is how the client
+ * verifies responses, while {@link #parsingCertificateForEachResponse()} resolves a new
+ * {@link EntryPoint} instance for each response, and so parses the certificate and initializes
+ * the verifier each time, which is what used to happen for every response.
+ * <p>
+ * Run with {@link #main(String[])} from the IDE, or with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=<this class>}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSignatureInterceptorBenchmark {
+
+    private SignedResponses signedResponses;
+    private ResponseSignatureInterceptor cachingInterceptor;
+    private ResponseSignatureInterceptor parsingInterceptor;
+    private HttpContext context;
+    private HttpResponse response;
+
+    @Setup
+    public void setUp() {
+        signedResponses = new SignedResponses();
+        EntryPoint entryPoint = signedResponses.newEntryPoint();
+        cachingInterceptor = new ResponseSignatureInterceptor(() -> entryPoint);
+        parsingInterceptor = new ResponseSignatureInterceptor(signedResponses::newEntryPoint);
+        context = signedResponses.newContext();
+        response = signedResponses.newSignedResponse(context);
+    }
+
+    @Benchmark
+    public HttpResponse cachedCertificate() {
+        cachingInterceptor.process(response, context);
+        return response;
+    }
+
+    @Benchmark
+    public HttpResponse parsingCertificateForEachResponse() {
+        parsingInterceptor.process(response, context);
+        return response;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResponseSignatureInterceptorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
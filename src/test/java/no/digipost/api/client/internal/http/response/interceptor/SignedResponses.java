@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.internal.http.response.interceptor;
+
+import no.digipost.api.client.representations.EntryPoint;
+import no.digipost.api.client.security.CryptoUtil;
+import no.digipost.api.client.security.ResponseMessageSignatureUtil;
+import no.digipost.api.client.security.TestKeyStore;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.util.encoders.Base64;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+
+import static no.digipost.api.client.internal.http.Headers.Content_Type_DIGIPOST_MEDIA_TYPE_V7;
+import static no.digipost.api.client.internal.http.Headers.X_Content_SHA256;
+import static no.digipost.api.client.internal.http.Headers.X_Digipost_Signature;
+import static no.digipost.api.client.internal.http.Headers.X_Digipost_UserId;
+import static org.apache.http.HttpHeaders.DATE;
+
+/**
+ * Creates responses signed the same way as Digipost signs them, using the key and
+ * certificate from the test keystore.
+ */
+final class SignedResponses {
+
+    static final String REQUEST_PATH = "/messages";
+
+    private final PrivateKey privateKey;
+    private final String certificate;
+
+    SignedResponses() {
+        this.privateKey = TestKeyStore.INSTANCE.privateKey();
+        try {
+            this.certificate = toPem(TestKeyStore.INSTANCE.certificate());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return a new entry point instance with the certificate of the signing key
+     */
+    EntryPoint newEntryPoint() {
+        return new EntryPoint(certificate);
+    }
+
+    HttpContext newContext() {
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute("request-path", REQUEST_PATH);
+        return context;
+    }
+
+    HttpResponse newSignedResponse(HttpContext context) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader(DATE, "Tue, 04 Dec 2018 10:15:30 GMT");
+        response.addHeader(X_Content_SHA256, "47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=");
+        response.addHeader(Content_Type_DIGIPOST_MEDIA_TYPE_V7);
+        response.addHeader(X_Digipost_UserId, "123456");
+        String canonical = ResponseMessageSignatureUtil.getCanonicalResponseRepresentation(new ApacheHttpResponseToVerify(context, response));
+        response.addHeader(X_Digipost_Signature, Base64.toBase64String(CryptoUtil.sign(privateKey, canonical)));
+        return response;
+    }
+
+    private static String toPem(Certificate certificate) throws IOException {
+        StringWriter pem = new StringWriter();
+        try (JcaPEMWriter pemWriter = new JcaPEMWriter(pem)) {
+            pemWriter.writeObject(certificate);
+        }
+        return pem.toString();
+    }
+}
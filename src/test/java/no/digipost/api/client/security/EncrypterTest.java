@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import no.digipost.api.client.errorhandling.DigipostClientException;
+import no.digipost.api.client.representations.EncryptionKey;
+import org.bouncycastle.cms.CMSEnvelopedDataParser;
+import org.bouncycastle.cms.RecipientInformation;
+import org.bouncycastle.cms.jcajce.JceKeyTransEnvelopedRecipient;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.Random;
+
+import static no.digipost.api.client.errorhandling.ErrorCode.ENCRYPTION_KEY_NOT_FOUND;
+import static no.digipost.api.client.errorhandling.ErrorCode.FAILED_PREENCRYPTION;
+import static no.digipost.api.client.security.Encrypter.FAIL_IF_TRYING_TO_ENCRYPT;
+import static org.apache.commons.io.IOUtils.toByteArray;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EncrypterTest {
+
+    static {
+        CryptoUtil.addBouncyCastleProviderAndVerify_AES256_CBC_Support();
+    }
+
+    private static final KeyPair keyPair;
+    static {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            keyPair = generator.generateKeyPair();
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private final Encrypter encrypter = Encrypter.using(new DigipostPublicKey(encryptionKey()));
+    private final byte[] content = new byte[300_000];
+    {
+        new Random(42).nextBytes(content);
+    }
+
+    @Test
+    public void encryptedStreamDecryptsToOriginalContent() throws Exception {
+        byte[] encrypted = toByteArray(encrypter.encrypt(new ByteArrayInputStream(content)));
+        assertThat(decrypt(encrypted, keyPair.getPrivate()), is(content));
+    }
+
+    @Test
+    public void encryptsDirectlyToOutputStream() throws Exception {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        encrypter.encrypt(new ByteArrayInputStream(content), encrypted);
+        assertThat(decrypt(encrypted.toByteArray(), keyPair.getPrivate()), is(content));
+    }
+
+    @Test
+    public void encryptingStreamFailsImmediatelyWithoutEncryptionKey() {
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> FAIL_IF_TRYING_TO_ENCRYPT.encrypt(new ByteArrayInputStream(content)));
+        assertThat(thrown.getErrorCode(), is(ENCRYPTION_KEY_NOT_FOUND));
+    }
+
+    @Test
+    public void encryptionFailingWhileReadingIsReportedAsFailedPreencryption() {
+        InputStream encrypting = new EncryptingInputStream(new ByteArrayInputStream(content), ciphertext -> new FilterOutputStream(ciphertext) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("cipher broke");
+            }
+        });
+        DigipostClientException thrown = assertThrows(DigipostClientException.class, () -> toByteArray(encrypting));
+        assertThat(thrown.getErrorCode(), is(FAILED_PREENCRYPTION));
+    }
+
+    @Test
+    public void failingToReadPlaintextIsNotReportedAsAnEncryptionFailure() {
+        InputStream failingPlaintext = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("disk broke");
+            }
+        };
+        InputStream encrypting = new EncryptingInputStream(failingPlaintext, OutputStream.class::cast);
+        IOException thrown = assertThrows(IOException.class, () -> toByteArray(encrypting));
+        assertThat(thrown.getMessage(), is("disk broke"));
+    }
+
+    @Test
+    public void failingToReadContentIsNotReportedAsAnEncryptionFailure() {
+        IOException fromStream = assertThrows(IOException.class, () -> toByteArray(encrypter.encrypt(failingContent())));
+        assertThat(fromStream.getMessage(), is("disk broke"));
+
+        UncheckedIOException toOutputStream = assertThrows(UncheckedIOException.class, () -> encrypter.encrypt(failingContent(), new ByteArrayOutputStream()));
+        assertThat(toOutputStream.getCause().getMessage(), is("disk broke"));
+    }
+
+    private static InputStream failingContent() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("disk broke");
+            }
+        };
+    }
+
+    private static byte[] decrypt(byte[] encrypted, PrivateKey privateKey) throws Exception {
+        CMSEnvelopedDataParser parser = new CMSEnvelopedDataParser(encrypted);
+        RecipientInformation recipient = parser.getRecipientInfos().getRecipients().iterator().next();
+        try (InputStream decrypted = recipient.getContentStream(new JceKeyTransEnvelopedRecipient(privateKey)).getContentStream()) {
+            return toByteArray(decrypted);
+        }
+    }
+
+    private static EncryptionKey encryptionKey() {
+        StringWriter pem = new StringWriter();
+        try (JcaPEMWriter writer = new JcaPEMWriter(pem)) {
+            writer.writeObject(keyPair.getPublic());
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        EncryptionKey key = new EncryptionKey();
+        key.setKeyId("test-key");
+        key.setValue(pem.toString());
+        return key;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.security.PrivateKey;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Time spent signing one request. {@link #signatureForEachRequest()} looks up and initializes a new
+ * {@link java.security.Signature} for each request, as {@link CryptoUtil#sign(PrivateKey, String)} does,
+ * while the others reuse the signature of the thread, signing either a string or already encoded bytes.
+ * <p>
+ * Run with {@link #main(String[])} from the IDE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignerBenchmark {
+
+    private static final String DATA_TO_SIGN =
+            "POST\n/messages\n" +
+            "date: Tue, 04 Dec 2018 10:15:30 GMT\n" +
+            "x-content-sha256: 47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=\n" +
+            "x-digipost-userid: 123456\n\n";
+
+    private PrivateKey privateKey;
+    private Signer signer;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() {
+        privateKey = TestKeyStore.INSTANCE.privateKey();
+        signer = Signer.using(privateKey);
+        encoded = ByteBuffer.wrap(DATA_TO_SIGN.getBytes(UTF_8));
+    }
+
+    @Benchmark
+    public byte[] signatureForEachRequest() {
+        return CryptoUtil.sign(privateKey, DATA_TO_SIGN);
+    }
+
+    @Benchmark
+    public byte[] reusedSignatureSigningString() {
+        return signer.sign(DATA_TO_SIGN);
+    }
+
+    @Benchmark
+    public byte[] reusedSignatureSigningBytes() {
+        encoded.rewind();
+        return signer.sign(encoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SignerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
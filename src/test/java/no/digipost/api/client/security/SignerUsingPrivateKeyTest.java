@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.security.Signature;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SignerUsingPrivateKeyTest {
+
+    private final Signer signer = Signer.using(TestKeyStore.INSTANCE.privateKey());
+
+    @Test
+    public void signs_the_same_as_before_when_reusing_signature() {
+        String dataToSign = "POST\n/messages\ndate: Tue, 04 Dec 2018 10:15:30 GMT\n\n";
+        byte[] expected = CryptoUtil.sign(TestKeyStore.INSTANCE.privateKey(), dataToSign);
+
+        assertThat(signer.sign(dataToSign), is(expected));
+        assertThat(signer.sign(dataToSign), is(expected));
+    }
+
+    @Test
+    public void signs_string_and_buffer_as_utf8() throws Exception {
+        String dataToSign = "GET\n/recipients/search/ærlig østgård\n\n";
+        ByteBuffer buffer = ByteBuffer.wrap(dataToSign.getBytes(UTF_8));
+
+        byte[] signedBuffer = signer.sign(buffer);
+        assertThat(buffer.hasRemaining(), is(false));
+        assertThat(signer.sign(dataToSign), is(signedBuffer));
+        assertThat(verify(dataToSign.getBytes(UTF_8), signedBuffer), is(true));
+    }
+
+    @Test
+    public void default_buffer_signing_delegates_to_string_signing() {
+        Signer stringSigner = data -> data.getBytes(UTF_8);
+        assertThat(stringSigner.sign(ByteBuffer.wrap("blåbær".getBytes(UTF_8))), is("blåbær".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void signs_concurrently() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Boolean>> signings = IntStream.range(0, 200)
+                    .mapToObj(i -> (Callable<Boolean>) () -> {
+                        String dataToSign = "GET\n/documents/" + i + "\n\n";
+                        return verify(dataToSign.getBytes(UTF_8), signer.sign(dataToSign));
+                    })
+                    .collect(Collectors.toList());
+            for (Future<Boolean> verified : threads.invokeAll(signings)) {
+                assertThat(verified.get(), is(true));
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    private static boolean verify(byte[] data, byte[] signature) throws Exception {
+        Signature verifier = Signature.getInstance("SHA256WithRSAEncryption");
+        verifier.initVerify(TestKeyStore.INSTANCE.certificate().getPublicKey());
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+}
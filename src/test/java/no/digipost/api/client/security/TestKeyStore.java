@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.security;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+/**
+ * The private key and certificate in the {@code certificate.p12} test keystore.
+ */
+public final class TestKeyStore {
+
+    public static final TestKeyStore INSTANCE = new TestKeyStore();
+
+    private final PrivateKey privateKey;
+    private final X509Certificate certificate;
+
+    private TestKeyStore() {
+        CryptoUtil.addBouncyCastleProviderAndVerify_AES256_CBC_Support();
+        char[] password = "Qwer12345".toCharArray();
+        try (InputStream keyStoreStream = TestKeyStore.class.getResourceAsStream("certificate.p12")) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(keyStoreStream, password);
+            String alias = keyStore.aliases().nextElement();
+            this.privateKey = (PrivateKey) keyStore.getKey(alias, password);
+            this.certificate = (X509Certificate) keyStore.getCertificate(alias);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e.getClass().getSimpleName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    public PrivateKey privateKey() {
+        return privateKey;
+    }
+
+    public X509Certificate certificate() {
+        return certificate;
+    }
+}
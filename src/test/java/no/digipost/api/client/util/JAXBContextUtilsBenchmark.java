@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.util;
+
+import no.digipost.api.client.representations.DocumentEvents;
+import no.digipost.api.client.representations.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.xml.bind.JAXBException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+
+/**
+ * Messages marshalled and responses unmarshalled per second, either creating a new
+ * marshaller, unmarshaller and output buffer each time, as was done before, or using
+ * the pooled ones in {@link JAXBContextUtils}.
+ * <p>
+ * Run with {@link #main(String[])} from the IDE.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JAXBContextUtilsBenchmark {
+
+    private Message message;
+    private byte[] documentEvents;
+
+    @Setup
+    public void setUp() {
+        message = JAXBSamples.message();
+        documentEvents = JAXBContextUtils.marshalToBytes(jaxbContext, JAXBSamples.documentEvents(10));
+    }
+
+    @Benchmark
+    public byte[] marshalMessageWithNewMarshaller() throws JAXBException {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        jaxbContext.createMarshaller().marshal(message, bao);
+        return bao.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] marshalMessagePooled() {
+        return JAXBContextUtils.marshalToBytes(jaxbContext, message);
+    }
+
+    @Benchmark
+    public Object unmarshalEventsWithNewUnmarshaller() throws JAXBException {
+        return jaxbContext.createUnmarshaller().unmarshal(new ByteArrayInputStream(documentEvents));
+    }
+
+    @Benchmark
+    public DocumentEvents unmarshalEventsPooled() {
+        return JAXBContextUtils.unmarshal(jaxbContext, new ByteArrayInputStream(documentEvents), DocumentEvents.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JAXBContextUtilsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.util;
+
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEvents;
+import no.digipost.api.client.representations.Message;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.bind.JAXBContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static no.digipost.api.client.util.JAXBContextUtils.jaxbContext;
+import static no.digipost.api.client.util.JAXBContextUtils.marshal;
+import static no.digipost.api.client.util.JAXBContextUtils.marshalToBytes;
+import static no.digipost.api.client.util.JAXBContextUtils.unmarshal;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JAXBContextUtilsTest {
+
+    @Test
+    public void marshals_to_bytes_the_same_as_to_stream() {
+        DocumentEvents events = JAXBSamples.documentEvents(20);
+        ByteArrayOutputStream marshalled = new ByteArrayOutputStream();
+        marshal(jaxbContext, events, marshalled);
+
+        assertThat(marshalToBytes(jaxbContext, events), is(marshalled.toByteArray()));
+        assertThat(marshalToBytes(jaxbContext, events), is(marshalled.toByteArray()));
+    }
+
+    @Test
+    public void marshals_content_larger_than_reused_buffer() {
+        DocumentEvents manyEvents = JAXBSamples.documentEvents(10_000);
+        DocumentEvents unmarshalled = unmarshal(jaxbContext, new ByteArrayInputStream(marshalToBytes(jaxbContext, manyEvents)), DocumentEvents.class);
+        assertThat(unmarshalled.getEvents(), hasSize(10_000));
+
+        Message message = JAXBSamples.message();
+        assertThat(unmarshal(jaxbContext, new ByteArrayInputStream(marshalToBytes(jaxbContext, message)), Message.class).messageId, is(message.messageId));
+    }
+
+    @Test
+    public void unmarshals_after_failing_to_unmarshal() {
+        assertThrows(RuntimeException.class, () -> unmarshal(jaxbContext, new ByteArrayInputStream("<not-xml".getBytes()), DocumentEvents.class));
+
+        byte[] events = marshalToBytes(jaxbContext, JAXBSamples.documentEvents(3));
+        assertThat(unmarshal(jaxbContext, new ByteArrayInputStream(events), DocumentEvents.class).getEvents(), hasSize(3));
+    }
+
+    @Test
+    public void marshals_and_unmarshals_concurrently() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Integer>> roundTrips = IntStream.range(0, 400)
+                    .mapToObj(i -> (Callable<Integer>) () -> {
+                        byte[] marshalled = marshalToBytes(jaxbContext, JAXBSamples.documentEvents(i % 17));
+                        return unmarshal(jaxbContext, new ByteArrayInputStream(marshalled), DocumentEvents.class).getEvents().size();
+                    })
+                    .collect(Collectors.toList());
+            List<Future<Integer>> results = threads.invokeAll(roundTrips);
+            for (int i = 0; i < results.size(); i++) {
+                assertThat(results.get(i).get(), is(i % 17));
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    public void marshals_and_unmarshals_with_other_contexts_than_the_shared() throws Exception {
+        JAXBContext eventsContext = JAXBContext.newInstance(DocumentEvents.class);
+        for (int i = 0; i < 2; i++) {
+            byte[] marshalled = marshalToBytes(eventsContext, JAXBSamples.documentEvents(5));
+            assertThat(unmarshal(eventsContext, new ByteArrayInputStream(marshalled), DocumentEvents.class).getEvents(), hasSize(5));
+        }
+    }
+
+    @Test
+    public void unmarshalled_events_are_equal_to_marshalled() {
+        DocumentEvents events = JAXBSamples.documentEvents(2);
+        DocumentEvents unmarshalled = unmarshal(jaxbContext, new ByteArrayInputStream(marshalToBytes(jaxbContext, events)), DocumentEvents.class);
+        List<DocumentEvent> expected = events.getEvents();
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(unmarshalled.getEvents().get(i).getUuid(), is(expected.get(i).getUuid()));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) Posten Norge AS
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package no.digipost.api.client.util;
+
+import no.digipost.api.client.representations.Document;
+import no.digipost.api.client.representations.DocumentEvent;
+import no.digipost.api.client.representations.DocumentEventType;
+import no.digipost.api.client.representations.DocumentEvents;
+import no.digipost.api.client.representations.FileType;
+import no.digipost.api.client.representations.Message;
+import no.digipost.api.client.representations.PersonalIdentificationNumber;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+final class JAXBSamples {
+
+    private static final ZonedDateTime CREATED = ZonedDateTime.of(2018, 12, 4, 10, 15, 30, 0, ZoneId.of("Europe/Oslo"));
+
+    static DocumentEvents documentEvents(int count) {
+        return new DocumentEvents(IntStream.range(0, count)
+                .mapToObj(i -> new DocumentEvent(new UUID(0, i), DocumentEventType.OPENED, CREATED.plusSeconds(i), CREATED))
+                .collect(Collectors.toList()));
+    }
+
+    static Message message() {
+        Document primaryDocument = new Document(UUID.randomUUID(), "Vedtak om tildeling av barnehageplass", FileType.PDF);
+        return Message.newMessage(UUID.randomUUID(), primaryDocument)
+                .recipient(new PersonalIdentificationNumber("01013300001"))
+                .attachments(new Document(UUID.randomUUID(), "Vedlegg", FileType.PDF))
+                .build();
+    }
+
+    private JAXBSamples() {
+    }
+}